@@ -2,9 +2,14 @@ package com.konqasasas.ast;
 
 import com.konqasasas.ast.cmd.CommandAstRoot;
 import com.konqasasas.ast.core.AstCourseManager;
+import com.konqasasas.ast.core.AstFileWatcher;
+import com.konqasasas.ast.core.AstRunJournal;
 import com.konqasasas.ast.core.AstRuntime;
 import com.konqasasas.ast.hud.AstHudRenderer;
 import com.konqasasas.ast.hud.AstHudKeybinds;
+import com.konqasasas.ast.hud.AstLayoutManager;
+import com.konqasasas.ast.viz.AstGhostRenderer;
+import com.konqasasas.ast.viz.AstHeatmapRenderer;
 import com.konqasasas.ast.viz.AstVizRenderer;
 import net.minecraftforge.client.ClientCommandHandler;
 import net.minecraftforge.common.MinecraftForge;
@@ -33,6 +38,10 @@ public class AutoSplitTimerMod {
     public void preInit(FMLPreInitializationEvent e) {
         // Load course data early so /ast works even before joining a world.
         AstCourseManager.get().loadAllCoursesSafe();
+        // Archive a run that was still in progress when the game last exited/crashed.
+        AstRunJournal.get().recoverSafe();
+        // Pick up course/layout files edited or synced while the game is running.
+        AstFileWatcher.get().startSafe(AstCourseManager.get().coursesDir(), AstLayoutManager.layoutsDir());
     }
 
     @Mod.EventHandler
@@ -40,6 +49,8 @@ public class AutoSplitTimerMod {
         MinecraftForge.EVENT_BUS.register(AstRuntime.get());
         MinecraftForge.EVENT_BUS.register(new AstHudRenderer());
         MinecraftForge.EVENT_BUS.register(new AstVizRenderer());
+        MinecraftForge.EVENT_BUS.register(new AstGhostRenderer());
+        MinecraftForge.EVENT_BUS.register(new AstHeatmapRenderer());
         MinecraftForge.EVENT_BUS.register(new AstHudKeybinds());
         ClientCommandHandler.instance.registerCommand(new CommandAstRoot());
     }
@@ -5,6 +5,8 @@ import com.konqasasas.ast.hud.AstHudConfigUtil;
 import com.konqasasas.ast.hud.AstHudRenderer;
 import com.konqasasas.ast.hud.AstHudKeybinds;
 import com.konqasasas.ast.hud.AstLayoutManager;
+import com.konqasasas.ast.viz.AstGhostRenderer;
+import com.konqasasas.ast.viz.AstHeatmapRenderer;
 import com.konqasasas.ast.viz.AstVizRenderer;
 import net.minecraft.client.Minecraft;
 import net.minecraft.command.CommandBase;
@@ -12,11 +14,14 @@ import net.minecraft.command.CommandException;
 import net.minecraft.command.ICommandSender;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.text.TextComponentString;
 import net.minecraftforge.client.IClientCommand;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 
 @SideOnly(Side.CLIENT)
@@ -35,7 +40,7 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
 
     @Override
     public String getUsage(ICommandSender sender) {
-        return "/ast <course|seg|run|hud|viz|record> ...";
+        return "/ast <course|seg|run|race|hud|viz|record|history|analyze|perf> ...";
     }
 
     @Override
@@ -52,6 +57,53 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
         return false;
     }
 
+    /** Course/layout names come from in-memory indexes, so completion never touches disk per keystroke. */
+    @Override
+    public List<String> getTabCompletions(net.minecraft.server.MinecraftServer server, ICommandSender sender, String[] args, BlockPos targetPos) {
+        if (args.length == 1) {
+            return getListOfStringsMatchingLastWord(args, "course", "seg", "run", "race", "hud", "viz", "record", "history", "analyze", "perf");
+        }
+        String top = args[0].toLowerCase(Locale.ROOT);
+        if (top.equals("course")) {
+            if (args.length == 2) {
+                return getListOfStringsMatchingLastWord(args, "set", "load", "leave", "info", "list", "delete",
+                        "format", "export", "import", "auto");
+            }
+            String sub = args[1].toLowerCase(Locale.ROOT);
+            if (args.length == 3 && (sub.equals("set") || sub.equals("load") || sub.equals("delete"))) {
+                return getListOfStringsMatchingLastWord(args, AstCourseManager.get().listCourseNames());
+            }
+            if (args.length == 3 && sub.equals("format")) {
+                return getListOfStringsMatchingLastWord(args, "json", "binary");
+            }
+            if (args.length == 3 && sub.equals("export")) {
+                return getListOfStringsMatchingLastWord(args, "json");
+            }
+            if (args.length == 4 && sub.equals("export")) {
+                return getListOfStringsMatchingLastWord(args, AstCourseManager.get().listCourseNames());
+            }
+            if (args.length == 3 && sub.equals("import")) {
+                return getListOfStringsMatchingLastWord(args, AstCourseManager.get().listExports());
+            }
+        } else if (top.equals("seg") && args.length == 2) {
+            return getListOfStringsMatchingLastWord(args, "add", "delete", "list", "rename", "route", "auto", "import", "export");
+        } else if (top.equals("race") && args.length == 2) {
+            return getListOfStringsMatchingLastWord(args, "on", "off", "reset");
+        } else if (top.equals("history") && args.length == 2) {
+            return getListOfStringsMatchingLastWord(args, "last", "get");
+        } else if (top.equals("record") && args.length == 2) {
+            return getListOfStringsMatchingLastWord(args, "clear", "rebuild");
+        } else if (top.equals("hud") && args.length >= 3 && args[1].equalsIgnoreCase("layout")) {
+            if (args.length == 3) {
+                return getListOfStringsMatchingLastWord(args, "save", "load", "list");
+            }
+            if (args.length == 4 && args[2].equalsIgnoreCase("load")) {
+                return getListOfStringsMatchingLastWord(args, AstLayoutManager.listLayouts());
+            }
+        }
+        return Collections.emptyList();
+    }
+
     @Override
     public void execute(net.minecraft.server.MinecraftServer server, ICommandSender sender, String[] args) throws CommandException {
         if (args.length == 0) {
@@ -71,6 +123,9 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
             case "run":
                 cmdRun(sender, rest);
                 break;
+            case "race":
+                cmdRace(sender, rest);
+                break;
             case "hud":
                 cmdHud(sender, rest);
                 break;
@@ -80,6 +135,15 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
             case "record":
                 cmdRecord(sender, rest);
                 break;
+            case "perf":
+                cmdPerf(sender, rest);
+                break;
+            case "history":
+                cmdHistory(sender, rest);
+                break;
+            case "analyze":
+                cmdAnalyze(sender, rest);
+                break;
             default:
                 help(sender);
         }
@@ -91,17 +155,26 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
         msg(sender, "  /ast course load <name>    (existing only)");
         msg(sender, "  /ast course leave");
         msg(sender, "  /ast course info | list | delete <name>");
+        msg(sender, "  /ast course format json|binary | export json [name] | import <file>");
+        msg(sender, "  /ast course auto on|off   (entering any course's Start selects that course)");
         msg(sender, "  /ast seg add <index> \"<name>\" height <h>  (h allows decimals, e.g. 2.5)");
+        msg(sender, "  /ast seg import <file> [merge] | export <file>  (exports/*.csv or *.json)");
+        msg(sender, "  /ast seg auto record|stop | <N> [distance|time] [height <h>]  (place Start + N boxes along a walk)");
         msg(sender, "  /ast seg delete <index> | list | rename <index> \"<name>\"");
         msg(sender, "  /ast run reset");
-        msg(sender, "  /ast record clear <pb|bestseg|bestsplit|all>");
+        msg(sender, "  /ast record clear <pb|bestseg|bestsplit|all> | rebuild");
+        msg(sender, "  /ast history last [n] | get <attempt>");
+        msg(sender, "  /ast race on|off|reset   (track other players' runs on the active course)");
+        msg(sender, "  /ast analyze [rerun]   (where attempts lose time, runs in background)");
         msg(sender, "  /ast hud edit   (open GUI editor)");
-        msg(sender, "  /ast viz on|off | mode outline|fill|both");
+        msg(sender, "  /ast viz on|off | mode outline|fill|both | ghost on|off");
+        msg(sender, "  /ast viz heatmap on|off | record on|off | clear");
+        msg(sender, "  /ast perf [reset | bench [n]]   (hot-path timings)");
     }
 
     private static void cmdCourse(ICommandSender sender, String[] args) throws CommandException {
         if (args.length == 0) {
-            msg(sender, "Usage: /ast course set <name> | load <name> | leave | info | list | delete <name>");
+            msg(sender, "Usage: /ast course set <name> | load <name> | leave | info | list | delete <name> | format | export | import | auto");
             return;
         }
         AstCourseManager cm = AstCourseManager.get();
@@ -163,6 +236,74 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
                 msg(sender, "Deleted course: " + name);
                 break;
             }
+            case "auto": {
+                if (args.length < 2 || !(args[1].equalsIgnoreCase("on") || args[1].equalsIgnoreCase("off"))) {
+                    msg(sender, "Usage: /ast course auto on|off   (currently " + (AstStartIndex.isEnabled() ? "on" : "off") + ")");
+                    return;
+                }
+                AstStartIndex.setEnabled(args[1].equalsIgnoreCase("on"));
+                msg(sender, "Course auto-activation " + (AstStartIndex.isEnabled() ? "on" : "off"));
+                break;
+            }
+            case "format": {
+                AstData.CourseFile c = cm.getActiveCourse();
+                if (c == null) {
+                    msg(sender, "No active course. Use /ast course set <name>.");
+                    return;
+                }
+                if (args.length < 2) {
+                    msg(sender, "Course format: " + cm.getCourseFormat(c.courseName) + "  (/ast course format json|binary)");
+                    return;
+                }
+                String fmt = args[1].toLowerCase(Locale.ROOT);
+                if (!fmt.equals("json") && !fmt.equals("binary")) {
+                    msg(sender, "Usage: /ast course format json|binary");
+                    return;
+                }
+                if (!cm.convertActiveCourseSafe(fmt.equals("binary"))) {
+                    msg(sender, "Failed to convert course.");
+                    return;
+                }
+                msg(sender, "Course " + c.courseName + " is now stored as " + fmt + ".");
+                break;
+            }
+            case "export": {
+                if (args.length < 2 || !args[1].equalsIgnoreCase("json")) {
+                    msg(sender, "Usage: /ast course export json [name]");
+                    return;
+                }
+                String name = args.length >= 3 ? joinTail(args, 2) : cm.getActiveCourseName();
+                if (name == null) {
+                    msg(sender, "No active course. Use /ast course export json <name>.");
+                    return;
+                }
+                File out = cm.exportCourseJsonSafe(name);
+                if (out == null) {
+                    msg(sender, "Course not found: " + name);
+                    return;
+                }
+                msg(sender, "Exported " + name + " -> exports/" + out.getName());
+                break;
+            }
+            case "import": {
+                if (args.length < 2) {
+                    msg(sender, "Usage: /ast course import <file>   (from config/autosplittimer/exports)");
+                    return;
+                }
+                String file = joinTail(args, 1);
+                String imported = cm.importCourseSafe(file);
+                if (imported == null) {
+                    msg(sender, "Import failed (missing or invalid): exports/" + file);
+                    return;
+                }
+                if (imported.equals(cm.getActiveCourseName())) {
+                    // reload so the active course picks up the global HUD again
+                    cm.loadExistingCourseAsActive(imported);
+                    AstRuntime.get().forceResetToIdle();
+                }
+                msg(sender, "Imported course: " + imported);
+                break;
+            }
             default:
                 msg(sender, "Unknown course subcommand.");
         }
@@ -176,7 +317,7 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
             return;
         }
         if (args.length == 0) {
-            msg(sender, "Usage: /ast seg add/delete/list/rename ...");
+            msg(sender, "Usage: /ast seg add/delete/list/rename/route/auto/import/export ...");
             return;
         }
         String sub = args[0].toLowerCase(Locale.ROOT);
@@ -226,11 +367,11 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
                 AxisAlignedBB bb = new AxisAlignedBB(bx, by, bz, bx + 1, by + seg.height, bz + 1);
                 seg.aabb = AstData.AabbDto.fromAabb(bb);
 
-                // replace if same index exists
-                c.segments.removeIf(s -> s != null && s.index == index);
-                c.segments.add(seg);
-                // normalize & save
-                cm.saveActiveCourseSafe();
+                // replace if same index exists (keeping its route)
+                AstData.Segment old = AstUtil.findSegment(c, index);
+                if (old != null) seg.next = old.next;
+                AstUtil.putSegment(c, seg);
+                cm.saveActiveCourseSafe(AstCourseManager.CHANGED_COURSE);
                 msg(sender, "Set seg [" + index + "] '" + name + "' height=" + AstUtil.formatDoubleTrunc5(seg.height)
                         + " at (" + bx + "," + AstUtil.formatDoubleTrunc5(by) + "," + bz + ")");
                 break;
@@ -241,11 +382,46 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
                     return;
                 }
                 int index = parseIntOrThrow(args[1]);
-                boolean removed = c.segments.removeIf(s -> s != null && s.index == index);
-                cm.saveActiveCourseSafe();
+                boolean removed = AstUtil.removeSegment(c, index);
+                cm.saveActiveCourseSafe(AstCourseManager.CHANGED_COURSE);
                 msg(sender, removed ? "Deleted seg " + index : "No seg " + index);
                 break;
             }
+            case "export": {
+                if (args.length < 2) {
+                    msg(sender, "Usage: /ast seg export <file.csv|file.json>");
+                    return;
+                }
+                File out = cm.exportSegmentsSafe(args[1]);
+                if (out == null) {
+                    msg(sender, "Export failed.");
+                    return;
+                }
+                msg(sender, "Exported " + c.segments.size() + " segments -> exports/" + out.getName());
+                break;
+            }
+            case "import": {
+                if (args.length < 2) {
+                    msg(sender, "Usage: /ast seg import <file.csv|file.json> [merge]");
+                    return;
+                }
+                boolean merge = args.length > 2 && "merge".equalsIgnoreCase(args[2]);
+                AstRuntime.get().forceResetToIdle();
+                try {
+                    int n = cm.importSegments(args[1], merge);
+                    msg(sender, "Imported " + n + " segments (" + (merge ? "merged" : "replaced") + "), course now has "
+                            + c.segments.size() + ".");
+                } catch (IOException e) {
+                    msg(sender, "Import failed: " + e.getMessage());
+                }
+                break;
+            }
+            case "auto":
+                cmdSegAuto(sender, c, Arrays.copyOfRange(args, 1, args.length));
+                break;
+            case "route":
+                cmdSegRoute(sender, c, Arrays.copyOfRange(args, 1, args.length));
+                break;
             case "rename": {
                 if (args.length < 3) {
                     msg(sender, "Usage: /ast seg rename <index> \"<name>\"");
@@ -259,7 +435,7 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
                     return;
                 }
                 seg.name = name;
-                cm.saveActiveCourseSafe();
+                cm.saveActiveCourseSafe(AstCourseManager.CHANGED_COURSE);
                 msg(sender, "Renamed seg " + index + " to '" + name + "'");
                 break;
             }
@@ -268,6 +444,103 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
         }
     }
 
+    private static void cmdSegAuto(ICommandSender sender, AstData.CourseFile c, String[] args) throws CommandException {
+        AstAutoSegments auto = AstAutoSegments.get();
+        if (args.length == 0) {
+            msg(sender, "Usage: /ast seg auto record|stop | <N> [distance|time] [height <h>]");
+            return;
+        }
+        if ("record".equalsIgnoreCase(args[0])) {
+            auto.startRecording();
+            msg(sender, "Recording route. Walk the course from Start to Goal, then /ast seg auto stop.");
+            return;
+        }
+        if ("stop".equalsIgnoreCase(args[0])) {
+            int n = auto.stopRecording();
+            msg(sender, "Recorded " + n + " ticks, " + AstUtil.formatDoubleTrunc5(Math.floor(auto.length())) + " blocks.");
+            return;
+        }
+        int count = parseIntOrThrow(args[0]);
+        if (count < 1) throw new CommandException("N must be at least 1.");
+        boolean byTime = args.length > 1 && "time".equalsIgnoreCase(args[1]);
+        double height = 2.0;
+        for (int i = 1; i < args.length; i++) {
+            if ("height".equalsIgnoreCase(args[i])) {
+                height = Math.max(MIN_HEIGHT, parseHeightDouble(args));
+                break;
+            }
+        }
+        if (auto.isRecording()) auto.stopRecording();
+        List<AstData.Segment> segs = auto.place(count, byTime, height);
+        if (segs == null) {
+            msg(sender, "No usable route recorded. Use /ast seg auto record first.");
+            return;
+        }
+        // one mutation, one save
+        AstRuntime.get().forceResetToIdle();
+        c.segments = segs;
+        AstCourseManager.get().saveActiveCourseSafe(AstCourseManager.CHANGED_COURSE);
+        msg(sender, "Placed Start + " + count + " segments by " + (byTime ? "time" : "distance")
+                + " (h=" + AstUtil.formatDoubleTrunc5(height) + "). Existing records may no longer match: /ast record clear all");
+    }
+
+    private static void cmdSegRoute(ICommandSender sender, AstData.CourseFile c, String[] args) throws CommandException {
+        if (args.length == 0 || "show".equalsIgnoreCase(args[0])) {
+            if (!AstRouteTable.get().isDeclared(c)) {
+                msg(sender, "No route declared: any higher index counts, the highest finishes.");
+                return;
+            }
+            msg(sender, "Route:");
+            for (AstData.Segment s : c.segments) {
+                if (s.next == null) continue;
+                msg(sender, "  [" + s.index + "] " + s.name + " -> "
+                        + (s.next.length == 0 ? "(goal)" : Arrays.toString(s.next)));
+            }
+            return;
+        }
+        if ("clear".equalsIgnoreCase(args[0])) {
+            AstRuntime.get().forceResetToIdle();
+            for (AstData.Segment s : c.segments) s.next = null;
+            c.segmentsRevision++;
+            AstCourseManager.get().saveActiveCourseSafe(AstCourseManager.CHANGED_COURSE);
+            msg(sender, "Route cleared.");
+            return;
+        }
+        if (args.length < 2) {
+            msg(sender, "Usage: /ast seg route [show] | clear | <index> <i,j,...>|goal|any");
+            return;
+        }
+        int index = parseIntOrThrow(args[0]);
+        AstData.Segment seg = AstUtil.findSegment(c, index);
+        if (seg == null) {
+            msg(sender, "No seg " + index);
+            return;
+        }
+        int[] next;
+        if ("any".equalsIgnoreCase(args[1])) {
+            next = null;
+        } else if ("goal".equalsIgnoreCase(args[1])) {
+            next = new int[0];
+        } else {
+            String[] parts = String.join(",", Arrays.copyOfRange(args, 1, args.length)).split(",");
+            List<Integer> list = new ArrayList<>();
+            for (String part : parts) {
+                if (part.trim().isEmpty()) continue;
+                int to = parseIntOrThrow(part.trim());
+                if (to == 0 || AstUtil.findSegment(c, to) == null) throw new CommandException("No seg " + to + " to route to.");
+                if (!list.contains(to)) list.add(to);
+            }
+            if (list.isEmpty()) throw new CommandException("List at least one segment index.");
+            next = new int[list.size()];
+            for (int i = 0; i < next.length; i++) next[i] = list.get(i);
+        }
+        AstRuntime.get().forceResetToIdle();
+        seg.next = next;
+        c.segmentsRevision++;
+        AstCourseManager.get().saveActiveCourseSafe(AstCourseManager.CHANGED_COURSE);
+        msg(sender, "Route [" + index + "] -> " + (next == null ? "any higher index" : next.length == 0 ? "(goal)" : Arrays.toString(next)));
+    }
+
     private static void cmdRun(ICommandSender sender, String[] args) throws CommandException {
         if (args.length == 0 || !"reset".equalsIgnoreCase(args[0])) {
             msg(sender, "Usage: /ast run reset");
@@ -277,6 +550,24 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
         msg(sender, "Run reset (IDLE)");
     }
 
+    private static void cmdRace(ICommandSender sender, String[] args) {
+        String sub = args.length > 0 ? args[0].toLowerCase(Locale.ROOT) : "";
+        switch (sub) {
+            case "on":
+            case "off":
+                AstRaceTracker.setEnabled(sub.equals("on"));
+                if (!AstRaceTracker.isEnabled()) AstRaceTracker.get().clear();
+                msg(sender, "Race tracking " + sub + (AstRaceTracker.isEnabled() ? " (HUD item: Race Standings)" : ""));
+                break;
+            case "reset":
+                AstRaceTracker.get().clear();
+                msg(sender, "Race standings cleared");
+                break;
+            default:
+                msg(sender, "Usage: /ast race on|off|reset   (currently " + (AstRaceTracker.isEnabled() ? "on" : "off") + ")");
+        }
+    }
+
     private static void cmdRecord(ICommandSender sender, String[] args) throws CommandException {
         AstCourseManager cm = AstCourseManager.get();
         AstData.CourseFile c = cm.getActiveCourse();
@@ -284,8 +575,19 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
             msg(sender, "No active course.");
             return;
         }
+        if (args.length == 1 && "rebuild".equalsIgnoreCase(args[0])) {
+            int n = AstAttemptStore.get().rebuildStatsSafe(c);
+            if (n == 0) {
+                msg(sender, "No attempt history for this course; records unchanged.");
+                return;
+            }
+            cm.saveActiveCourseSafe(AstCourseManager.CHANGED_COURSE);
+            AstRuntime.get().forceResetToIdle();
+            msg(sender, "Rebuilt records from " + n + " stored attempts.");
+            return;
+        }
         if (args.length < 2 || !"clear".equalsIgnoreCase(args[0])) {
-            msg(sender, "Usage: /ast record clear <pb|bestseg|bestsplit|all>");
+            msg(sender, "Usage: /ast record clear <pb|bestseg|bestsplit|all> | rebuild");
             return;
         }
         String t = args[1].toLowerCase(Locale.ROOT);
@@ -294,21 +596,23 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
                 c.stats.pb = new AstData.PbRecord();
                 break;
             case "bestseg":
-                c.stats.bestSegmentsTicks.clear();
+                c.stats.bestSegmentsTicks = new int[0];
+                c.stats.branchBestTicks = new int[0];
                 break;
             case "bestsplit":
-                c.stats.bestSplitTicks.clear();
+                c.stats.bestSplitTicks = new int[0];
                 break;
             case "all":
                 c.stats.pb = new AstData.PbRecord();
-                c.stats.bestSegmentsTicks.clear();
-                c.stats.bestSplitTicks.clear();
+                c.stats.bestSegmentsTicks = new int[0];
+                c.stats.bestSplitTicks = new int[0];
+                c.stats.branchBestTicks = new int[0];
                 break;
             default:
                 msg(sender, "Unknown target: " + t);
                 return;
         }
-        cm.saveActiveCourseSafe();
+        cm.saveActiveCourseSafe(AstCourseManager.CHANGED_COURSE);
         msg(sender, "Cleared records: " + t);
     }
 
@@ -333,7 +637,7 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
                 String preset = args[1];
                 c.hud.preset = preset;
                 AstHudConfigUtil.applyPreset(c.hud, preset, true);
-                AstCourseManager.get().saveActiveCourseSafe();
+                AstCourseManager.get().saveActiveCourseSafe(AstCourseManager.CHANGED_HUD);
                 AstHudRenderer.requestRebuild();
                 msg(sender, "HUD preset applied: " + c.hud.preset);
                 break;
@@ -349,7 +653,7 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
                     msg(sender, "Invalid number.");
                     return;
                 }
-                AstCourseManager.get().saveActiveCourseSafe();
+                AstCourseManager.get().saveActiveCourseSafe(AstCourseManager.CHANGED_HUD);
                 AstHudRenderer.requestRebuild();
                 msg(sender, "HUD scale=" + c.hud.scale);
                 break;
@@ -360,7 +664,7 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
                     return;
                 }
                 c.hud.theme = args[1];
-                AstCourseManager.get().saveActiveCourseSafe();
+                AstCourseManager.get().saveActiveCourseSafe(AstCourseManager.CHANGED_HUD);
                 AstHudRenderer.requestRebuild();
                 msg(sender, "HUD theme=" + c.hud.theme);
                 break;
@@ -371,7 +675,7 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
                     return;
                 }
                 c.hud.splitListCount = Math.max(0, parseIntOrThrow(args[1]));
-                AstCourseManager.get().saveActiveCourseSafe();
+                AstCourseManager.get().saveActiveCourseSafe(AstCourseManager.CHANGED_HUD);
                 AstHudRenderer.requestRebuild();
                 msg(sender, "HUD splitListCount=" + c.hud.splitListCount);
                 break;
@@ -384,7 +688,7 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
                 c.hud.splitListWidth = Math.max(60, parseIntOrThrow(args[1]));
                 // keep the user's primary/secondary ratio when the total width changes
                 AstHudConfigUtil.reconcileSplitWidths(c.hud, true);
-                AstCourseManager.get().saveActiveCourseSafe();
+                AstCourseManager.get().saveActiveCourseSafe(AstCourseManager.CHANGED_HUD);
                 AstHudRenderer.requestRebuild();
                 msg(sender, "HUD splitListWidth=" + c.hud.splitListWidth);
                 break;
@@ -396,7 +700,7 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
                 }
                 c.hud.splitPrimaryWidth = Math.max(10, parseIntOrThrow(args[1]));
                 AstHudConfigUtil.reconcileSplitWidths(c.hud, false);
-                AstCourseManager.get().saveActiveCourseSafe();
+                AstCourseManager.get().saveActiveCourseSafe(AstCourseManager.CHANGED_HUD);
                 AstHudRenderer.requestRebuild();
                 msg(sender, "HUD splitPrimaryWidth=" + c.hud.splitPrimaryWidth);
                 break;
@@ -408,7 +712,7 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
                 }
                 c.hud.splitSecondaryWidth = Math.max(10, parseIntOrThrow(args[1]));
                 AstHudConfigUtil.reconcileSplitWidths(c.hud, false);
-                AstCourseManager.get().saveActiveCourseSafe();
+                AstCourseManager.get().saveActiveCourseSafe(AstCourseManager.CHANGED_HUD);
                 AstHudRenderer.requestRebuild();
                 msg(sender, "HUD splitSecondaryWidth=" + c.hud.splitSecondaryWidth);
                 break;
@@ -420,7 +724,7 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
                 }
                 c.hud.splitListGap = Math.max(0, parseIntOrThrow(args[1]));
                 AstHudConfigUtil.reconcileSplitWidths(c.hud, false);
-                AstCourseManager.get().saveActiveCourseSafe();
+                AstCourseManager.get().saveActiveCourseSafe(AstCourseManager.CHANGED_HUD);
                 AstHudRenderer.requestRebuild();
                 msg(sender, "HUD splitListGap=" + c.hud.splitListGap);
                 break;
@@ -432,7 +736,7 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
                 //   /ast hud splitcols <split|seg> <pb|best>
                 if (args.length == 1) {
                     c.hud.comparison = "best".equalsIgnoreCase(c.hud.comparison) ? "pb" : "best";
-                    AstCourseManager.get().saveActiveCourseSafe();
+                    AstCourseManager.get().saveActiveCourseSafe(AstCourseManager.CHANGED_HUD);
                     AstHudRenderer.requestRebuild();
                     msg(sender, "HUD compare=" + c.hud.comparison + " unit=" + c.hud.unit);
                     return;
@@ -444,7 +748,7 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
                 c.hud.unit = args[1];
                 c.hud.comparison = args[2];
                 AstHudConfigUtil.normalizeHud(c.hud);
-                AstCourseManager.get().saveActiveCourseSafe();
+                AstCourseManager.get().saveActiveCourseSafe(AstCourseManager.CHANGED_HUD);
                 AstHudRenderer.requestRebuild();
                 msg(sender, "HUD compare=" + c.hud.comparison + " unit=" + c.hud.unit);
                 break;
@@ -473,7 +777,7 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
                         return;
                 }
                 AstHudConfigUtil.normalizeHud(c.hud);
-                AstCourseManager.get().saveActiveCourseSafe();
+                AstCourseManager.get().saveActiveCourseSafe(AstCourseManager.CHANGED_HUD);
                 AstHudRenderer.requestRebuild();
                 msg(sender, "HUD color updated: " + part + "=" + v);
                 break;
@@ -487,7 +791,7 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
                 String val = args[2].toLowerCase(Locale.ROOT);
                 boolean on = "on".equals(val) || "true".equals(val) || "1".equals(val);
                 c.hud.toggles.put(key, on);
-                AstCourseManager.get().saveActiveCourseSafe();
+                AstCourseManager.get().saveActiveCourseSafe(AstCourseManager.CHANGED_HUD);
                 AstHudRenderer.requestRebuild();
                 msg(sender, "HUD toggle " + key + "=" + on);
                 break;
@@ -498,7 +802,7 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
                     return;
                 }
                 c.hud.timeFormat = args[1].toUpperCase(Locale.ROOT);
-                AstCourseManager.get().saveActiveCourseSafe();
+                AstCourseManager.get().saveActiveCourseSafe(AstCourseManager.CHANGED_HUD);
                 AstHudRenderer.requestRebuild();
                 msg(sender, "HUD timeFormat=" + c.hud.timeFormat);
                 break;
@@ -550,7 +854,7 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
                 String preset = c.hud.preset;
                 c.hud = loaded;
                 c.hud.preset = preset;
-                AstCourseManager.get().saveActiveCourseSafe();
+                AstCourseManager.get().saveActiveCourseSafe(AstCourseManager.CHANGED_HUD);
                 AstHudRenderer.requestRebuild();
                 msg(sender, "Loaded layout: " + name);
                 break;
@@ -567,7 +871,7 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
 
     private static void cmdViz(ICommandSender sender, String[] args) {
         if (args.length == 0) {
-            msg(sender, "Usage: /ast viz on|off | mode outline|fill|both");
+            msg(sender, "Usage: /ast viz on|off | mode outline|fill|both | ghost on|off | heatmap ...");
             return;
         }
         String sub = args[0].toLowerCase(Locale.ROOT);
@@ -588,11 +892,173 @@ public class CommandAstRoot extends CommandBase implements IClientCommand {
                 AstVizRenderer.setMode(args[1]);
                 msg(sender, "Viz mode=" + AstVizRenderer.getModeName());
                 break;
+            case "ghost":
+                if (args.length < 2 || !(args[1].equalsIgnoreCase("on") || args[1].equalsIgnoreCase("off"))) {
+                    msg(sender, "Usage: /ast viz ghost on|off");
+                    return;
+                }
+                AstGhostRenderer.setEnabled(args[1].equalsIgnoreCase("on"));
+                msg(sender, "Ghost " + (AstGhostRenderer.isEnabled() ? "enabled" : "disabled"));
+                break;
+            case "heatmap":
+                cmdVizHeatmap(sender, Arrays.copyOfRange(args, 1, args.length));
+                break;
             default:
                 msg(sender, "Unknown viz subcommand.");
         }
     }
 
+    private static void cmdVizHeatmap(ICommandSender sender, String[] args) {
+        String sub = args.length > 0 ? args[0].toLowerCase(Locale.ROOT) : "";
+        boolean onOff = args.length > 1 && (args[1].equalsIgnoreCase("on") || args[1].equalsIgnoreCase("off"));
+        switch (sub) {
+            case "on":
+            case "off":
+                AstHeatmapRenderer.setEnabled(sub.equals("on"));
+                msg(sender, "Heatmap " + (AstHeatmapRenderer.isEnabled() ? "shown" : "hidden")
+                        + (AstHeatmap.isRecording() ? "" : " (recording is off: /ast viz heatmap record on)"));
+                break;
+            case "record":
+                if (!onOff) {
+                    msg(sender, "Usage: /ast viz heatmap record on|off");
+                    return;
+                }
+                AstHeatmap.setRecording(args[1].equalsIgnoreCase("on"));
+                msg(sender, "Heatmap recording " + (AstHeatmap.isRecording() ? "on" : "off"));
+                break;
+            case "clear": {
+                AstData.CourseFile c = AstCourseManager.get().getActiveCourse();
+                if (c == null) {
+                    msg(sender, "No active course.");
+                    return;
+                }
+                AstHeatmap.get().clearSafe(c);
+                msg(sender, "Heatmap cleared for " + c.courseName);
+                break;
+            }
+            default:
+                msg(sender, "Usage: /ast viz heatmap on|off | record on|off | clear");
+        }
+    }
+
+    private static void cmdAnalyze(ICommandSender sender, String[] args) {
+        AstData.CourseFile c = AstCourseManager.get().getActiveCourse();
+        if (c == null) {
+            msg(sender, "No active course.");
+            return;
+        }
+        boolean rerun = args.length > 0 && "rerun".equalsIgnoreCase(args[0]);
+        AstRouteAnalysis analysis = AstRouteAnalysis.get();
+        AstRouteAnalysis.Result cached = rerun ? null : analysis.cachedOrNull(c.courseName);
+        if (cached != null) {
+            for (String line : AstRouteAnalysis.format(cached)) msg(sender, line);
+            return;
+        }
+        if (!analysis.startSafe(c.courseName)) {
+            msg(sender, "An analysis is already running.");
+            return;
+        }
+        msg(sender, "Route analysis started for " + c.courseName + ".");
+    }
+
+    private static void cmdHistory(ICommandSender sender, String[] args) throws CommandException {
+        AstData.CourseFile c = AstCourseManager.get().getActiveCourse();
+        if (c == null) {
+            msg(sender, "No active course.");
+            return;
+        }
+        AstAttemptStore store = AstAttemptStore.get();
+        String fmt = c.hud == null ? null : c.hud.timeFormat;
+        String sub = args.length == 0 ? "last" : args[0].toLowerCase(Locale.ROOT);
+        switch (sub) {
+            case "last": {
+                int n = args.length >= 2 ? parseIntOrThrow(args[1]) : 10;
+                n = Math.max(1, Math.min(50, n));
+                msg(sender, "Attempts (" + store.countSafe(c.courseName) + " stored), newest first:");
+                int shown = store.visitLastSafe(c.courseName, n, (attempt, total, seg) ->
+                        msg(sender, "  #" + attempt + "  " + formatAttemptTotal(total, seg, fmt)));
+                if (shown == 0) msg(sender, "  (none)");
+                break;
+            }
+            case "get": {
+                if (args.length < 2) {
+                    msg(sender, "Usage: /ast history get <attempt>");
+                    return;
+                }
+                int attempt = parseIntOrThrow(args[1]);
+                boolean found = store.visitAttemptSafe(c.courseName, attempt, (a, total, seg) -> {
+                    msg(sender, "Attempt #" + a + ": " + formatAttemptTotal(total, seg, fmt));
+                    StringBuilder sb = new StringBuilder();
+                    for (int i = 0; i < seg.length; i++) {
+                        if (i > 0) sb.append(", ");
+                        sb.append(seg[i] == AstAttemptStore.NONE ? "--" : AstUtil.formatTicks(seg[i], fmt));
+                    }
+                    msg(sender, "  segments: " + sb);
+                });
+                if (!found) msg(sender, "Attempt #" + attempt + " is not in the history.");
+                break;
+            }
+            default:
+                msg(sender, "Usage: /ast history last [n] | get <attempt>");
+        }
+    }
+
+    private static String formatAttemptTotal(int total, int[] seg, String fmt) {
+        if (total != AstAttemptStore.NONE) return AstUtil.formatTicks(total, fmt);
+        int reached = 0;
+        for (int t : seg) {
+            if (t != AstAttemptStore.NONE) reached++;
+        }
+        return "reset (" + reached + "/" + seg.length + " splits)";
+    }
+
+    private static void cmdPerf(ICommandSender sender, String[] args) {
+        if (args.length > 0 && "reset".equalsIgnoreCase(args[0])) {
+            AstPerf.resetAll();
+            msg(sender, "Perf counters reset.");
+            return;
+        }
+        if (args.length > 0 && "bench".equalsIgnoreCase(args[0])) {
+            AstData.CourseFile c = AstCourseManager.get().getActiveCourse();
+            if (c == null) {
+                msg(sender, "No active course. Use /ast course set <name>.");
+                return;
+            }
+            int n = 200;
+            if (args.length > 1) {
+                try {
+                    n = Math.max(1, Math.min(100000, Integer.parseInt(args[1])));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            msg(sender, "JSON reflective -> streaming: " + AstJsonAdapters.bench(c, n));
+            return;
+        }
+        if (args.length > 0) {
+            msg(sender, "Usage: /ast perf [reset | bench [n]]");
+            return;
+        }
+        msg(sender, "Perf (p50 / p99 / max, calls):");
+        for (AstPerf.Probe p : AstPerf.Probe.values()) {
+            AstPerf.Snapshot s = AstPerf.snapshot(p);
+            if (s.count == 0) {
+                msg(sender, "  " + p.label + ": --");
+                continue;
+            }
+            msg(sender, "  " + p.label + ": " + AstPerf.formatNanos(s.p50)
+                    + " / " + AstPerf.formatNanos(s.p99)
+                    + " / " + AstPerf.formatNanos(s.max)
+                    + ", n=" + s.count);
+        }
+        msg(sender, "  cache: " + AstCourseManager.get().cacheSummary());
+        msg(sender, "  best index: " + AstBestSegmentIndex.get().summary());
+        msg(sender, "  ghost: " + AstGhostTrace.get().summary());
+        msg(sender, "  start index: " + AstStartIndex.get().summary());
+        msg(sender, "  race: " + AstRaceTracker.get().summary());
+        msg(sender, "  route: " + AstRouteTable.get().summary());
+        msg(sender, "  heatmap: " + AstHeatmap.get().summary(AstCourseManager.get().getActiveCourse()));
+    }
+
     /** Parse integer or throw a command-friendly error. Named to avoid clashing with CommandBase.parseInt. */
     public static int parseIntOrThrow(String s) throws CommandException {
         try {
@@ -0,0 +1,423 @@
+package com.konqasasas.ast.core;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Per-course attempt history ("courses/<name>.attempts"), one fixed-stride record per
+ * attempt, accessed through a memory-mapped file.
+ *
+ * Layout (big-endian):
+ *   header (32 bytes): magic "ASTA", format:int, segments:int, count:int, reserved
+ *   record (8 + 8*segments bytes): attempt:int, totalTicks:int, segmentTicks:int[segments],
+ *                                  segmentFrom:int[segments]
+ * {@link #NONE} (-1) marks a reset/abandoned attempt (totalTicks) or a skipped/unreached
+ * segment. segmentFrom is the box each segment was timed from (0 = Start), which decides its
+ * route branch; format 1 files did not record it and are migrated with NONE there. Segment
+ * slots are aligned to {@link AstUtil#sortedNonStartIndices}, like the stats arrays; when the
+ * segment count changes the file is rewritten with the new stride.
+ *
+ * Records are appended in attempt order, so lookups by attempt number are a binary
+ * search. Reads go straight to the mapping; no per-attempt objects are created, so heap
+ * use does not grow with history length. Only the most recently used course is mapped.
+ *
+ * The record is written before the count is bumped, so a crash mid-append drops at most
+ * that record. Durability is left to the OS page cache (a crash of the game does not lose
+ * mapped writes).
+ */
+public final class AstAttemptStore {
+    private static final AstAttemptStore INSTANCE = new AstAttemptStore();
+
+    public static AstAttemptStore get() {
+        return INSTANCE;
+    }
+
+    public static final String EXT = ".attempts";
+    public static final int NONE = -1;
+
+    private static final int MAGIC = 0x41535441; // "ASTA"
+    private static final int FORMAT = 2;
+    private static final int HEADER = 32;
+    private static final int OFF_SEGMENTS = 8;
+    private static final int OFF_COUNT = 12;
+    private static final int MIN_CAPACITY = 256;
+
+    private String openName = null;
+    private FileChannel channel = null;
+    private MappedByteBuffer map = null;
+    private int segments = 0;
+    private int count = 0;
+    private int capacity = 0;
+
+    private AstAttemptStore() {}
+
+    /** Read-only view of one record, valid until the next store call. */
+    public interface RecordVisitor {
+        void visit(int attempt, int totalTicks, int[] segmentTicks);
+    }
+
+    /**
+     * Append an attempt. {@code segmentTicks} is aligned to sortedNonStartIndices
+     * ({@link AstData#NO_TICKS} = not reached); {@code totalTicks} is {@link #NONE} for a
+     * reset attempt. {@code segmentFrom} is aligned the same way (null = not known).
+     *
+     * Attempt numbers stay strictly increasing (binary search in findRecord). If the history
+     * is already past {@code attempt} (the course's attemptCount fell behind, e.g. its file was
+     * restored or edited), the attempt is stored under the next free number and
+     * stats.attemptCount is raised to it. Returns the number stored, 0 if nothing was stored.
+     */
+    public synchronized int appendSafe(AstData.CourseFile course, int attempt, int totalTicks, int[] segmentTicks, int[] segmentFrom) {
+        if (course == null || course.courseName == null || attempt <= 0) return 0;
+        try {
+            int n = AstUtil.sortedNonStartIndices(course).size();
+            if (!open(course.courseName, n, true)) return 0;
+            int last = count > 0 ? map.getInt(recordOffset(count - 1)) : 0;
+            if (last >= attempt) {
+                attempt = last + 1;
+                if (course.stats != null) course.stats.attemptCount = Math.max(course.stats.attemptCount, attempt);
+            }
+            ensureCapacity(count + 1);
+            int off = recordOffset(count);
+            map.putInt(off, attempt);
+            map.putInt(off + 4, totalTicks);
+            for (int i = 0; i < segments; i++) {
+                int t = AstUtil.tickAt(segmentTicks, i);
+                map.putInt(off + 8 + 4 * i, t == AstData.NO_TICKS ? NONE : t);
+                int from = segmentFrom == null ? AstData.NO_TICKS : AstUtil.tickAt(segmentFrom, i);
+                map.putInt(fromOffset(off, i), from == AstData.NO_TICKS ? NONE : from);
+            }
+            count++;
+            map.putInt(OFF_COUNT, count);
+            return attempt;
+        } catch (IOException ignored) {
+            close();
+            return 0;
+        }
+    }
+
+    /** Highest stored attempt number for the course, 0 if there is no history. */
+    public synchronized int lastAttemptSafe(String courseName) {
+        try {
+            if (!open(courseName, -1, false) || count == 0) return 0;
+            return map.getInt(recordOffset(count - 1));
+        } catch (IOException e) {
+            close();
+            return 0;
+        }
+    }
+
+    public synchronized int countSafe(String courseName) {
+        try {
+            return open(courseName, -1, false) ? count : 0;
+        } catch (IOException e) {
+            close();
+            return 0;
+        }
+    }
+
+    /** Visit the last {@code n} attempts, newest first. Returns the number visited. */
+    public synchronized int visitLastSafe(String courseName, int n, RecordVisitor visitor) {
+        try {
+            if (!open(courseName, -1, false)) return 0;
+            int[] seg = new int[segments];
+            int visited = 0;
+            for (int r = count - 1; r >= 0 && visited < n; r--, visited++) {
+                visitRecord(r, seg, visitor);
+            }
+            return visited;
+        } catch (IOException e) {
+            close();
+            return 0;
+        }
+    }
+
+    /** Visit the record for attempt number {@code attempt}. Returns false if not stored. */
+    public synchronized boolean visitAttemptSafe(String courseName, int attempt, RecordVisitor visitor) {
+        try {
+            if (!open(courseName, -1, false)) return false;
+            int r = findRecord(attempt);
+            if (r < 0) return false;
+            visitRecord(r, new int[segments], visitor);
+            return true;
+        } catch (IOException e) {
+            close();
+            return false;
+        }
+    }
+
+    /** Visit every stored attempt, oldest first. Returns the number of records. */
+    public synchronized int visitAllSafe(String courseName, RecordVisitor visitor) {
+        try {
+            if (!open(courseName, -1, false)) return 0;
+            int[] seg = new int[segments];
+            for (int r = 0; r < count; r++) visitRecord(r, seg, visitor);
+            return count;
+        } catch (IOException e) {
+            close();
+            return 0;
+        }
+    }
+
+    /**
+     * Recompute PB, best segments, best splits and branch bests from the stored finished
+     * attempts. Attempts stored before visit order was recorded add no branch bests.
+     * Returns the number of attempts scanned (0 = no history; stats left untouched).
+     */
+    public synchronized int rebuildStatsSafe(AstData.CourseFile course) {
+        if (course == null) return 0;
+        try {
+            List<Integer> order = AstUtil.sortedNonStartIndices(course);
+            int n = order.size();
+            if (!open(course.courseName, n, false) || count == 0) return 0;
+            boolean branches = AstRouteTable.get().isDeclared(course);
+            int[] branchBest = new int[0];
+            int[] bestSeg = new int[n];
+            int[] bestSplit = new int[n];
+            java.util.Arrays.fill(bestSeg, Integer.MAX_VALUE);
+            java.util.Arrays.fill(bestSplit, Integer.MAX_VALUE);
+            int pbRecord = -1;
+            int pbTotal = Integer.MAX_VALUE;
+            int lastAttempt = 0;
+            for (int r = 0; r < count; r++) {
+                int off = recordOffset(r);
+                lastAttempt = map.getInt(off);
+                int total = map.getInt(off + 4);
+                if (total == NONE) continue; // stats only count finished runs
+                if (total < pbTotal) {
+                    pbTotal = total;
+                    pbRecord = r;
+                }
+                // cumulative = running sum of reached segments (skips do not reset the split clock)
+                int cumulative = 0;
+                for (int i = 0; i < n; i++) {
+                    int t = map.getInt(off + 8 + 4 * i);
+                    if (t == NONE) continue;
+                    cumulative += t;
+                    if (t < bestSeg[i]) bestSeg[i] = t;
+                    if (cumulative < bestSplit[i]) bestSplit[i] = cumulative;
+                    int from = map.getInt(fromOffset(off, i));
+                    if (branches && from != NONE) {
+                        branchBest = AstRouteTable.improveBranchBest(branchBest, from, order.get(i), t);
+                    }
+                }
+            }
+
+            AstData.Stats st = course.stats;
+            st.attemptCount = Math.max(st.attemptCount, lastAttempt);
+            st.pb = new AstData.PbRecord();
+            for (int i = 0; i < n; i++) {
+                if (bestSeg[i] == Integer.MAX_VALUE) bestSeg[i] = AstData.NO_TICKS;
+                if (bestSplit[i] == Integer.MAX_VALUE) bestSplit[i] = AstData.NO_TICKS;
+            }
+            st.bestSegmentsTicks = bestSeg;
+            st.bestSplitTicks = bestSplit;
+            st.branchBestTicks = branchBest;
+            st.pb.segmentTicks = AstUtil.resizeTicks(null, n);
+            if (pbRecord >= 0) {
+                int off = recordOffset(pbRecord);
+                st.pb.totalTicks = pbTotal;
+                st.pb.segmentFrom = AstUtil.resizeTicks(null, n);
+                boolean knownFrom = false;
+                for (int i = 0; i < n; i++) {
+                    int t = map.getInt(off + 8 + 4 * i);
+                    st.pb.segmentTicks[i] = t == NONE ? AstData.NO_TICKS : t;
+                    int from = map.getInt(fromOffset(off, i));
+                    st.pb.segmentFrom[i] = from == NONE ? AstData.NO_TICKS : from;
+                    knownFrom |= from != NONE;
+                }
+                if (!knownFrom) st.pb.segmentFrom = null;
+            }
+            return count;
+        } catch (IOException e) {
+            close();
+            return 0;
+        }
+    }
+
+    /** Drop a course's history (course deleted). */
+    public synchronized void deleteSafe(String courseName) {
+        if (courseName == null) return;
+        if (courseName.trim().equals(openName)) close();
+        File f = fileFor(courseName);
+        //noinspection ResultOfMethodCallIgnored
+        f.delete();
+    }
+
+    public synchronized void closeSafe() {
+        close();
+    }
+
+    // ---- internals ----
+
+    private void visitRecord(int r, int[] seg, RecordVisitor visitor) {
+        int off = recordOffset(r);
+        for (int i = 0; i < segments; i++) seg[i] = map.getInt(off + 8 + 4 * i);
+        visitor.visit(map.getInt(off), map.getInt(off + 4), seg);
+    }
+
+    private int findRecord(int attempt) {
+        int lo = 0, hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int a = map.getInt(recordOffset(mid));
+            if (a < attempt) lo = mid + 1;
+            else if (a > attempt) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    private int stride() {
+        return 8 + 8 * segments;
+    }
+
+    private int fromOffset(int recordOffset, int i) {
+        return recordOffset + 8 + 4 * segments + 4 * i;
+    }
+
+    private int recordOffset(int r) {
+        return HEADER + r * stride();
+    }
+
+    /**
+     * Map the course's store. {@code wantSegments} >= 0 re-strides an existing file to that
+     * segment count; -1 accepts whatever is on disk. A format 1 file is migrated first.
+     * Returns false if there is no store and {@code create} is false.
+     */
+    private boolean open(String courseName, int wantSegments, boolean create) throws IOException {
+        if (courseName == null) return false;
+        String name = courseName.trim();
+        if (name.equals(openName) && map != null && (wantSegments < 0 || wantSegments == segments)) return true;
+        close();
+
+        File f = fileFor(name);
+        if (!f.exists() || f.length() < HEADER) {
+            if (!create) return false;
+            writeEmpty(f, Math.max(0, wantSegments));
+        } else {
+            int[] header = readHeader(f);
+            int want = wantSegments >= 0 ? wantSegments : header[1];
+            // other formats are rejected below
+            if (header[0] == 1 || (header[0] == FORMAT && want != header[1])) restride(f, want);
+        }
+
+        channel = FileChannel.open(f.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        if (map.getInt(0) != MAGIC || map.getInt(4) != FORMAT) {
+            close();
+            throw new IOException("Not an attempt store: " + f);
+        }
+        segments = map.getInt(OFF_SEGMENTS);
+        capacity = (int) ((channel.size() - HEADER) / stride());
+        count = Math.max(0, Math.min(map.getInt(OFF_COUNT), capacity));
+        openName = name;
+        return true;
+    }
+
+    private void ensureCapacity(int records) throws IOException {
+        if (records <= capacity) return;
+        int newCap = Math.max(MIN_CAPACITY, Math.max(records, capacity * 2));
+        long size = HEADER + (long) newCap * stride();
+        if (size > Integer.MAX_VALUE) throw new IOException("Attempt store full");
+        // mapping past EOF grows the file
+        MappedByteBuffer old = map;
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        unmap(old);
+        capacity = newCap;
+    }
+
+    /** {format, segments} */
+    private static int[] readHeader(File f) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(f))) {
+            in.readInt();
+            return new int[]{in.readInt(), in.readInt()};
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out, int segments, int count) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT);
+        out.writeInt(segments);
+        out.writeInt(count);
+        out.write(new byte[HEADER - 16]);
+    }
+
+    private static void writeEmpty(File f, int segments) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(f))) {
+            writeHeader(out, segments, 0);
+        }
+    }
+
+    /**
+     * Rewrite the file in the current format with a new segment count (pad with NONE /
+     * truncate, like the stats arrays). Format 1 records gain NONE segmentFrom slots.
+     */
+    private static void restride(File f, int newSegments) throws IOException {
+        File tmp = new File(f.getParentFile(), f.getName() + ".tmp");
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            in.readInt();
+            int oldFormat = in.readInt();
+            int oldSegments = in.readInt();
+            int oldCount = in.readInt();
+            in.skipBytes(HEADER - 16);
+            int oldArrays = oldFormat == 1 ? 1 : 2;
+            long available = (f.length() - HEADER) / (8 + 4L * oldArrays * oldSegments);
+            int records = (int) Math.min(Math.max(0, oldCount), available);
+            writeHeader(out, newSegments, records);
+            for (int r = 0; r < records; r++) {
+                out.writeInt(in.readInt());
+                out.writeInt(in.readInt());
+                for (int a = 0; a < 2; a++) {
+                    for (int i = 0; i < oldSegments; i++) {
+                        int t = a < oldArrays ? in.readInt() : NONE;
+                        if (i < newSegments) out.writeInt(t);
+                    }
+                    for (int i = oldSegments; i < newSegments; i++) out.writeInt(NONE);
+                }
+            }
+        }
+        Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void close() {
+        unmap(map);
+        map = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+        openName = null;
+        segments = 0;
+        count = 0;
+        capacity = 0;
+    }
+
+    /**
+     * Release a mapping now instead of at GC. Windows refuses to replace or delete a file
+     * that is still mapped, which would break restride/delete. Best-effort (Java 8 API).
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (buffer == null) return;
+        try {
+            java.lang.reflect.Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) cleaner.getClass().getMethod("clean").invoke(cleaner);
+        } catch (Throwable ignored) {
+            // left to GC
+        }
+    }
+
+    private static File fileFor(String courseName) {
+        return AstCourseManager.get().courseSideFile(courseName, EXT);
+    }
+}
@@ -0,0 +1,113 @@
+package com.konqasasas.ast.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Course setup from a walk-through: "/ast seg auto record" samples the player position every
+ * client tick until "/ast seg auto stop", then "/ast seg auto <N>" places a Start box at the
+ * first sample and N trigger boxes evenly spaced along the recorded route (by arc length or
+ * by time), the last one at the end of the route.
+ *
+ * Placement only builds the segment list; the caller swaps it in as one change and saves once.
+ */
+public final class AstAutoSegments {
+    private static final AstAutoSegments INSTANCE = new AstAutoSegments();
+
+    public static AstAutoSegments get() {
+        return INSTANCE;
+    }
+
+    private static final int MAX_SAMPLES = 20 * 60 * 60; // one hour of ticks
+
+    private boolean recording = false;
+    private double[] xyz = new double[3 * 1024];
+    private int samples = 0;
+
+    private AstAutoSegments() {}
+
+    public synchronized void startRecording() {
+        recording = true;
+        samples = 0;
+    }
+
+    /** Stop recording; returns the number of samples kept. */
+    public synchronized int stopRecording() {
+        recording = false;
+        return samples;
+    }
+
+    public synchronized boolean isRecording() {
+        return recording;
+    }
+
+    public synchronized int samples() {
+        return samples;
+    }
+
+    /** One client tick at the player's position (no-op unless recording). */
+    public synchronized void tick(double x, double y, double z) {
+        if (!recording) return;
+        if (samples >= MAX_SAMPLES) {
+            recording = false;
+            return;
+        }
+        if (samples * 3 + 3 > xyz.length) xyz = Arrays.copyOf(xyz, xyz.length * 2);
+        xyz[samples * 3] = x;
+        xyz[samples * 3 + 1] = y;
+        xyz[samples * 3 + 2] = z;
+        samples++;
+    }
+
+    /** Length of the recorded route in blocks. */
+    public synchronized double length() {
+        double len = 0.0;
+        for (int i = 1; i < samples; i++) len += step(i);
+        return len;
+    }
+
+    /**
+     * Start (index 0) plus {@code count} checkpoints (1..count, the last one named "Goal"),
+     * each a 1x1 box of the given height at the player's block and exact Y, like "seg add".
+     * Null if the recording is too short.
+     */
+    public synchronized List<AstData.Segment> place(int count, boolean byTime, double height) {
+        if (count < 1 || samples < 2) return null;
+        double[] arc = new double[samples];
+        for (int i = 1; i < samples; i++) arc[i] = arc[i - 1] + step(i);
+        double length = arc[samples - 1];
+        if (!byTime && length <= 0.0) return null;
+
+        List<AstData.Segment> out = new ArrayList<>(count + 1);
+        out.add(segment(0, "Start", 0, height));
+        int at = 0;
+        for (int k = 1; k <= count; k++) {
+            int sample;
+            if (byTime) {
+                sample = (int) Math.round((double) k * (samples - 1) / count);
+            } else {
+                double target = length * k / count;
+                while (at < samples - 1 && arc[at] < target) at++;
+                sample = at;
+            }
+            out.add(segment(k, k == count ? "Goal" : "CP " + k, sample, height));
+        }
+        return out;
+    }
+
+    private AstData.Segment segment(int index, String name, int sample, double height) {
+        AstData.Segment s = new AstData.Segment();
+        s.index = index;
+        s.name = name;
+        s.height = height;
+        double bx = Math.floor(xyz[sample * 3]), by = xyz[sample * 3 + 1], bz = Math.floor(xyz[sample * 3 + 2]);
+        s.aabb = new AstData.AabbDto(bx, by, bz, bx + 1, by + height, bz + 1);
+        return s;
+    }
+
+    private double step(int i) {
+        double dx = xyz[i * 3] - xyz[i * 3 - 3], dy = xyz[i * 3 + 1] - xyz[i * 3 - 2], dz = xyz[i * 3 + 2] - xyz[i * 3 - 1];
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+}
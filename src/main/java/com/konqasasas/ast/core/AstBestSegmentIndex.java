@@ -0,0 +1,143 @@
+package com.konqasasas.ast.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Prefix sums over the active course's best segments, for Sum of Best and Best Possible Time.
+ *
+ * Two Fenwick trees (tick sums and a count of {@link AstData#NO_TICKS} slots) give
+ * "sum of best from position p" in O(log n); SoB is kept as a running total. The segment
+ * order (sortedNonStartIndices) is cached alongside so position lookups are a binary search.
+ *
+ * The index rebuilds itself when the course, its segmentsRevision or the best-segments array
+ * instance changes. In-place writes to that array must be reported via {@link #onBestSegment}.
+ */
+public final class AstBestSegmentIndex {
+    private static final AstBestSegmentIndex INSTANCE = new AstBestSegmentIndex();
+
+    public static AstBestSegmentIndex get() {
+        return INSTANCE;
+    }
+
+    private AstData.CourseFile course = null;
+    private int revision = -1;
+    private int[] source = null;
+
+    private int[] order = new int[0];
+    private List<Integer> orderList = Collections.emptyList();
+    private long[] sums = new long[1];   // 1-based Fenwick
+    private int[] missing = new int[1];  // 1-based Fenwick
+    private int[] values = new int[0];
+    private long total = 0L;
+    private int totalMissing = 0;
+    private int rebuilds = 0;
+
+    private AstBestSegmentIndex() {}
+
+    /** Sum of best segments, or null if the course has none or any is missing. */
+    public synchronized Integer sumOfBest(AstData.CourseFile course) {
+        if (!sync(course) || values.length == 0 || totalMissing > 0) return null;
+        return (int) total;
+    }
+
+    /** Sum of best segments at positions {@code from..end}; 0 if none, null if any is missing. */
+    public synchronized Integer bestRemaining(AstData.CourseFile course, int from) {
+        if (!sync(course)) return null;
+        if (from < 0) from = 0;
+        if (from >= values.length) return 0;
+        if (totalMissing - prefixMissing(from) > 0) return null;
+        return (int) (total - prefixSum(from));
+    }
+
+    /** Position of a segment index in sortedNonStartIndices order, or -1. */
+    public synchronized int positionOf(AstData.CourseFile course, int segmentIndex) {
+        if (!sync(course)) return -1;
+        int p = Arrays.binarySearch(order, segmentIndex);
+        return p < 0 ? -1 : p;
+    }
+
+    /** Cached sortedNonStartIndices (unmodifiable). */
+    public synchronized List<Integer> order(AstData.CourseFile course) {
+        if (!sync(course)) return AstUtil.sortedNonStartIndices(course);
+        return orderList;
+    }
+
+    /** Report {@code course.stats.bestSegmentsTicks[pos] = ticks} written in place. */
+    public synchronized void onBestSegment(AstData.CourseFile course, int pos, int ticks) {
+        if (course != this.course || course.stats == null || course.stats.bestSegmentsTicks != source) return;
+        if (pos < 0 || pos >= values.length) return;
+        int old = values[pos];
+        if (old == ticks) return;
+        values[pos] = ticks;
+        long dSum = (ticks == AstData.NO_TICKS ? 0L : ticks) - (old == AstData.NO_TICKS ? 0L : old);
+        int dMissing = (ticks == AstData.NO_TICKS ? 1 : 0) - (old == AstData.NO_TICKS ? 1 : 0);
+        total += dSum;
+        totalMissing += dMissing;
+        for (int i = pos + 1; i < sums.length; i += i & -i) {
+            sums[i] += dSum;
+            missing[i] += dMissing;
+        }
+    }
+
+    public synchronized String summary() {
+        return "segments=" + values.length + " rebuilds=" + rebuilds;
+    }
+
+    private boolean sync(AstData.CourseFile c) {
+        if (c == null || c.stats == null) return false;
+        if (c == course && c.segmentsRevision == revision && c.stats.bestSegmentsTicks == source) return true;
+        rebuild(c);
+        return true;
+    }
+
+    private void rebuild(AstData.CourseFile c) {
+        course = c;
+        revision = c.segmentsRevision;
+        source = c.stats.bestSegmentsTicks;
+        rebuilds++;
+
+        List<Integer> sorted = AstUtil.sortedNonStartIndices(c);
+        order = new int[sorted.size()];
+        for (int i = 0; i < order.length; i++) order[i] = sorted.get(i);
+        orderList = Collections.unmodifiableList(new ArrayList<>(sorted));
+
+        // Stats arrays follow the order length after normalize; pad in case an edit is unsaved.
+        values = AstUtil.resizeTicks(source, order.length);
+        int n = values.length;
+        sums = new long[n + 1];
+        missing = new int[n + 1];
+        total = 0L;
+        totalMissing = 0;
+        for (int i = 0; i < n; i++) {
+            boolean none = values[i] == AstData.NO_TICKS;
+            sums[i + 1] += none ? 0L : values[i];
+            missing[i + 1] += none ? 1 : 0;
+            total += none ? 0L : values[i];
+            totalMissing += none ? 1 : 0;
+        }
+        // O(n) Fenwick construction: push each node into its parent.
+        for (int i = 1; i <= n; i++) {
+            int parent = i + (i & -i);
+            if (parent <= n) {
+                sums[parent] += sums[i];
+                missing[parent] += missing[i];
+            }
+        }
+    }
+
+    /** Sum of positions [0, end). */
+    private long prefixSum(int end) {
+        long s = 0L;
+        for (int i = end; i > 0; i -= i & -i) s += sums[i];
+        return s;
+    }
+
+    private int prefixMissing(int end) {
+        int m = 0;
+        for (int i = end; i > 0; i -= i & -i) m += missing[i];
+        return m;
+    }
+}
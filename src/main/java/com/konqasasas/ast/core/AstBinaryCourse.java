@@ -0,0 +1,285 @@
+package com.konqasasas.ast.core;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary course container ("<name>.astb").
+ *
+ * Layout (big-endian):
+ *   magic "ASTB", version:byte (= {@link AstData#DATA_VERSION}), courseName:str
+ *   sections: [tag:byte][len:varint][payload], unknown tags are skipped
+ *     SEGMENTS  count:varint, then per segment: index:zigzag, name:str, height:f64,
+ *               minX,minY,minZ,maxX,maxY,maxZ:f64
+ *     STATS     attemptCount:varint, pbTotal:tick, pbSegments:ticks,
+ *               bestSegments:ticks, bestSplits:ticks, pbFrom:ticks (absent in older files)
+ *     ROUTE     (only when declared) count:varint, then per routed segment:
+ *               segment:varint (position in SEGMENTS), next count:varint, next count x index:zigzag
+ *     BRANCHES  (only when recorded) count:varint, then per branch best:
+ *               from:zigzag, to:zigzag, ticks:tick
+ *   crc32 of everything before it
+ *
+ *   str   = varint (byteLen + 1, 0 = null) + UTF-8
+ *   tick  = varint (0 = null, otherwise zigzag(v) + 1)
+ *   ticks = varint (count + 1, 0 = null list) + count x tick
+ *
+ * The HUD is not stored: loading always replaces it with the global HUD.
+ * The whole file is read with one sequential read and decoded from memory.
+ */
+public final class AstBinaryCourse {
+    private AstBinaryCourse() {}
+
+    public static final String EXT = ".astb";
+
+    private static final byte[] MAGIC = {'A', 'S', 'T', 'B'};
+    private static final int TAG_SEGMENTS = 1;
+    private static final int TAG_STATS = 2;
+    private static final int TAG_ROUTE = 3;
+    private static final int TAG_BRANCHES = 4;
+
+    public static void write(AstData.CourseFile cf, OutputStream out) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(256 + 64 * (cf.segments == null ? 0 : cf.segments.size()));
+        DataOutputStream d = new DataOutputStream(body);
+        d.write(MAGIC);
+        d.writeByte(AstData.DATA_VERSION);
+        writeString(d, cf.courseName);
+
+        ByteArrayOutputStream section = new ByteArrayOutputStream();
+        DataOutputStream s = new DataOutputStream(section);
+        List<AstData.Segment> segs = cf.segments == null ? new ArrayList<>() : cf.segments;
+        writeVarint(s, segs.size());
+        for (AstData.Segment seg : segs) {
+            AstData.AabbDto bb = seg.aabb == null ? new AstData.AabbDto() : seg.aabb;
+            writeVarint(s, zigzag(seg.index));
+            writeString(s, seg.name);
+            s.writeDouble(seg.height);
+            s.writeDouble(bb.minX);
+            s.writeDouble(bb.minY);
+            s.writeDouble(bb.minZ);
+            s.writeDouble(bb.maxX);
+            s.writeDouble(bb.maxY);
+            s.writeDouble(bb.maxZ);
+        }
+        writeSection(d, TAG_SEGMENTS, section);
+
+        section.reset();
+        AstData.Stats st = cf.stats == null ? new AstData.Stats() : cf.stats;
+        AstData.PbRecord pb = st.pb == null ? new AstData.PbRecord() : st.pb;
+        writeVarint(s, Math.max(0, st.attemptCount));
+        writeTick(s, pb.totalTicks);
+        writeTicks(s, pb.segmentTicks);
+        writeTicks(s, st.bestSegmentsTicks);
+        writeTicks(s, st.bestSplitTicks);
+        writeTicks(s, pb.segmentFrom);
+        writeSection(d, TAG_STATS, section);
+
+        int routed = 0;
+        for (AstData.Segment seg : segs) if (seg.next != null) routed++;
+        if (routed > 0) {
+            section.reset();
+            writeVarint(s, routed);
+            for (int i = 0; i < segs.size(); i++) {
+                int[] next = segs.get(i).next;
+                if (next == null) continue;
+                writeVarint(s, i);
+                writeVarint(s, next.length);
+                for (int n : next) writeVarint(s, zigzag(n));
+            }
+            writeSection(d, TAG_ROUTE, section);
+        }
+
+        int[] branches = st.branchBestTicks;
+        if (branches != null && branches.length >= 3) {
+            section.reset();
+            writeVarint(s, branches.length / 3);
+            for (int i = 0; i + 2 < branches.length; i += 3) {
+                writeVarint(s, zigzag(branches[i]));
+                writeVarint(s, zigzag(branches[i + 1]));
+                writeTick(s, branches[i + 2] == AstData.NO_TICKS ? null : branches[i + 2]);
+            }
+            writeSection(d, TAG_BRANCHES, section);
+        }
+
+        d.flush();
+        CRC32 crc = new CRC32();
+        crc.update(body.toByteArray(), 0, body.size());
+        d.writeInt((int) crc.getValue());
+        body.writeTo(out);
+    }
+
+    /** Decode a whole file. Throws IOException for bad magic/version/CRC or a truncated file. */
+    public static AstData.CourseFile read(byte[] data) throws IOException {
+        if (data.length < MAGIC.length + 1 + 4) throw new IOException("Truncated course file");
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 4);
+        ByteBuffer b = ByteBuffer.wrap(data);
+        if (b.getInt(data.length - 4) != (int) crc.getValue()) throw new IOException("Course file checksum mismatch");
+        b.limit(data.length - 4);
+        try {
+            for (byte m : MAGIC) {
+                if (b.get() != m) throw new IOException("Not a course file");
+            }
+            int version = b.get() & 0xFF;
+            if (version > AstData.DATA_VERSION) throw new IOException("Course file version " + version + " is newer than this mod");
+
+            AstData.CourseFile cf = new AstData.CourseFile();
+            cf.version = version;
+            cf.courseName = readString(b);
+            int[] pendingBranches = null; // applied once STATS has been read, whatever the order
+            while (b.hasRemaining()) {
+                int tag = b.get() & 0xFF;
+                int len = readVarint(b);
+                int end = b.position() + len;
+                if (len < 0 || end > b.limit()) throw new IOException("Truncated course file");
+                switch (tag) {
+                    case TAG_SEGMENTS: {
+                        int n = readVarint(b);
+                        List<AstData.Segment> segs = new ArrayList<>(Math.min(n, len));
+                        for (int i = 0; i < n; i++) {
+                            AstData.Segment seg = new AstData.Segment();
+                            seg.index = unzigzag(readVarint(b));
+                            seg.name = readString(b);
+                            seg.height = b.getDouble();
+                            seg.aabb = new AstData.AabbDto(b.getDouble(), b.getDouble(), b.getDouble(),
+                                    b.getDouble(), b.getDouble(), b.getDouble());
+                            segs.add(seg);
+                        }
+                        cf.segments = segs;
+                        break;
+                    }
+                    case TAG_STATS: {
+                        AstData.Stats st = new AstData.Stats();
+                        st.attemptCount = readVarint(b);
+                        st.pb.totalTicks = readTick(b);
+                        st.pb.segmentTicks = readTicks(b);
+                        st.bestSegmentsTicks = readTicks(b);
+                        st.bestSplitTicks = readTicks(b);
+                        if (b.position() < end) st.pb.segmentFrom = readTicks(b);
+                        cf.stats = st;
+                        break;
+                    }
+                    case TAG_ROUTE: {
+                        int n = readVarint(b);
+                        for (int i = 0; i < n; i++) {
+                            int pos = readVarint(b);
+                            int count = readVarint(b);
+                            if (count > b.remaining()) throw new IOException("Truncated course file");
+                            int[] next = new int[count];
+                            for (int k = 0; k < count; k++) next[k] = unzigzag(readVarint(b));
+                            if (cf.segments != null && pos >= 0 && pos < cf.segments.size()) cf.segments.get(pos).next = next;
+                        }
+                        break;
+                    }
+                    case TAG_BRANCHES: {
+                        int n = readVarint(b);
+                        if (n < 0 || n > b.remaining()) throw new IOException("Truncated course file");
+                        int[] branches = new int[n * 3];
+                        for (int i = 0; i < branches.length; i += 3) {
+                            branches[i] = unzigzag(readVarint(b));
+                            branches[i + 1] = unzigzag(readVarint(b));
+                            Integer t = readTick(b);
+                            branches[i + 2] = t == null ? AstData.NO_TICKS : t;
+                        }
+                        pendingBranches = branches;
+                        break;
+                    }
+                    default:
+                        break; // section from a newer writer
+                }
+                b.position(end);
+            }
+            if (pendingBranches != null && cf.stats != null) cf.stats.branchBestTicks = pendingBranches;
+            return cf;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated course file", e);
+        }
+    }
+
+    // ---- encoding helpers (also used for attempt history) ----
+
+    static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    static int unzigzag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    static void writeVarint(DataOutput out, int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    static int readVarint(ByteBuffer b) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int x = b.get() & 0xFF;
+            v |= (x & 0x7F) << shift;
+            if ((x & 0x80) == 0) return v;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static void writeTick(DataOutput out, Integer v) throws IOException {
+        writeVarint(out, v == null ? 0 : zigzag(v) + 1);
+    }
+
+    static Integer readTick(ByteBuffer b) throws IOException {
+        int raw = readVarint(b);
+        return raw == 0 ? null : unzigzag(raw - 1);
+    }
+
+    private static void writeTicks(DataOutput out, int[] ticks) throws IOException {
+        if (ticks == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        writeVarint(out, ticks.length + 1);
+        for (int t : ticks) writeTick(out, t == AstData.NO_TICKS ? null : t);
+    }
+
+    private static int[] readTicks(ByteBuffer b) throws IOException {
+        int n = readVarint(b) - 1;
+        if (n < 0) return null;
+        if (n > b.remaining()) throw new IOException("Truncated course file"); // >= 1 byte per tick
+        int[] ticks = new int[n];
+        for (int i = 0; i < n; i++) {
+            Integer t = readTick(b);
+            ticks[i] = t == null ? AstData.NO_TICKS : t;
+        }
+        return ticks;
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer b) throws IOException {
+        int n = readVarint(b) - 1;
+        if (n < 0) return null;
+        if (n > b.remaining()) throw new IOException("Truncated course file");
+        String s = new String(b.array(), b.arrayOffset() + b.position(), n, StandardCharsets.UTF_8);
+        b.position(b.position() + n);
+        return s;
+    }
+
+    private static void writeSection(DataOutputStream out, int tag, ByteArrayOutputStream payload) throws IOException {
+        out.writeByte(tag);
+        writeVarint(out, payload.size());
+        payload.writeTo(out);
+    }
+}
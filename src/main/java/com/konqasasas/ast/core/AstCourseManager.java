@@ -1,7 +1,7 @@
 package com.konqasasas.ast.core;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
 import com.google.gson.JsonSyntaxException;
 import com.konqasasas.ast.AutoSplitTimerMod;
 import com.konqasasas.ast.hud.AstHudConfigUtil;
@@ -24,11 +24,38 @@ public final class AstCourseManager {
         return INSTANCE;
     }
 
-    private final Gson gson = new GsonBuilder().setPrettyPrinting().serializeNulls().create();
-    private final Map<String, AstData.CourseFile> cache = new HashMap<>();
+    private final Gson gson = AstJsonAdapters.create(AstJsonAdapters.PRETTY);
+    /** Storage format for new courses (-Dautosplittimer.courseFormat=binary). */
+    private static final boolean BINARY_DEFAULT = "binary".equalsIgnoreCase(System.getProperty("autosplittimer.courseFormat"));
+    /**
+     * Loaded course bodies, least recently used first. Bounded by {@link #cacheBudgetBytes}
+     * (estimated heap size, see {@link #estimateBytes}); the active course is never evicted
+     * and a course whose last save failed is saved again before it is dropped.
+     */
+    private final LinkedHashMap<String, AstData.CourseFile> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> cacheSizes = new HashMap<>();
+    private final Set<String> dirty = new HashSet<>();
+    private long cacheBytes = 0L;
+    private long cacheBudgetBytes = Long.getLong("autosplittimer.courseCacheBytes", 4L * 1024 * 1024);
+    private int cacheEvictions = 0;
+    // Course index by file base name; course bodies are loaded lazily (set/load).
+    private TreeMap<String, AstData.ManifestEntry> manifest = null;
+    // bumped whenever manifest entries change (see AstStartIndex)
+    private int manifestRevision = 0;
+    private boolean manifestDirty = false;
     private String activeCourseName = null;
     // Global HUD config shared across courses (prevents resets on course switching).
     private AstData.HudConfig globalHud = null;
+    // hud.json content as last written by us (null = unknown, next save writes)
+    private String lastSavedHudJson = null;
+
+    /**
+     * What a save covers; see {@link #saveActiveCourseSafe(int)}. Segments and stats live in
+     * the same course file and are always written together, so there is one flag for both.
+     */
+    public static final int CHANGED_HUD = 1;
+    public static final int CHANGED_COURSE = 2;
+    public static final int CHANGED_ALL = CHANGED_HUD | CHANGED_COURSE;
 
     private AstCourseManager() {}
 
@@ -54,15 +81,25 @@ public final class AstCourseManager {
     }
 
     public synchronized AstData.HudConfig loadGlobalHudSafe() {
-        try {
-            File f = globalHudFile();
-            if (!f.exists()) return null;
-            try (Reader r = new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8)) {
-                AstData.HudConfig hud = gson.fromJson(r, AstData.HudConfig.class);
-                if (hud == null) return null;
-                AstHudConfigUtil.normalizeHud(hud);
-                return hud;
+        File f = globalHudFile();
+        if (!f.exists()) return null;
+        AstData.HudConfig hud = readHudOrNull(f);
+        if (hud == null && AstFileIo.backupOf(f).exists()) {
+            // truncated/corrupt hud.json: fall back to the rolling backup
+            try {
+                AstFileIo.restoreFromBackup(f);
+                hud = readHudOrNull(f);
+            } catch (IOException ignored) {
             }
+        }
+        if (hud == null) return null;
+        AstHudConfigUtil.normalizeHud(hud);
+        return hud;
+    }
+
+    private AstData.HudConfig readHudOrNull(File f) {
+        try (Reader r = new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8)) {
+            return gson.fromJson(r, AstData.HudConfig.class);
         } catch (Exception ignored) {
             return null;
         }
@@ -70,14 +107,21 @@ public final class AstCourseManager {
 
     public synchronized void saveGlobalHudSafe(AstData.HudConfig hud) {
         if (hud == null) return;
-        File dir = baseConfigDir();
-        if (!dir.exists()) dir.mkdirs();
-        File f = globalHudFile();
-        try (Writer w = new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8)) {
-            gson.toJson(hud, w);
+        try {
+            String json = gson.toJson(hud, AstData.HudConfig.class);
+            if (json.equals(lastSavedHudJson)) return; // unchanged: skip the rewrite
+            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            AstFileIo.writeAtomic(globalHudFile(), out -> out.write(bytes));
+            lastSavedHudJson = json;
         } catch (Exception ignored) {}
     }
 
+    private void writeJson(Object value, OutputStream out) throws IOException {
+        Writer w = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        gson.toJson(value, w);
+        w.flush();
+    }
+
     public synchronized String getActiveCourseName() {
         return activeCourseName;
     }
@@ -92,11 +136,10 @@ public final class AstCourseManager {
         activeCourseName = null;
     }
 
-    /** True if a course JSON exists on disk. */
+    /** True if a course file exists on disk. */
     public synchronized boolean courseExists(String courseName) {
         if (courseName == null) return false;
-        File f = courseFile(courseName.trim());
-        return f.exists();
+        return courseFile(courseName.trim()).exists();
     }
 
     /** Load an existing course. Unlike setActiveCourse(), this does not create a new file. */
@@ -111,7 +154,7 @@ public final class AstCourseManager {
         // Always use global HUD config (prevents reset on course change)
         cf.hud = AstHudConfigUtil.copyHud(globalHud);
         AstHudConfigUtil.normalizeHud(cf.hud);
-        cache.put(courseName, cf);
+        cachePut(courseName, cf);
         activeCourseName = courseName;
         return true;
     }
@@ -132,7 +175,7 @@ public final class AstCourseManager {
             ensureGlobalHudLoaded();
             cf.hud = AstHudConfigUtil.copyHud(globalHud);
             AstHudConfigUtil.normalizeHud(cf.hud);
-            cache.put(courseName, cf);
+            cachePut(courseName, cf);
             activeCourseName = courseName;
         }
     }
@@ -146,29 +189,166 @@ public final class AstCourseManager {
         return loadCourseSafe(courseName);
     }
 
+    /** Sorted course names from the manifest (no disk access once indexed). */
     public synchronized List<String> listCourseNames() {
-        File dir = coursesDir();
-        File[] files = dir.listFiles((d, n) -> n.toLowerCase(Locale.ROOT).endsWith(".json"));
-        List<String> out = new ArrayList<>();
-        if (files != null) {
-            for (File f : files) {
-                String n = f.getName();
-                if (n.toLowerCase(Locale.ROOT).endsWith(".json")) {
-                    out.add(n.substring(0, n.length() - 5));
+        if (manifest == null) refreshManifestSafe();
+        return manifest == null ? new ArrayList<>() : new ArrayList<>(manifest.keySet());
+    }
+
+    /** Manifest entry for a course (null if unknown). */
+    public synchronized AstData.ManifestEntry getManifestEntry(String courseName) {
+        if (courseName == null) return null;
+        if (manifest == null) refreshManifestSafe();
+        return manifest == null ? null : manifest.get(manifestKey(courseName));
+    }
+
+    /**
+     * Rebuild the in-memory manifest from courses.manifest.json and the courses directory.
+     * Only files whose size or mtime changed since the last index are parsed.
+     */
+    public synchronized void refreshManifestSafe() {
+        try {
+            Map<String, AstData.ManifestEntry> old = readManifestOrEmpty();
+            TreeMap<String, AstData.ManifestEntry> next = new TreeMap<>();
+            boolean changed = false;
+
+            File dir = coursesDir();
+            File[] files = dir.listFiles((d, n) -> isCourseFileName(n));
+            if (files != null) {
+                for (File f : files) {
+                    String name = baseName(f);
+                    // both formats present (conversion interrupted): the binary file wins, as in courseFile()
+                    if (!isBinary(f) && new File(dir, name + AstBinaryCourse.EXT).exists()) continue;
+                    AstData.ManifestEntry e = old.get(name);
+                    if (e == null || e.fileSize != f.length() || e.lastModified != f.lastModified()
+                            || (e.segmentCount >= 0 && (!e.startIndexed || e.courseName == null))) {
+                        e = indexCourseFile(name, f, null);
+                        changed = true;
+                    }
+                    next.put(name, e);
                 }
             }
+            if (next.size() != old.size()) changed = true;
+            manifest = next;
+            manifestRevision++;
+            manifestDirty |= changed;
+            flushManifestSafe();
+        } catch (Exception ignored) {
+        }
+    }
+
+    /** Persist the manifest if it changed. Cheap no-op otherwise. */
+    public synchronized void flushManifestSafe() {
+        if (!manifestDirty || manifest == null) return;
+        AstData.CourseManifest out = new AstData.CourseManifest();
+        out.courses.addAll(manifest.values());
+        try {
+            AstFileIo.writeAtomic(manifestFile(), os -> writeJson(out, os));
+            manifestDirty = false;
+        } catch (Exception ignored) {
+        }
+    }
+
+    private Map<String, AstData.ManifestEntry> readManifestOrEmpty() {
+        Map<String, AstData.ManifestEntry> out = new HashMap<>();
+        File f = manifestFile();
+        if (!f.exists()) return out;
+        try (Reader r = new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8)) {
+            AstData.CourseManifest m = gson.fromJson(r, AstData.CourseManifest.class);
+            if (m == null || m.courses == null || m.version != AstData.DATA_VERSION) return out;
+            for (AstData.ManifestEntry e : m.courses) {
+                if (e != null && e.name != null) out.put(e.name, e);
+            }
+        } catch (Exception ignored) {
+            // rebuilt from the directory below
         }
-        Collections.sort(out);
         return out;
     }
 
+    /** Build a manifest entry from a parsed course, or by parsing the file when {@code cf} is null. */
+    private AstData.ManifestEntry indexCourseFile(String name, File f, AstData.CourseFile cf) {
+        AstData.ManifestEntry e = new AstData.ManifestEntry();
+        e.name = name;
+        e.fileSize = f.length();
+        e.lastModified = f.lastModified();
+        e.segmentCount = -1;
+        try {
+            if (cf == null) cf = parseCourseFile(f);
+            e.segmentCount = cf.segments == null ? 0 : cf.segments.size();
+            // as sanitizeLoaded: a file without a name is the course named after the file
+            e.courseName = cf.courseName == null || cf.courseName.trim().isEmpty() ? name : cf.courseName.trim();
+            e.pbTicks = (cf.stats != null && cf.stats.pb != null) ? cf.stats.pb.totalTicks : null;
+            if (cf.segments != null) {
+                for (AstData.Segment s : cf.segments) {
+                    if (s != null && s.index == 0 && s.aabb != null) e.start = s.aabb;
+                }
+            }
+            e.startIndexed = true;
+        } catch (Exception ignored) {
+            // unparseable: still listed, loading will report/recover it
+        }
+        return e;
+    }
+
+    private void updateManifest(File f, AstData.CourseFile cf) {
+        if (manifest == null) return;
+        String name = baseName(f);
+        manifest.put(name, indexCourseFile(name, f, cf));
+        manifestRevision++;
+        manifestDirty = true;
+    }
+
+    public synchronized int manifestRevision() {
+        return manifestRevision;
+    }
+
+    /**
+     * Start boxes of all indexed courses, by the course name stored in the file (not the
+     * sanitized file name, which would load as a different course). Courses without Start omitted.
+     */
+    public synchronized Map<String, AstData.AabbDto> startBoxes() {
+        if (manifest == null) refreshManifestSafe();
+        Map<String, AstData.AabbDto> out = new HashMap<>();
+        if (manifest == null) return out;
+        for (AstData.ManifestEntry e : manifest.values()) {
+            if (e.start != null) out.put(e.courseName != null ? e.courseName : e.name, e.start);
+        }
+        return out;
+    }
+
+    /** True if {@code courseName} is stored in the same file as the active course. */
+    public synchronized boolean isActiveCourse(String courseName) {
+        return activeCourseName != null && courseName != null && safeName(activeCourseName).equals(safeName(courseName));
+    }
+
+    private String manifestKey(String courseName) {
+        return safeName(courseName);
+    }
+
     public synchronized void deleteCourse(String courseName) {
         if (courseName == null) return;
-        cache.remove(courseName);
-        File f = courseFile(courseName);
-        if (f.exists()) {
-            //noinspection ResultOfMethodCallIgnored
-            f.delete();
+        cacheRemove(courseName);
+        dirty.remove(courseName);
+        for (File f : new File[]{jsonCourseFile(courseName), binaryCourseFile(courseName)}) {
+            if (f.exists()) {
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+            }
+            // also drop the backup, otherwise a new course of the same name could recover from it
+            File bak = AstFileIo.backupOf(f);
+            if (bak.exists()) {
+                //noinspection ResultOfMethodCallIgnored
+                bak.delete();
+            }
+        }
+        AstAttemptStore.get().deleteSafe(courseName);
+        AstGhostTrace.get().deleteSafe(courseName);
+        AstTraceStore.get().deleteSafe(courseName);
+        AstHeatmap.get().deleteSafe(courseName);
+        if (manifest != null && manifest.remove(manifestKey(courseName)) != null) {
+            manifestRevision++;
+            manifestDirty = true;
+            flushManifestSafe();
         }
         if (courseName.equals(activeCourseName)) {
             activeCourseName = null;
@@ -178,23 +358,33 @@ public final class AstCourseManager {
     public synchronized AstData.CourseFile loadCourseSafe(String courseName) {
         try {
             AstData.CourseFile cf = loadCourse(courseName);
-            cache.put(courseName, cf);
+            cachePut(courseName, cf);
             return cf;
         } catch (Exception ignored) {
             return null;
         }
     }
 
+    /**
+     * Startup indexing. Course bodies are no longer parsed up front: only the manifest is
+     * refreshed, and courses load on /ast course set|load.
+     */
     public void loadAllCoursesSafe() {
+        refreshManifestSafe();
+    }
+
+    private AstData.CourseFile loadCourse(String courseName) throws IOException {
+        long t0 = AstPerf.begin();
+        Object jfr = AstJfr.beginLoad();
         try {
-            for (String n : listCourseNames()) {
-                loadCourseSafe(n);
-            }
-        } catch (Exception ignored) {
+            return readCourse(courseName);
+        } finally {
+            AstPerf.end(AstPerf.Probe.COURSE_LOAD, t0);
+            AstJfr.endLoad(jfr, courseName, jfr == null ? 0L : courseFile(courseName).length());
         }
     }
 
-    private AstData.CourseFile loadCourse(String courseName) throws IOException {
+    private AstData.CourseFile readCourse(String courseName) throws IOException {
         File f = courseFile(courseName);
         if (!f.exists()) {
             ensureGlobalHudLoaded();
@@ -204,92 +394,439 @@ public final class AstCourseManager {
             AstHudConfigUtil.normalizeHud(cf.hud);
             // reasonable defaults: empty segments
             saveCourse(courseName, cf);
+            flushManifestSafe();
             return cf;
         }
+        AstData.CourseFile cf;
+        try {
+            cf = parseCourseFile(f);
+        } catch (IOException e) {
+            // Truncated or corrupt (e.g. crash mid-write by an older version): recover from backup.
+            if (!AstFileIo.backupOf(f).exists()) throw e;
+            AstFileIo.restoreFromBackup(f);
+            cf = parseCourseFile(f);
+        }
+        sanitizeLoaded(cf, courseName);
+        return cf;
+    }
+
+    /** Migrate/sanitize a freshly parsed course and attach the global HUD. */
+    private void sanitizeLoaded(AstData.CourseFile cf, String courseName) {
+        if (cf.courseName == null || cf.courseName.trim().isEmpty()) {
+            cf.courseName = courseName;
+        }
+        // migrate/sanitize
+        if (cf.hud == null) cf.hud = new AstData.HudConfig();
+        if (cf.hud.toggles == null) cf.hud.toggles = new HashMap<>();
+        // PB HUD item removed; keep pb record but hide toggle if old configs had it
+        cf.hud.toggles.remove("pb");
+        if (cf.hud.itemOrder == null) cf.hud.itemOrder = new ArrayList<>();
+        if (cf.hud.itemOrder.isEmpty()) {
+            // populate defaults (PB item intentionally omitted)
+            cf.hud.itemOrder.add("courseName");
+            cf.hud.itemOrder.add("time");
+            cf.hud.itemOrder.add("segment");
+            cf.hud.itemOrder.add("segmentTime");
+            cf.hud.itemOrder.add("prevSeg");
+            cf.hud.itemOrder.add("ghostDelta");
+            cf.hud.itemOrder.add("sob");
+            cf.hud.itemOrder.add("bpt");
+            cf.hud.itemOrder.add("bestSeg");
+            cf.hud.itemOrder.add("bestSplit");
+            cf.hud.itemOrder.add("attempt");
+            cf.hud.itemOrder.add("splitList");
+            cf.hud.itemOrder.add("raceList");
+        }
+        if (cf.hud.splitListWidth <= 0) cf.hud.splitListWidth = 140;
+        if (cf.hud.splitListGap < 0) cf.hud.splitListGap = 6;
+        // IMPORTANT: canonicalize HUD fields (including splitColsSecondary) on load.
+        // This prevents accidental Minecraft formatting codes or invalid strings from
+        // collapsing split columns to "none".
+        AstHudConfigUtil.normalizeHud(cf.hud);
+        if (cf.stats == null) cf.stats = new AstData.Stats();
+        if (cf.segments == null) cf.segments = new ArrayList<>();
+        normalizeSegments(cf);
+        normalizeStatsArrays(cf);
+        // overwrite with global HUD (shared across courses)
+        ensureGlobalHudLoaded();
+        cf.hud = AstHudConfigUtil.copyHud(globalHud);
+        AstHudConfigUtil.normalizeHud(cf.hud);
+    }
+
+    private AstData.CourseFile parseCourseFile(File f) throws IOException {
+        if (isBinary(f)) {
+            // one sequential read, decoded from memory
+            return AstBinaryCourse.read(java.nio.file.Files.readAllBytes(f.toPath()));
+        }
         try (Reader r = new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8)) {
             AstData.CourseFile cf = gson.fromJson(r, AstData.CourseFile.class);
             if (cf == null) throw new IOException("Empty JSON");
-            if (cf.courseName == null || cf.courseName.trim().isEmpty()) {
-                cf.courseName = courseName;
-            }
-            // migrate/sanitize
-            if (cf.hud == null) cf.hud = new AstData.HudConfig();
-            if (cf.hud.toggles == null) cf.hud.toggles = new HashMap<>();
-            // PB HUD item removed; keep pb record but hide toggle if old configs had it
-            cf.hud.toggles.remove("pb");
-            if (cf.hud.itemOrder == null) cf.hud.itemOrder = new ArrayList<>();
-            if (cf.hud.itemOrder.isEmpty()) {
-                // populate defaults (PB item intentionally omitted)
-                cf.hud.itemOrder.add("courseName");
-                cf.hud.itemOrder.add("time");
-                cf.hud.itemOrder.add("segment");
-                cf.hud.itemOrder.add("segmentTime");
-                cf.hud.itemOrder.add("prevSeg");
-                cf.hud.itemOrder.add("sob");
-                cf.hud.itemOrder.add("bpt");
-                cf.hud.itemOrder.add("bestSeg");
-                cf.hud.itemOrder.add("bestSplit");
-                cf.hud.itemOrder.add("attempt");
-                cf.hud.itemOrder.add("splitList");
-            }
-            if (cf.hud.splitListWidth <= 0) cf.hud.splitListWidth = 140;
-            if (cf.hud.splitListGap < 0) cf.hud.splitListGap = 6;
-            // IMPORTANT: canonicalize HUD fields (including splitColsSecondary) on load.
-            // This prevents accidental Minecraft formatting codes or invalid strings from
-            // collapsing split columns to "none".
-            AstHudConfigUtil.normalizeHud(cf.hud);
-            if (cf.stats == null) cf.stats = new AstData.Stats();
-            if (cf.segments == null) cf.segments = new ArrayList<>();
-            normalizeSegments(cf);
-            normalizeStatsArrays(cf);
-            // overwrite with global HUD (shared across courses)
-            ensureGlobalHudLoaded();
-            cf.hud = AstHudConfigUtil.copyHud(globalHud);
-            AstHudConfigUtil.normalizeHud(cf.hud);
             return cf;
-        } catch (JsonSyntaxException jse) {
+        } catch (JsonSyntaxException | JsonIOException jse) {
             throw new IOException("Invalid JSON: " + jse.getMessage(), jse);
         }
     }
 
     public synchronized void saveActiveCourseSafe() {
+        saveActiveCourseSafe(CHANGED_ALL);
+    }
+
+    /**
+     * Save only what changed ({@code CHANGED_*} flags).
+     * HUD changes go to hud.json (skipped if the content is unchanged); the course file is
+     * not rewritten for them, since its HUD copy is replaced by the global HUD on load.
+     * Segment/stats changes rewrite the whole course file (and never hud.json).
+     */
+    public synchronized void saveActiveCourseSafe(int changes) {
         AstData.CourseFile cf = getActiveCourse();
         if (cf == null) return;
-        try {
-            ensureGlobalHudLoaded();
-            globalHud = AstHudConfigUtil.copyHud(cf.hud);
-            saveGlobalHudSafe(globalHud);
-            saveCourse(activeCourseName, cf);
-        } catch (Exception ignored) {
+        if ((changes & CHANGED_HUD) != 0) {
+            try {
+                ensureGlobalHudLoaded();
+                String json = gson.toJson(cf.hud, AstData.HudConfig.class);
+                if (!json.equals(lastSavedHudJson)) {
+                    globalHud = AstHudConfigUtil.copyHud(cf.hud);
+                    saveGlobalHudSafe(globalHud);
+                }
+            } catch (Exception ignored) {
+            }
+        }
+        if ((changes & CHANGED_COURSE) != 0) {
+            saveCachedSafe(activeCourseName, cf);
+            evictIfOverBudget();
         }
     }
 
     public synchronized void saveCourseSafe(String courseName) {
         AstData.CourseFile cf = cache.get(courseName);
         if (cf == null) return;
+        saveCachedSafe(courseName, cf);
+        evictIfOverBudget();
+    }
+
+    /**
+     * Save a cached course; on failure it stays dirty and is retried before eviction.
+     * Every mutation ends in a save, so this is also where the cache re-charges its size.
+     */
+    private boolean saveCachedSafe(String courseName, AstData.CourseFile cf) {
+        recharge(courseName, cf);
         try {
             saveCourse(courseName, cf);
+            dirty.remove(courseName);
+            return true;
         } catch (Exception ignored) {
+            dirty.add(courseName);
+            return false;
         }
     }
 
+    private void cachePut(String courseName, AstData.CourseFile cf) {
+        cacheRemove(courseName);
+        long size = estimateBytes(cf);
+        cache.put(courseName, cf);
+        cacheSizes.put(courseName, size);
+        cacheBytes += size;
+        evictIfOverBudget();
+    }
+
+    /**
+     * Re-estimate a cached course after it changed in place. No eviction and no cache.get()
+     * (access order would move): callers may be iterating the cache.
+     */
+    private void recharge(String courseName, AstData.CourseFile cf) {
+        Long old = cacheSizes.get(courseName);
+        if (old == null) return;
+        long size = estimateBytes(cf);
+        cacheSizes.put(courseName, size);
+        cacheBytes += size - old;
+    }
+
+    private void cacheRemove(String courseName) {
+        if (cache.remove(courseName) == null) return;
+        Long size = cacheSizes.remove(courseName);
+        if (size != null) cacheBytes -= size;
+    }
+
+    private void evictIfOverBudget() {
+        if (cacheBytes <= cacheBudgetBytes) return;
+        Iterator<Map.Entry<String, AstData.CourseFile>> it = cache.entrySet().iterator();
+        while (cacheBytes > cacheBudgetBytes && it.hasNext()) {
+            Map.Entry<String, AstData.CourseFile> e = it.next();
+            // the newest entry is the course being loaded right now
+            if (!it.hasNext()) break;
+            String name = e.getKey();
+            if (name.equals(activeCourseName)) continue;
+            // never drop unsaved progress: keep the entry if it still cannot be written
+            if (dirty.contains(name) && !saveCachedSafe(name, e.getValue())) continue;
+            it.remove();
+            Long size = cacheSizes.remove(name);
+            if (size != null) cacheBytes -= size;
+            cacheEvictions++;
+        }
+    }
+
+    /**
+     * Rough retained heap of a course body: object headers + fields, boxed ticks and
+     * strings at 2 bytes/char. Only needs to be proportional, not exact.
+     */
+    static long estimateBytes(AstData.CourseFile cf) {
+        long n = 96;
+        if (cf.courseName != null) n += 40 + 2L * cf.courseName.length();
+        if (cf.segments != null) {
+            for (AstData.Segment seg : cf.segments) {
+                n += 48 + 64; // Segment + AabbDto
+                if (seg != null && seg.name != null) n += 40 + 2L * seg.name.length();
+                if (seg != null) n += listBytes(seg.next);
+            }
+        }
+        if (cf.stats != null) {
+            n += 64;
+            n += listBytes(cf.stats.bestSegmentsTicks) + listBytes(cf.stats.bestSplitTicks) + listBytes(cf.stats.branchBestTicks);
+            if (cf.stats.pb != null) n += 32 + listBytes(cf.stats.pb.segmentTicks) + listBytes(cf.stats.pb.segmentFrom);
+        }
+        if (cf.hud != null) {
+            n += 512;
+            if (cf.hud.toggles != null) n += 64L * cf.hud.toggles.size();
+            if (cf.hud.itemOrder != null) n += 56L * cf.hud.itemOrder.size();
+        }
+        return n;
+    }
+
+    private static long listBytes(int[] ticks) {
+        return ticks == null ? 0 : 16 + 4L * ticks.length;
+    }
+
+    /** Cache summary for /ast perf: "entries, used/budget KiB, evictions, dirty". */
+    public synchronized String cacheSummary() {
+        return cache.size() + " courses, " + (cacheBytes / 1024) + "/" + (cacheBudgetBytes / 1024)
+                + " KiB, " + cacheEvictions + " evicted, " + dirty.size() + " dirty";
+    }
+
     private void saveCourse(String courseName, AstData.CourseFile cf) throws IOException {
-        File f = courseFile(courseName);
-        File dir = f.getParentFile();
-        if (!dir.exists()) {
-            //noinspection ResultOfMethodCallIgnored
-            dir.mkdirs();
+        long t0 = AstPerf.begin();
+        Object jfr = AstJfr.beginSave();
+        try {
+            writeCourse(courseName, cf);
+        } finally {
+            AstPerf.end(AstPerf.Probe.COURSE_SAVE, t0);
+            AstJfr.endSave(jfr, courseName, jfr == null ? 0L : courseFile(courseName).length());
         }
+    }
+
+    private void writeCourse(String courseName, AstData.CourseFile cf) throws IOException {
+        writeCourseTo(courseFile(courseName), courseName, cf);
+    }
+
+    private void writeCourseTo(File f, String courseName, AstData.CourseFile cf) throws IOException {
         cf.version = AstData.DATA_VERSION;
         cf.courseName = courseName;
         normalizeSegments(cf);
         normalizeStatsArrays(cf);
-        try (Writer w = new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8)) {
-            gson.toJson(cf, w);
+        if (isBinary(f)) {
+            AstFileIo.writeAtomic(f, out -> AstBinaryCourse.write(cf, out));
+        } else {
+            AstFileIo.writeAtomic(f, out -> writeJson(cf, out));
+        }
+        // Kept in memory; persisted on course create/delete and when the world unloads.
+        updateManifest(f, cf);
+    }
+
+    /**
+     * A course file changed outside the game (reported by {@link AstFileWatcher}; the name
+     * is the file base name). Re-indexes it and reloads the cached body, unless the change
+     * is our own write or a reload would throw away in-game state.
+     */
+    public synchronized void onCourseFileChangedSafe(String baseName) {
+        try {
+            if (manifest == null) {
+                refreshManifestSafe();
+                return;
+            }
+            File f = courseFile(baseName);
+            AstData.ManifestEntry old = manifest.get(baseName);
+            if (!f.exists()) {
+                if (manifest.remove(baseName) != null) {
+                    manifestRevision++;
+                    manifestDirty = true;
+                }
+                return;
+            }
+            // our own save: the manifest already has this size/mtime
+            if (old != null && old.fileSize == f.length() && old.lastModified == f.lastModified()) return;
+
+            AstData.CourseFile parsed;
+            try {
+                parsed = parseCourseFile(f);
+            } catch (IOException e) {
+                return; // still being written by the other tool; its next event retries
+            }
+            manifest.put(baseName, indexCourseFile(baseName, f, parsed));
+            manifestRevision++;
+            manifestDirty = true;
+
+            String key = null;
+            for (String k : cache.keySet()) {
+                if (safeName(k).equals(baseName)) {
+                    key = k;
+                    break;
+                }
+            }
+            if (key == null) return; // not loaded; picked up on the next set/load
+            if (dirty.contains(key)) {
+                chat("Course " + key + " changed on disk, but has unsaved changes; keeping the in-game copy.");
+                return;
+            }
+            boolean active = key.equals(activeCourseName);
+            if (active && AstRuntime.get().getState() == AstRuntime.State.RUNNING) {
+                chat("Course " + key + " changed on disk; /ast course load " + key + " after this run to apply it.");
+                return;
+            }
+            sanitizeLoaded(parsed, key);
+            cachePut(key, parsed);
+            if (active) {
+                AstRuntime.get().forceResetToIdle();
+                chat("Reloaded course " + key + " from disk.");
+            }
+        } catch (Exception ignored) {
+        }
+    }
+
+    /** "binary" or "json": how the course is stored on disk. */
+    public synchronized String getCourseFormat(String courseName) {
+        return isBinary(courseFile(courseName)) ? "binary" : "json";
+    }
+
+    /**
+     * Re-store the active course as binary (.astb) or JSON. The new file is written before
+     * the old one is removed, so an interruption leaves both (binary wins on load).
+     */
+    public synchronized boolean convertActiveCourseSafe(boolean binary) {
+        AstData.CourseFile cf = getActiveCourse();
+        if (cf == null) return false;
+        File from = courseFile(activeCourseName);
+        File to = binary ? binaryCourseFile(activeCourseName) : jsonCourseFile(activeCourseName);
+        if (from.equals(to) && to.exists()) return true;
+        try {
+            writeCourseTo(to, activeCourseName, cf);
+        } catch (Exception e) {
+            return false;
         }
+        //noinspection ResultOfMethodCallIgnored
+        from.delete();
+        //noinspection ResultOfMethodCallIgnored
+        AstFileIo.backupOf(from).delete();
+        dirty.remove(activeCourseName);
+        return true;
     }
 
-    private File coursesDir() {
+    /** Write a course as pretty JSON to config/autosplittimer/exports. Returns the file, or null. */
+    public synchronized File exportCourseJsonSafe(String courseName) {
+        if (courseName == null || courseName.trim().isEmpty()) return null;
+        courseName = courseName.trim();
+        AstData.CourseFile cf = cache.get(courseName);
+        if (cf == null) cf = loadExistingCourseSafe(courseName);
+        if (cf == null) return null;
+        AstData.CourseFile src = cf;
+        File out = new File(exportsDir(), safeName(courseName) + ".json");
+        try {
+            Gson pretty = AstJsonAdapters.create(true);
+            AstFileIo.writeAtomic(out, os -> {
+                Writer w = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+                pretty.toJson(src, AstData.CourseFile.class, w);
+                w.flush();
+            });
+            return out;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Import config/autosplittimer/exports/<fileName>.json as a course (replacing a course
+     * of the same name). The course is stored in its current format. Returns the course
+     * name, or null if the file is missing or invalid.
+     */
+    public synchronized String importCourseSafe(String fileName) {
+        if (fileName == null || fileName.trim().isEmpty()) return null;
+        String base = fileName.trim();
+        if (base.toLowerCase(Locale.ROOT).endsWith(".json")) base = base.substring(0, base.length() - 5);
+        File in = new File(exportsDir(), safeName(base) + ".json");
+        if (!in.exists()) return null;
+        try {
+            AstData.CourseFile cf = parseCourseFile(in);
+            String courseName = (cf.courseName == null || cf.courseName.trim().isEmpty()) ? base : cf.courseName.trim();
+            sanitizeLoaded(cf, courseName);
+            saveCourse(courseName, cf);
+            flushManifestSafe();
+            cachePut(courseName, cf);
+            dirty.remove(courseName);
+            return courseName;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /** Write the active course's segments to exports/<fileName> (.csv or .json, default .csv). */
+    public synchronized File exportSegmentsSafe(String fileName) {
+        AstData.CourseFile cf = getActiveCourse();
+        if (cf == null || fileName == null || fileName.trim().isEmpty()) return null;
+        File out = segmentsFile(fileName);
+        try {
+            AstSegmentIo.write(out, cf.segments);
+            return out;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Apply exports/<fileName> to the active course as one change: the whole file is read and
+     * validated first, then the segment list is swapped (replaced, or merged by index) and the
+     * course normalized and written once. When merging, an imported segment without a route
+     * keeps the route of the segment it replaces. Returns the number of segments read.
+     */
+    public synchronized int importSegments(String fileName, boolean merge) throws IOException {
+        AstData.CourseFile cf = getActiveCourse();
+        if (cf == null) throw new IOException("no active course");
+        File in = segmentsFile(fileName);
+        if (!in.exists()) throw new FileNotFoundException("exports/" + in.getName() + " not found");
+        List<AstData.Segment> read = AstSegmentIo.read(in);
+        List<AstData.Segment> next = new ArrayList<>(read);
+        if (merge) {
+            Map<Integer, AstData.Segment> replaced = new HashMap<>();
+            for (AstData.Segment s : read) replaced.put(s.index, s);
+            for (AstData.Segment s : cf.segments) {
+                if (s == null) continue;
+                AstData.Segment r = replaced.get(s.index);
+                if (r == null) next.add(s);
+                else if (r.next == null) r.next = s.next;
+            }
+        }
+        cf.segments = next;
+        saveActiveCourseSafe(CHANGED_COURSE);
+        return read.size();
+    }
+
+    private File segmentsFile(String fileName) {
+        String base = fileName.trim();
+        String lower = base.toLowerCase(Locale.ROOT);
+        String ext = lower.endsWith(".json") ? ".json" : ".csv";
+        if (lower.endsWith(".json") || lower.endsWith(".csv")) base = base.substring(0, base.length() - ext.length());
+        return new File(exportsDir(), safeName(base) + ext);
+    }
+
+    /** Base names of the .json files in the exports directory. */
+    public synchronized List<String> listExports() {
+        List<String> out = new ArrayList<>();
+        File[] files = exportsDir().listFiles((d, n) -> n.toLowerCase(Locale.ROOT).endsWith(".json"));
+        if (files != null) {
+            for (File f : files) out.add(f.getName().substring(0, f.getName().length() - 5));
+        }
+        Collections.sort(out);
+        return out;
+    }
+
+    public File coursesDir() {
         File base = new File(Minecraft.getMinecraft().mcDataDir, "config" + File.separator + AutoSplitTimerMod.MODID);
         File courses = new File(base, "courses");
         if (!courses.exists()) {
@@ -299,9 +836,60 @@ public final class AstCourseManager {
         return courses;
     }
 
+    private File manifestFile() {
+        return new File(coursesDir().getParentFile(), "courses.manifest.json");
+    }
+
+    /**
+     * The course's file on disk: "<safe>.astb" if the course is stored in binary, else
+     * "<safe>.json". A course with neither resolves to the default format for new courses.
+     */
     private File courseFile(String courseName) {
-        String safe = courseName.trim().replaceAll("[^a-zA-Z0-9._-]", "_");
-        return new File(coursesDir(), safe + ".json");
+        File bin = binaryCourseFile(courseName);
+        if (bin.exists()) return bin;
+        File json = jsonCourseFile(courseName);
+        if (json.exists()) return json;
+        return BINARY_DEFAULT ? bin : json;
+    }
+
+    /** A per-course file next to the course ("courses/<safe><ext>"), e.g. attempt history. */
+    File courseSideFile(String courseName, String ext) {
+        return new File(coursesDir(), safeName(courseName) + ext);
+    }
+
+    private File jsonCourseFile(String courseName) {
+        return new File(coursesDir(), safeName(courseName) + ".json");
+    }
+
+    private File binaryCourseFile(String courseName) {
+        return new File(coursesDir(), safeName(courseName) + AstBinaryCourse.EXT);
+    }
+
+    private static String safeName(String courseName) {
+        return courseName.trim().replaceAll("[^a-zA-Z0-9._-]", "_");
+    }
+
+    private static boolean isBinary(File f) {
+        return f.getName().toLowerCase(Locale.ROOT).endsWith(AstBinaryCourse.EXT);
+    }
+
+    private static boolean isCourseFileName(String n) {
+        String lower = n.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".json") || lower.endsWith(AstBinaryCourse.EXT);
+    }
+
+    private static String baseName(File f) {
+        String n = f.getName();
+        return n.substring(0, n.length() - (isBinary(f) ? AstBinaryCourse.EXT.length() : 5));
+    }
+
+    private File exportsDir() {
+        File dir = new File(coursesDir().getParentFile(), "exports");
+        if (!dir.exists()) {
+            //noinspection ResultOfMethodCallIgnored
+            dir.mkdirs();
+        }
+        return dir;
     }
 
     public static void chat(String msg) {
@@ -310,7 +898,35 @@ public final class AstCourseManager {
         mc.player.sendMessage(new TextComponentString("\u00a73[AST]\u00a7r " + msg));
     }
 
+    /**
+     * Make {@code cf.segments} null-free, index-unique and sorted, with consistent boxes.
+     * Commands keep the list that way as they edit it ({@link AstUtil#putSegment}), so this is
+     * a no-op when neither the list nor {@link AstData.CourseFile#segmentsRevision} changed
+     * since the last call, and an allocation-free check otherwise. Only lists that are really
+     * out of order (loaded, imported) are rebuilt.
+     */
     private static void normalizeSegments(AstData.CourseFile cf) {
+        if (cf.segments == cf.normalizedSegments && cf.segmentsRevision == cf.normalizedRevision) return;
+        if (!isNormalized(cf.segments)) rebuildSegments(cf);
+        cf.segmentsRevision++;
+        cf.normalizedSegments = cf.segments;
+        cf.normalizedRevision = cf.segmentsRevision;
+        cf.trackableSegments = countTrackableSegments(cf);
+    }
+
+    private static boolean isNormalized(List<AstData.Segment> segments) {
+        int prev = Integer.MIN_VALUE;
+        for (int i = 0; i < segments.size(); i++) {
+            AstData.Segment s = segments.get(i);
+            if (s == null || s.name == null || s.aabb == null || s.height <= 0) return false;
+            if (i > 0 && s.index <= prev) return false;
+            if (s.aabb.maxY != s.aabb.minY + s.height) return false;
+            prev = s.index;
+        }
+        return true;
+    }
+
+    private static void rebuildSegments(AstData.CourseFile cf) {
         // remove nulls
         cf.segments.removeIf(Objects::isNull);
         // ensure indices unique: keep last occurrence
@@ -337,11 +953,20 @@ public final class AstCourseManager {
     }
 
     private static void normalizeStatsArrays(AstData.CourseFile cf) {
-        int n = countTrackableSegments(cf);
-        ensureSize(cf.stats.bestSegmentsTicks, n);
-        ensureSize(cf.stats.bestSplitTicks, n);
+        int n = cf.trackableSegments;
+        if (cf.stats.bestSegmentsTicks == null || cf.stats.bestSegmentsTicks.length != n) {
+            cf.stats.bestSegmentsTicks = AstUtil.resizeTicks(cf.stats.bestSegmentsTicks, n);
+        }
+        if (cf.stats.bestSplitTicks == null || cf.stats.bestSplitTicks.length != n) {
+            cf.stats.bestSplitTicks = AstUtil.resizeTicks(cf.stats.bestSplitTicks, n);
+        }
         if (cf.stats.pb == null) cf.stats.pb = new AstData.PbRecord();
-        ensureSize(cf.stats.pb.segmentTicks, n);
+        if (cf.stats.pb.segmentTicks == null || cf.stats.pb.segmentTicks.length != n) {
+            cf.stats.pb.segmentTicks = AstUtil.resizeTicks(cf.stats.pb.segmentTicks, n);
+        }
+        if (cf.stats.pb.segmentFrom != null && cf.stats.pb.segmentFrom.length != n) {
+            cf.stats.pb.segmentFrom = AstUtil.resizeTicks(cf.stats.pb.segmentFrom, n);
+        }
     }
 
     /** Number of trackable segments excluding start (index 0). */
@@ -352,9 +977,4 @@ public final class AstCourseManager {
         }
         return count;
     }
-
-    private static <T> void ensureSize(List<T> list, int n) {
-        while (list.size() < n) list.add(null);
-        while (list.size() > n) list.remove(list.size() - 1);
-    }
 }
@@ -13,6 +13,9 @@ public final class AstData {
 
     public static final int DATA_VERSION = 1;
 
+    /** "No time" in tick arrays (stored as null in JSON). */
+    public static final int NO_TICKS = Integer.MIN_VALUE;
+
     public static class AabbDto {
         public double minX, minY, minZ;
         public double maxX, maxY, maxZ;
@@ -43,13 +46,20 @@ public final class AstData {
         public AabbDto aabb;
         /** Height (Y size) in blocks. Allows fractions (e.g., 2.5). */
         public double height;
+        /**
+         * Route: indices that may be entered after this one (optional; see {@link AstRouteTable}).
+         * Null = any higher index; empty = this segment ends the run.
+         */
+        public int[] next;
 
         public Segment() {}
     }
 
     public static class PbRecord {
         public Integer totalTicks; // nullable
-        public List<Integer> segmentTicks = new ArrayList<>(); // nullable entries allowed
+        public int[] segmentTicks = new int[0]; // NO_TICKS = not reached
+        // box each segment was timed from (0 = Start), aligned like segmentTicks; null = not recorded
+        public int[] segmentFrom = null;
 
         public PbRecord() {}
     }
@@ -57,8 +67,10 @@ public final class AstData {
     public static class Stats {
         public int attemptCount = 0;
         public PbRecord pb = new PbRecord();
-        public List<Integer> bestSegmentsTicks = new ArrayList<>(); // nullable entries allowed
-        public List<Integer> bestSplitTicks = new ArrayList<>();    // nullable entries allowed
+        public int[] bestSegmentsTicks = new int[0]; // NO_TICKS = no record
+        public int[] bestSplitTicks = new int[0];    // NO_TICKS = no record
+        /** Declared routes: best segment per branch, flat (from index, to index, ticks) triples. */
+        public int[] branchBestTicks = new int[0];
 
         public Stats() {}
     }
@@ -131,7 +143,9 @@ public final class AstData {
             toggles.put("bestSplit", true);
             toggles.put("attempt", true);
             toggles.put("prevSeg", true);
+            toggles.put("ghostDelta", false);
             toggles.put("splitList", true);
+            toggles.put("raceList", true);
             toggles.put("courseName", true);
 
             // Default order (PB item intentionally omitted per spec).
@@ -140,15 +154,46 @@ public final class AstData {
             itemOrder.add("segment");
             itemOrder.add("segmentTime");
             itemOrder.add("prevSeg");
+            itemOrder.add("ghostDelta");
             itemOrder.add("sob");
             itemOrder.add("bpt");
             itemOrder.add("bestSeg");
             itemOrder.add("bestSplit");
             itemOrder.add("attempt");
             itemOrder.add("splitList");
+            itemOrder.add("raceList");
         }
     }
 
+    /**
+     * One course in the on-disk manifest (courses.manifest.json).
+     * Lets the course list and tab completion work without parsing course bodies.
+     */
+    public static class ManifestEntry {
+        /** File base name (course name as listed). */
+        public String name;
+        /** Course name stored in the file ({@link #name} is its sanitized form); null if not indexed yet. */
+        public String courseName;
+        public long fileSize;
+        public long lastModified;
+        /** Number of segments (including Start); -1 if the file could not be parsed. */
+        public int segmentCount;
+        public Integer pbTicks; // nullable
+        /** Start box (segment 0), for auto-activation; null if the course has none. */
+        public AabbDto start;
+        /** False for entries written before Start boxes were indexed (re-indexed on refresh). */
+        public boolean startIndexed;
+
+        public ManifestEntry() {}
+    }
+
+    public static class CourseManifest {
+        public int version = DATA_VERSION;
+        public List<ManifestEntry> courses = new ArrayList<>();
+
+        public CourseManifest() {}
+    }
+
     public static class CourseFile {
         public int version = DATA_VERSION;
         public String courseName;
@@ -156,6 +201,14 @@ public final class AstData {
         public Stats stats = new Stats();
         public HudConfig hud = new HudConfig();
 
+        /** Bumped whenever the segment set may have changed (not serialized). */
+        public transient int segmentsRevision = 0;
+
+        /** List and revision last checked by the course manager; unchanged -> saves skip normalization. */
+        public transient List<Segment> normalizedSegments = null;
+        public transient int normalizedRevision = 0;
+        public transient int trackableSegments = 0;
+
         public CourseFile() {}
     }
 }
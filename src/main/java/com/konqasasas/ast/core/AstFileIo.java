@@ -0,0 +1,174 @@
+package com.konqasasas.ast.core;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Crash-safe file writes for course/HUD/layout files.
+ *
+ * Writes go to "<name>.tmp" in the same directory and are then moved over the live file
+ * with an atomic rename, so a crash mid-write leaves either the old or the new file,
+ * never a truncated one. A rolling "<name>.bak" copy of the previous good version is
+ * refreshed at most once per {@link #BACKUP_INTERVAL_MS}; loaders fall back to it only
+ * when the live file exists but fails to parse ({@link #restoreFromBackup}). A missing
+ * live file stays missing, so deleting a file outside the game is final.
+ *
+ * fsync policy (system property "autosplittimer.fsync"):
+ *   always  = force every write to disk (slowest, strongest)
+ *   batched = force at most once per {@link #FSYNC_INTERVAL_MS}; skipped files are forced
+ *             on the next forced write or on {@link #flushPending()} (default)
+ *   never   = leave it to the OS
+ */
+public final class AstFileIo {
+    private AstFileIo() {}
+
+    public enum FsyncMode { ALWAYS, BATCHED, NEVER }
+
+    public static final long FSYNC_INTERVAL_MS = 5_000L;
+    public static final long BACKUP_INTERVAL_MS = 60_000L;
+
+    private static volatile FsyncMode FSYNC = parseMode(System.getProperty("autosplittimer.fsync"));
+
+    private static final Object LOCK = new Object();
+    private static long lastSyncMs = 0L;
+    private static final Set<Path> pending = new LinkedHashSet<>();
+    private static volatile boolean hasPending = false;
+
+    /** Writes the file body. The stream is closed by the caller. */
+    public interface Body {
+        void write(OutputStream out) throws IOException;
+    }
+
+    public static void setFsyncMode(FsyncMode mode) {
+        if (mode != null) FSYNC = mode;
+    }
+
+    public static FsyncMode getFsyncMode() {
+        return FSYNC;
+    }
+
+    public static File backupOf(File f) {
+        return new File(f.getParentFile(), f.getName() + ".bak");
+    }
+
+    /** Replace {@code target} atomically with what {@code body} writes. */
+    public static void writeAtomic(File target, Body body) throws IOException {
+        File dir = target.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists()) {
+            //noinspection ResultOfMethodCallIgnored
+            dir.mkdirs();
+        }
+        refreshBackup(target);
+
+        File tmp = new File(dir, target.getName() + ".tmp");
+        boolean synced;
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            BufferedOutputStream out = new BufferedOutputStream(fos, 16 * 1024);
+            body.write(out);
+            out.flush();
+            synced = syncIfDue(fos.getChannel());
+        } catch (IOException | RuntimeException e) {
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            throw e;
+        }
+
+        Path src = tmp.toPath();
+        Path dst = target.toPath();
+        try {
+            Files.move(src, dst, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(src, dst, StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (!synced && FSYNC == FsyncMode.BATCHED) {
+            synchronized (LOCK) {
+                pending.add(dst);
+                hasPending = true;
+            }
+        }
+    }
+
+    /** Force any batched (not yet fsynced) writes to disk. Cheap when nothing is pending. */
+    public static void flushPending() {
+        if (!hasPending) return;
+        List<Path> todo;
+        synchronized (LOCK) {
+            todo = new ArrayList<>(pending);
+            pending.clear();
+            hasPending = false;
+            lastSyncMs = System.currentTimeMillis();
+        }
+        for (Path p : todo) {
+            try (FileChannel ch = FileChannel.open(p, StandardOpenOption.WRITE)) {
+                ch.force(true);
+            } catch (IOException ignored) {
+                // file may have been deleted/renamed since; nothing left to protect
+            }
+        }
+    }
+
+    /**
+     * Replace a corrupt live file with its backup. The corrupt file is kept as
+     * "<name>.corrupt" so it is not rotated into the backup by the next save.
+     */
+    public static void restoreFromBackup(File f) throws IOException {
+        File bak = backupOf(f);
+        if (!bak.exists()) throw new FileNotFoundException(bak.getPath());
+        if (f.exists()) {
+            File corrupt = new File(f.getParentFile(), f.getName() + ".corrupt");
+            Files.move(f.toPath(), corrupt.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.copy(bak.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void refreshBackup(File target) {
+        if (!target.exists() || target.length() == 0) return;
+        File bak = backupOf(target);
+        long now = System.currentTimeMillis();
+        if (bak.exists() && now - bak.lastModified() < BACKUP_INTERVAL_MS) return;
+        try {
+            Files.copy(target.toPath(), bak.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            //noinspection ResultOfMethodCallIgnored
+            bak.setLastModified(now);
+        } catch (IOException ignored) {
+            // backup is best-effort; the atomic replace below still protects the live file
+        }
+    }
+
+    private static boolean syncIfDue(FileChannel ch) throws IOException {
+        switch (FSYNC) {
+            case ALWAYS:
+                ch.force(true);
+                return true;
+            case NEVER:
+                return true;
+            case BATCHED:
+            default: {
+                long now = System.currentTimeMillis();
+                boolean due;
+                synchronized (LOCK) {
+                    due = now - lastSyncMs >= FSYNC_INTERVAL_MS;
+                    if (due) lastSyncMs = now;
+                }
+                if (!due) return false;
+                ch.force(true);
+                flushPending();
+                return true;
+            }
+        }
+    }
+
+    private static FsyncMode parseMode(String s) {
+        if (s == null) return FsyncMode.BATCHED;
+        switch (s.trim().toLowerCase(Locale.ROOT)) {
+            case "always":
+                return FsyncMode.ALWAYS;
+            case "never":
+                return FsyncMode.NEVER;
+            default:
+                return FsyncMode.BATCHED;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.konqasasas.ast.core;
+
+import com.konqasasas.ast.hud.AstLayoutManager;
+import net.minecraft.client.Minecraft;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Watches config/autosplittimer/courses and layouts for changes made outside the game
+ * (hand edits, sync tools) and applies them on the client thread.
+ *
+ * Events are collected on a daemon thread and dispatched after {@link #QUIET_MS} without
+ * further events, so an editor's save (often several events) or a sync burst becomes one
+ * reload per file. Temp/backup files are ignored, and our own course writes are
+ * recognised by {@link AstCourseManager#onCourseFileChangedSafe} (size/mtime already in
+ * the manifest).
+ */
+public final class AstFileWatcher {
+    private static final AstFileWatcher INSTANCE = new AstFileWatcher();
+
+    public static AstFileWatcher get() {
+        return INSTANCE;
+    }
+
+    private static final long QUIET_MS = 250L;
+
+    private Thread thread = null;
+
+    private AstFileWatcher() {}
+
+    /** Start watching. No-op if already running or the platform has no WatchService. */
+    public synchronized void startSafe(File coursesDir, File layoutsDir) {
+        if (thread != null) return;
+        try {
+            WatchService ws = FileSystems.getDefault().newWatchService();
+            Path courses = coursesDir.toPath();
+            Path layouts = layoutsDir.toPath();
+            WatchEvent.Kind<?>[] kinds = {StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE};
+            courses.register(ws, kinds);
+            layouts.register(ws, kinds);
+
+            thread = new Thread(() -> run(ws, courses), "AST file watcher");
+            thread.setDaemon(true);
+            thread.start();
+        } catch (IOException | RuntimeException ignored) {
+            // no watcher: course/layout lists still refresh on our own writes
+        }
+    }
+
+    private static void run(WatchService ws, Path courses) {
+        Set<String> changedCourses = new LinkedHashSet<>();
+        boolean layoutsChanged = false;
+        try {
+            while (true) {
+                // block for the first event, then drain until QUIET_MS passes with none
+                WatchKey key = (changedCourses.isEmpty() && !layoutsChanged)
+                        ? ws.take()
+                        : ws.poll(QUIET_MS, java.util.concurrent.TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    dispatch(new ArrayList<>(changedCourses), layoutsChanged);
+                    changedCourses.clear();
+                    layoutsChanged = false;
+                    continue;
+                }
+                boolean isCourses = courses.equals(key.watchable());
+                for (WatchEvent<?> ev : key.pollEvents()) {
+                    if (ev.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // lost events: rescan everything
+                        changedCourses.add("*");
+                        layoutsChanged = true;
+                        continue;
+                    }
+                    String name = String.valueOf(ev.context());
+                    if (isCourses) {
+                        String course = courseBaseName(name);
+                        if (course != null) changedCourses.add(course);
+                    } else if (name.toLowerCase(Locale.ROOT).endsWith(".json")) {
+                        layoutsChanged = true;
+                    }
+                }
+                if (!key.reset() && isCourses) {
+                    return; // directory gone
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+        }
+    }
+
+    /** Course base name for "<name>.json" / "<name>.astb"; null for temp, backup and side files. */
+    private static String courseBaseName(String file) {
+        String lower = file.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".json")) return file.substring(0, file.length() - 5);
+        if (lower.endsWith(AstBinaryCourse.EXT)) return file.substring(0, file.length() - AstBinaryCourse.EXT.length());
+        return null;
+    }
+
+    private static void dispatch(List<String> courses, boolean layouts) {
+        Minecraft mc = Minecraft.getMinecraft();
+        if (mc == null) return;
+        mc.addScheduledTask(() -> {
+            if (layouts) AstLayoutManager.invalidateLayoutList();
+            if (courses.contains("*")) {
+                AstCourseManager.get().refreshManifestSafe();
+                return;
+            }
+            for (String c : courses) {
+                AstCourseManager.get().onCourseFileChangedSafe(c);
+            }
+        });
+    }
+}
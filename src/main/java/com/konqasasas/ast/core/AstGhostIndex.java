@@ -0,0 +1,172 @@
+package com.konqasasas.ast.core;
+
+import java.util.Arrays;
+
+/**
+ * Where along the PB ghost route is a position? Used for the live ahead/behind readout.
+ *
+ * Trace samples are bucketed into a uniform grid of {@link #CELL}-block cells (sorted cell
+ * keys + sample lists, no per-cell objects). A query visits cells ring by ring around the
+ * position and stops once no unvisited cell can beat the best match, so a tick costs a
+ * handful of binary searches regardless of trace length.
+ *
+ * Where the route passes the same place more than once, matches far (in time) from the
+ * previous match are penalized, so the readout follows the lap the player is on.
+ */
+public final class AstGhostIndex {
+    private static final AstGhostIndex INSTANCE = new AstGhostIndex();
+
+    public static AstGhostIndex get() {
+        return INSTANCE;
+    }
+
+    private static final double CELL = 4.0;
+    private static final int MAX_RING = 4;                 // give up beyond ~16 blocks from the route
+    private static final double TICK_PENALTY_SQ = 1.0 / (20.0 * 20.0); // 1 block^2 per second^2 of jump
+
+    private AstGhostTrace.Trace trace = null;
+    private final double[] origin = new double[3];
+    private float[] points = new float[0];
+    private long[] cellKeys = new long[0];   // sorted, unique
+    private int[] cellStart = new int[1];    // cell c -> samples[cellStart[c] .. cellStart[c+1])
+    private int[] samples = new int[0];
+    private float lastProgress = 0.0f;      // runs start at the start of the route
+
+    private AstGhostIndex() {}
+
+    /**
+     * Ahead/behind vs the course's PB ghost for a player at (x,y,z) with {@code elapsedTicks}
+     * on the clock: negative = ahead. {@link AstData#NO_TICKS} if there is no ghost or the
+     * player is off the route.
+     */
+    public synchronized int deltaTicks(AstData.CourseFile course, double x, double y, double z, int elapsedTicks) {
+        AstGhostTrace.Trace t = AstGhostTrace.get().pbTraceSafe(course);
+        if (t == null || t.samples < 2) {
+            trace = null;
+            return AstData.NO_TICKS;
+        }
+        if (t != trace) build(t);
+        float p = progress(x - origin[0], y - origin[1], z - origin[2]);
+        if (p < 0) return AstData.NO_TICKS;
+        lastProgress = p;
+        return Math.round(elapsedTicks - p);
+    }
+
+    /** Forget the previous match (new attempt). */
+    public synchronized void resetProgress() {
+        lastProgress = 0.0f;
+    }
+
+    private void build(AstGhostTrace.Trace t) {
+        trace = t;
+        lastProgress = 0.0f;
+        points = t.decode(origin);
+        int n = points.length / 3;
+
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) keys[i] = key(cell(points[i * 3]), cell(points[i * 3 + 1]), cell(points[i * 3 + 2]));
+        long[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        int unique = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) sorted[unique++] = sorted[i];
+        }
+        cellKeys = Arrays.copyOf(sorted, unique);
+
+        // counting sort of sample indices by cell
+        int[] cellOf = new int[n];
+        cellStart = new int[unique + 1];
+        for (int i = 0; i < n; i++) {
+            cellOf[i] = Arrays.binarySearch(cellKeys, keys[i]);
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < unique; c++) cellStart[c + 1] += cellStart[c];
+        int[] fill = Arrays.copyOf(cellStart, unique);
+        samples = new int[n];
+        for (int i = 0; i < n; i++) samples[fill[cellOf[i]]++] = i;
+    }
+
+    /** Fractional sample index nearest to the relative position, or -1. */
+    private float progress(double x, double y, double z) {
+        int cx = cell(x), cy = cell(y), cz = cell(z);
+        int best = -1;
+        double bestScore = Double.MAX_VALUE;
+        for (int r = 0; r <= MAX_RING; r++) {
+            for (int dx = -r; dx <= r; dx++) {
+                for (int dy = -r; dy <= r; dy++) {
+                    for (int dz = -r; dz <= r; dz++) {
+                        // ring r = cells at Chebyshev distance exactly r
+                        if (Math.max(Math.abs(dx), Math.max(Math.abs(dy), Math.abs(dz))) != r) continue;
+                        int c = Arrays.binarySearch(cellKeys, key(cx + dx, cy + dy, cz + dz));
+                        if (c < 0) continue;
+                        for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                            int i = samples[k];
+                            double s = distSq(i, x, y, z) + jumpPenalty(i);
+                            if (s < bestScore) {
+                                bestScore = s;
+                                best = i;
+                            }
+                        }
+                    }
+                }
+            }
+            // unvisited cells are at least r*CELL away
+            double reach = r * CELL;
+            if (best >= 0 && bestScore <= reach * reach) break;
+        }
+        if (best < 0) return -1.0f;
+
+        // refine onto the neighbouring route segments
+        float p = best;
+        double d = distSq(best, x, y, z);
+        int n = points.length / 3;
+        if (best > 0) {
+            float f = project(best - 1, x, y, z);
+            double dd = distSqAt(best - 1, f, x, y, z);
+            if (dd < d) {
+                d = dd;
+                p = best - 1 + f;
+            }
+        }
+        if (best + 1 < n) {
+            float f = project(best, x, y, z);
+            if (distSqAt(best, f, x, y, z) < d) p = best + f;
+        }
+        return p;
+    }
+
+    private double jumpPenalty(int i) {
+        double gap = i - lastProgress;
+        return gap * gap * TICK_PENALTY_SQ;
+    }
+
+    /** Parameter (0..1) of the closest point on segment i..i+1. */
+    private float project(int i, double x, double y, double z) {
+        double ax = points[i * 3], ay = points[i * 3 + 1], az = points[i * 3 + 2];
+        double vx = points[i * 3 + 3] - ax, vy = points[i * 3 + 4] - ay, vz = points[i * 3 + 5] - az;
+        double len = vx * vx + vy * vy + vz * vz;
+        if (len <= 0) return 0.0f;
+        double f = ((x - ax) * vx + (y - ay) * vy + (z - az) * vz) / len;
+        return (float) Math.max(0.0, Math.min(1.0, f));
+    }
+
+    private double distSqAt(int i, float f, double x, double y, double z) {
+        double px = points[i * 3] + (points[i * 3 + 3] - points[i * 3]) * f;
+        double py = points[i * 3 + 1] + (points[i * 3 + 4] - points[i * 3 + 1]) * f;
+        double pz = points[i * 3 + 2] + (points[i * 3 + 5] - points[i * 3 + 2]) * f;
+        return (px - x) * (px - x) + (py - y) * (py - y) + (pz - z) * (pz - z);
+    }
+
+    private double distSq(int i, double x, double y, double z) {
+        double dx = points[i * 3] - x, dy = points[i * 3 + 1] - y, dz = points[i * 3 + 2] - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static int cell(double v) {
+        return (int) Math.floor(v / CELL);
+    }
+
+    private static long key(int cx, int cy, int cz) {
+        return ((long) (cx & 0x1FFFFF) << 42) | ((long) (cy & 0x1FFFFF) << 21) | (cz & 0x1FFFFF);
+    }
+}
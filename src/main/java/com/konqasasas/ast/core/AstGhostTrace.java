@@ -0,0 +1,269 @@
+package com.konqasasas.ast.core;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Player position per tick of the running attempt ("ghost"), and the PB trace per course
+ * ("courses/<name>.ghost").
+ *
+ * Positions are quantized to 1/{@link #UNITS_PER_BLOCK} block and stored as zigzag varint
+ * deltas from the previous sample, so normal movement costs about 3 bytes per tick
+ * (~4 KB per minute). Sample 0 is the position on the start tick, then one sample per
+ * running tick (paused ticks are not sampled, like the timer).
+ *
+ * The recording buffer is reused across attempts and only grows (doubling) for runs longer
+ * than any before, so sampling allocates nothing per tick. Recording stops at
+ * {@link #MAX_BYTES}; the trace so far is kept.
+ *
+ * File layout (big-endian): magic "ASTG", format:byte, attempt:varint, totalTicks:varint,
+ * samples:varint, dataLen:varint, data, crc32 of everything before it.
+ *
+ * A stored trace is only returned while its total matches the course PB, so clearing or
+ * rebuilding records hides a stale ghost without touching the file.
+ */
+public final class AstGhostTrace {
+    private static final AstGhostTrace INSTANCE = new AstGhostTrace();
+
+    public static AstGhostTrace get() {
+        return INSTANCE;
+    }
+
+    public static final String EXT = ".ghost";
+    public static final int UNITS_PER_BLOCK = 64;
+
+    private static final int MAGIC = 0x41535447; // "ASTG"
+    private static final int FORMAT = 1;
+    private static final int MAX_BYTES = Integer.getInteger("autosplittimer.ghostMaxBytes", 4 * 1024 * 1024);
+    private static final int MAX_SAMPLE_BYTES = 15; // 3 x 5-byte varint
+    private static final Trace MISSING = new Trace(0, 0, 0, new byte[0]);
+
+    /** Immutable encoded trace. */
+    public static final class Trace {
+        public final int attempt;
+        public final int totalTicks;
+        public final int samples;
+        final byte[] data;
+
+        Trace(int attempt, int totalTicks, int samples, byte[] data) {
+            this.attempt = attempt;
+            this.totalTicks = totalTicks;
+            this.samples = samples;
+            this.data = data;
+        }
+
+        public int byteSize() {
+            return data.length;
+        }
+
+        /**
+         * Decoded positions in blocks (x,y,z per sample), relative to sample 0 so floats keep
+         * full precision far from the world origin. Sample 0's world position goes to
+         * {@code origin[0..2]}.
+         */
+        public float[] decode(double[] origin) {
+            float[] out = new float[samples * 3];
+            ByteBuffer b = ByteBuffer.wrap(data);
+            int x = 0, y = 0, z = 0;
+            int x0 = 0, y0 = 0, z0 = 0;
+            try {
+                for (int i = 0; i < samples; i++) {
+                    x += AstBinaryCourse.unzigzag(AstBinaryCourse.readVarint(b));
+                    y += AstBinaryCourse.unzigzag(AstBinaryCourse.readVarint(b));
+                    z += AstBinaryCourse.unzigzag(AstBinaryCourse.readVarint(b));
+                    if (i == 0) {
+                        x0 = x;
+                        y0 = y;
+                        z0 = z;
+                    }
+                    out[i * 3] = (x - x0) / (float) UNITS_PER_BLOCK;
+                    out[i * 3 + 1] = (y - y0) / (float) UNITS_PER_BLOCK;
+                    out[i * 3 + 2] = (z - z0) / (float) UNITS_PER_BLOCK;
+                }
+                if (origin != null) {
+                    origin[0] = x0 / (double) UNITS_PER_BLOCK;
+                    origin[1] = y0 / (double) UNITS_PER_BLOCK;
+                    origin[2] = z0 / (double) UNITS_PER_BLOCK;
+                }
+            } catch (IOException | BufferUnderflowException e) {
+                return new float[0]; // validated on load; only a corrupt buffer gets here
+            }
+            return out;
+        }
+    }
+
+    // recording
+    private byte[] buf = new byte[16 * 1024];
+    private int len = 0;
+    private int samples = 0;
+    private int lastX, lastY, lastZ;
+    private boolean recording = false;
+
+    // course name -> PB trace (MISSING = no file)
+    private final Map<String, Trace> loaded = new HashMap<>();
+
+    private AstGhostTrace() {}
+
+    /** Start a new recording at the start-tick position. */
+    public synchronized void begin(double x, double y, double z) {
+        len = 0;
+        samples = 0;
+        lastX = lastY = lastZ = 0;
+        recording = true;
+        sample(x, y, z);
+    }
+
+    /** Append the position for one running tick. No allocation unless the buffer must grow. */
+    public synchronized void sample(double x, double y, double z) {
+        if (!recording) return;
+        if (len + MAX_SAMPLE_BYTES > buf.length) {
+            if (buf.length >= MAX_BYTES) {
+                recording = false; // keep what we have
+                return;
+            }
+            buf = Arrays.copyOf(buf, Math.min(MAX_BYTES, buf.length * 2));
+        }
+        int qx = quantize(x), qy = quantize(y), qz = quantize(z);
+        putVarint(AstBinaryCourse.zigzag(qx - lastX));
+        putVarint(AstBinaryCourse.zigzag(qy - lastY));
+        putVarint(AstBinaryCourse.zigzag(qz - lastZ));
+        lastX = qx;
+        lastY = qy;
+        lastZ = qz;
+        samples++;
+    }
+
+    public synchronized void stop() {
+        recording = false;
+    }
+
+    /**
+     * The attempt finished: the recording goes to the course's trace history and, if it is a
+     * new PB, becomes the course's ghost (written next to the course).
+     */
+    public synchronized void finishSafe(AstData.CourseFile course, int attempt, int totalTicks, boolean newPb) {
+        Trace t = takeRecording(course, attempt, totalTicks);
+        if (t == null) return;
+        AstTraceStore.get().appendSafe(course, t);
+        if (!newPb) return;
+        loaded.put(course.courseName, t);
+        try {
+            AstFileIo.writeAtomic(file(course.courseName), out -> write(t, out));
+        } catch (IOException | RuntimeException ignored) {
+            // ghost stays in memory for this session
+        }
+    }
+
+    /** The attempt was reset or abandoned: keep its trace for analysis only. */
+    public synchronized void abandonSafe(AstData.CourseFile course, int attempt) {
+        Trace t = takeRecording(course, attempt, AstAttemptStore.NONE);
+        if (t != null) AstTraceStore.get().appendSafe(course, t);
+    }
+
+    private Trace takeRecording(AstData.CourseFile course, int attempt, int totalTicks) {
+        recording = false;
+        if (samples == 0 || course == null || course.courseName == null) return null;
+        Trace t = new Trace(attempt, totalTicks, samples, Arrays.copyOf(buf, len));
+        samples = 0;
+        return t;
+    }
+
+    /** The PB ghost of a course, or null if none is stored or it no longer matches the PB. */
+    public synchronized Trace pbTraceSafe(AstData.CourseFile course) {
+        if (course == null || course.courseName == null || course.stats == null || course.stats.pb == null) return null;
+        Integer pb = course.stats.pb.totalTicks;
+        if (pb == null) return null;
+        Trace t = loaded.get(course.courseName);
+        if (t == null) {
+            t = readSafe(file(course.courseName));
+            loaded.put(course.courseName, t);
+        }
+        return (t != MISSING && t.totalTicks == pb) ? t : null;
+    }
+
+    public synchronized void deleteSafe(String courseName) {
+        if (courseName == null) return;
+        loaded.remove(courseName);
+        File f = file(courseName);
+        //noinspection ResultOfMethodCallIgnored
+        f.delete();
+        //noinspection ResultOfMethodCallIgnored
+        AstFileIo.backupOf(f).delete();
+    }
+
+    public synchronized String summary() {
+        int n = 0;
+        long bytes = 0L;
+        for (Trace t : loaded.values()) {
+            if (t == MISSING) continue;
+            n++;
+            bytes += t.byteSize();
+        }
+        return "recording=" + (recording ? samples + " samples/" + len + "B" : "off")
+                + " loaded=" + n + " (" + (bytes / 1024) + " KiB)";
+    }
+
+    private File file(String courseName) {
+        return AstCourseManager.get().courseSideFile(courseName, EXT);
+    }
+
+    private static int quantize(double v) {
+        return (int) Math.round(v * UNITS_PER_BLOCK);
+    }
+
+    private void putVarint(int v) {
+        while ((v & ~0x7F) != 0) {
+            buf[len++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[len++] = (byte) v;
+    }
+
+    private static void write(Trace t, OutputStream out) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(t.data.length + 32);
+        DataOutputStream d = new DataOutputStream(body);
+        d.writeInt(MAGIC);
+        d.writeByte(FORMAT);
+        AstBinaryCourse.writeVarint(d, t.attempt);
+        AstBinaryCourse.writeVarint(d, t.totalTicks);
+        AstBinaryCourse.writeVarint(d, t.samples);
+        AstBinaryCourse.writeVarint(d, t.data.length);
+        d.write(t.data);
+        d.flush();
+        CRC32 crc = new CRC32();
+        crc.update(body.toByteArray(), 0, body.size());
+        d.writeInt((int) crc.getValue());
+        body.writeTo(out);
+    }
+
+    private static Trace readSafe(File f) {
+        if (!f.exists()) return MISSING;
+        try {
+            byte[] data = Files.readAllBytes(f.toPath());
+            if (data.length < 9) return MISSING;
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length - 4);
+            ByteBuffer b = ByteBuffer.wrap(data);
+            if (b.getInt(data.length - 4) != (int) crc.getValue()) return MISSING;
+            b.limit(data.length - 4);
+            if (b.getInt() != MAGIC || (b.get() & 0xFF) > FORMAT) return MISSING;
+            int attempt = AstBinaryCourse.readVarint(b);
+            int total = AstBinaryCourse.readVarint(b);
+            int samples = AstBinaryCourse.readVarint(b);
+            int n = AstBinaryCourse.readVarint(b);
+            if (samples < 0 || n < 0 || n != b.remaining() || n < samples * 3L) return MISSING;
+            byte[] trace = new byte[n];
+            b.get(trace);
+            Trace t = new Trace(attempt, total, samples, trace);
+            return t.decode(null).length == samples * 3 ? t : MISSING;
+        } catch (IOException | RuntimeException e) {
+            return MISSING;
+        }
+    }
+}
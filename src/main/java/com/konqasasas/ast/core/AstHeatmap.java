@@ -0,0 +1,223 @@
+package com.konqasasas.ast.core;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+
+/**
+ * Optional per-course heatmap ("courses/<name>.heat"): ticks spent in each block-sized voxel
+ * during attempts, plus where attempts were reset and where the player died.
+ *
+ * Counters live in {@link AstLongIntMap}s keyed by packed block coordinates, so a tick is one
+ * hash probe and no allocation. Only the active course is held in memory; it is written when
+ * an attempt ends, when another course is used and when the world unloads.
+ *
+ * Off by default: "/ast viz heatmap record on" or -Dautosplittimer.heatmap=true.
+ *
+ * File layout (big-endian): magic "ASTH", format:byte, then for time, resets, deaths:
+ * count:varint, count x (key:long, value:varint); crc32 of everything before it.
+ */
+public final class AstHeatmap {
+    private static final AstHeatmap INSTANCE = new AstHeatmap();
+
+    public static AstHeatmap get() {
+        return INSTANCE;
+    }
+
+    public static final String EXT = ".heat";
+    public static final int TIME = 0, RESETS = 1, DEATHS = 2;
+
+    private static final int MAGIC = 0x41535448; // "ASTH"
+    private static final int FORMAT = 1;
+
+    private static volatile boolean RECORDING = Boolean.getBoolean("autosplittimer.heatmap");
+
+    private String courseName = null;
+    private final AstLongIntMap[] maps = {new AstLongIntMap(1024), new AstLongIntMap(), new AstLongIntMap()};
+    private long lastKey = AstLongIntMap.EMPTY;
+    private boolean wasDead = false;
+    private boolean dirty = false;
+    private int version = 0;
+
+    private AstHeatmap() {}
+
+    public static void setRecording(boolean v) {
+        RECORDING = v;
+    }
+
+    public static boolean isRecording() {
+        return RECORDING;
+    }
+
+    /** One running tick at the player's position. */
+    public synchronized void tick(AstData.CourseFile course, double x, double y, double z, boolean dead) {
+        if (!RECORDING || !ensure(course)) return;
+        lastKey = key(x, y, z);
+        maps[TIME].add(lastKey, 1);
+        if (dead && !wasDead) maps[DEATHS].add(lastKey, 1);
+        wasDead = dead;
+        dirty = true;
+        version++;
+    }
+
+    /** The running attempt was reset/abandoned at the last recorded position. */
+    public synchronized void resetSafe(AstData.CourseFile course) {
+        if (RECORDING && lastKey != AstLongIntMap.EMPTY && ensure(course)) {
+            maps[RESETS].add(lastKey, 1);
+            dirty = true;
+            version++;
+        }
+        endAttemptSafe();
+    }
+
+    /** Attempt over (finished or reset): persist if anything changed. */
+    public synchronized void endAttemptSafe() {
+        lastKey = AstLongIntMap.EMPTY;
+        wasDead = false;
+        saveSafe();
+    }
+
+    public synchronized void saveSafe() {
+        if (!dirty || courseName == null) return;
+        try {
+            AstFileIo.writeAtomic(file(courseName), this::write);
+            dirty = false;
+        } catch (IOException | RuntimeException ignored) {
+            // retried on the next save
+        }
+    }
+
+    public synchronized void clearSafe(AstData.CourseFile course) {
+        if (!ensure(course)) return;
+        for (AstLongIntMap m : maps) m.clear();
+        dirty = true;
+        version++;
+        saveSafe();
+    }
+
+    /** Bumped on every change; renderers rebuild their geometry when it moves. */
+    public synchronized int version(AstData.CourseFile course) {
+        ensure(course);
+        return version;
+    }
+
+    public synchronized int count(AstData.CourseFile course, int kind) {
+        return ensure(course) ? maps[kind].size() : 0;
+    }
+
+    /** Visit the counters of one kind for the course; max value is returned. */
+    public synchronized int visit(AstData.CourseFile course, int kind, AstLongIntMap.Visitor v) {
+        if (!ensure(course)) return 0;
+        int[] max = {0};
+        maps[kind].forEach((k, n) -> {
+            if (n > max[0]) max[0] = n;
+            if (v != null) v.visit(k, n);
+        });
+        return max[0];
+    }
+
+    public synchronized String summary(AstData.CourseFile course) {
+        if (!ensure(course)) return "no course";
+        return "voxels=" + maps[TIME].size() + " resets@" + maps[RESETS].size() + " deaths@" + maps[DEATHS].size()
+                + (RECORDING ? "" : " (not recording)");
+    }
+
+    public synchronized void deleteSafe(String name) {
+        if (name == null) return;
+        if (name.equals(courseName)) {
+            for (AstLongIntMap m : maps) m.clear();
+            dirty = false;
+            version++;
+        }
+        File f = file(name);
+        //noinspection ResultOfMethodCallIgnored
+        f.delete();
+        //noinspection ResultOfMethodCallIgnored
+        AstFileIo.backupOf(f).delete();
+    }
+
+    // ---- voxel keys (same packing as BlockPos: x 26 bits, y 12 bits, z 26 bits) ----
+
+    public static long key(double x, double y, double z) {
+        long bx = (long) Math.floor(x), by = (long) Math.floor(y), bz = (long) Math.floor(z);
+        return ((bx & 0x3FFFFFFL) << 38) | ((by & 0xFFFL) << 26) | (bz & 0x3FFFFFFL);
+    }
+
+    public static int keyX(long key) {
+        return (int) (key >> 38);
+    }
+
+    public static int keyY(long key) {
+        return (int) (key << 26 >> 52);
+    }
+
+    public static int keyZ(long key) {
+        return (int) (key << 38 >> 38);
+    }
+
+    /** Switch to the course's counters, saving the previous course. False if no course. */
+    private boolean ensure(AstData.CourseFile course) {
+        if (course == null || course.courseName == null) return false;
+        if (course.courseName.equals(courseName)) return true;
+        saveSafe();
+        courseName = course.courseName;
+        for (AstLongIntMap m : maps) m.clear();
+        dirty = false;
+        version++;
+        readSafe(file(courseName));
+        return true;
+    }
+
+    private File file(String name) {
+        return AstCourseManager.get().courseSideFile(name, EXT);
+    }
+
+    private void write(OutputStream out) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(16 + maps[TIME].size() * 10);
+        DataOutputStream d = new DataOutputStream(body);
+        d.writeInt(MAGIC);
+        d.writeByte(FORMAT);
+        for (AstLongIntMap m : maps) {
+            AstBinaryCourse.writeVarint(d, m.size());
+            IOException[] err = {null};
+            m.forEach((k, n) -> {
+                try {
+                    d.writeLong(k);
+                    AstBinaryCourse.writeVarint(d, n);
+                } catch (IOException e) {
+                    err[0] = e;
+                }
+            });
+            if (err[0] != null) throw err[0];
+        }
+        d.flush();
+        CRC32 crc = new CRC32();
+        crc.update(body.toByteArray(), 0, body.size());
+        d.writeInt((int) crc.getValue());
+        body.writeTo(out);
+    }
+
+    private void readSafe(File f) {
+        if (!f.exists()) return;
+        try {
+            byte[] data = Files.readAllBytes(f.toPath());
+            if (data.length < 9) return;
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length - 4);
+            ByteBuffer b = ByteBuffer.wrap(data);
+            if (b.getInt(data.length - 4) != (int) crc.getValue()) return;
+            b.limit(data.length - 4);
+            if (b.getInt() != MAGIC || (b.get() & 0xFF) > FORMAT) return;
+            for (AstLongIntMap m : maps) {
+                int n = AstBinaryCourse.readVarint(b);
+                for (int i = 0; i < n; i++) {
+                    long k = b.getLong();
+                    if (k != AstLongIntMap.EMPTY) m.add(k, AstBinaryCourse.readVarint(b));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            for (AstLongIntMap m : maps) m.clear(); // unreadable: start over
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.konqasasas.ast.core;
+
+/**
+ * Java Flight Recorder hooks (attempts, splits, golds, course I/O, HUD rebuilds).
+ *
+ * All methods are no-ops when the runtime has no jdk.jfr (pre-8u262 Java 8), so callers
+ * never need to check. When JFR is present but not recording, the cost is one
+ * enabled-check per call.
+ *
+ * Timed events use an opaque token: {@code Object t = beginSave(); ... endSave(t, ...)}.
+ * A null token means "not recording" and is accepted by the end* methods.
+ */
+public final class AstJfr {
+    private AstJfr() {}
+
+    private static final boolean AVAILABLE = detect();
+
+    private static boolean detect() {
+        try {
+            Class.forName("jdk.jfr.Event", false, AstJfr.class.getClassLoader());
+            return AstJfrEvents.probe();
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    public static void attemptStart(String course, int attempt) {
+        if (AVAILABLE) AstJfrEvents.attemptStart(course, attempt);
+    }
+
+    public static void split(String course, int segmentIndex, int segmentTicks, int splitTicks) {
+        if (AVAILABLE) AstJfrEvents.split(course, segmentIndex, segmentTicks, splitTicks);
+    }
+
+    /** kind: "segment" (best segment beaten) or "split" (best split beaten). */
+    public static void gold(String course, int segmentIndex, String kind, int ticks) {
+        if (AVAILABLE) AstJfrEvents.gold(course, segmentIndex, kind, ticks);
+    }
+
+    public static void finish(String course, int attempt, int totalTicks, boolean personalBest) {
+        if (AVAILABLE) AstJfrEvents.finish(course, attempt, totalTicks, personalBest);
+    }
+
+    public static Object beginSave() {
+        return AVAILABLE ? AstJfrEvents.beginSave() : null;
+    }
+
+    public static void endSave(Object token, String course, long bytes) {
+        if (token != null) AstJfrEvents.endSave(token, course, bytes);
+    }
+
+    public static Object beginLoad() {
+        return AVAILABLE ? AstJfrEvents.beginLoad() : null;
+    }
+
+    public static void endLoad(Object token, String course, long bytes) {
+        if (token != null) AstJfrEvents.endLoad(token, course, bytes);
+    }
+
+    public static Object beginHudRebuild() {
+        return AVAILABLE ? AstJfrEvents.beginHudRebuild() : null;
+    }
+
+    public static void endHudRebuild(Object token) {
+        if (token != null) AstJfrEvents.endHudRebuild(token);
+    }
+}
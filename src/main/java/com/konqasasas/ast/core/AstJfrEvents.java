@@ -0,0 +1,168 @@
+package com.konqasasas.ast.core;
+
+import jdk.jfr.*;
+
+/**
+ * Java Flight Recorder event types.
+ *
+ * Never reference this class directly: go through {@link AstJfr}, which only touches it
+ * when jdk.jfr is present (JDK 8u262+ / 11+). On older runtimes this class is never loaded.
+ */
+final class AstJfrEvents {
+    private AstJfrEvents() {}
+
+    private static final String CATEGORY = "AutoSplit Timer";
+
+    @Name("autosplittimer.AttemptStart")
+    @Label("Attempt Start")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class AttemptStart extends Event {
+        @Label("Course") String course;
+        @Label("Attempt") int attempt;
+    }
+
+    @Name("autosplittimer.Split")
+    @Label("Split Recorded")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class Split extends Event {
+        @Label("Course") String course;
+        @Label("Segment Index") int segmentIndex;
+        @Label("Segment Ticks") int segmentTicks;
+        @Label("Split Ticks") int splitTicks;
+    }
+
+    @Name("autosplittimer.Gold")
+    @Label("Gold")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class Gold extends Event {
+        @Label("Course") String course;
+        @Label("Segment Index") int segmentIndex;
+        @Label("Kind") String kind;
+        @Label("Ticks") int ticks;
+    }
+
+    @Name("autosplittimer.Finish")
+    @Label("Attempt Finish")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class Finish extends Event {
+        @Label("Course") String course;
+        @Label("Attempt") int attempt;
+        @Label("Total Ticks") int totalTicks;
+        @Label("Personal Best") boolean personalBest;
+    }
+
+    @Name("autosplittimer.CourseSave")
+    @Label("Course Save")
+    @Category(CATEGORY)
+    static final class CourseSave extends Event {
+        @Label("Course") String course;
+        @Label("Bytes") @DataAmount long bytes;
+    }
+
+    @Name("autosplittimer.CourseLoad")
+    @Label("Course Load")
+    @Category(CATEGORY)
+    static final class CourseLoad extends Event {
+        @Label("Course") String course;
+        @Label("Bytes") @DataAmount long bytes;
+    }
+
+    @Name("autosplittimer.HudRebuild")
+    @Label("HUD Rebuild")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class HudRebuild extends Event {
+    }
+
+    /** Forces class init so a broken JFR install fails here, inside AstJfr's guard. */
+    static boolean probe() {
+        return new HudRebuild() != null;
+    }
+
+    static void attemptStart(String course, int attempt) {
+        AttemptStart ev = new AttemptStart();
+        if (!ev.shouldCommit()) return;
+        ev.course = course;
+        ev.attempt = attempt;
+        ev.commit();
+    }
+
+    static void split(String course, int segmentIndex, int segmentTicks, int splitTicks) {
+        Split ev = new Split();
+        if (!ev.shouldCommit()) return;
+        ev.course = course;
+        ev.segmentIndex = segmentIndex;
+        ev.segmentTicks = segmentTicks;
+        ev.splitTicks = splitTicks;
+        ev.commit();
+    }
+
+    static void gold(String course, int segmentIndex, String kind, int ticks) {
+        Gold ev = new Gold();
+        if (!ev.shouldCommit()) return;
+        ev.course = course;
+        ev.segmentIndex = segmentIndex;
+        ev.kind = kind;
+        ev.ticks = ticks;
+        ev.commit();
+    }
+
+    static void finish(String course, int attempt, int totalTicks, boolean personalBest) {
+        Finish ev = new Finish();
+        if (!ev.shouldCommit()) return;
+        ev.course = course;
+        ev.attempt = attempt;
+        ev.totalTicks = totalTicks;
+        ev.personalBest = personalBest;
+        ev.commit();
+    }
+
+    static Object beginSave() {
+        CourseSave ev = new CourseSave();
+        if (!ev.isEnabled()) return null;
+        ev.begin();
+        return ev;
+    }
+
+    static void endSave(Object token, String course, long bytes) {
+        CourseSave ev = (CourseSave) token;
+        ev.end();
+        if (!ev.shouldCommit()) return;
+        ev.course = course;
+        ev.bytes = bytes;
+        ev.commit();
+    }
+
+    static Object beginLoad() {
+        CourseLoad ev = new CourseLoad();
+        if (!ev.isEnabled()) return null;
+        ev.begin();
+        return ev;
+    }
+
+    static void endLoad(Object token, String course, long bytes) {
+        CourseLoad ev = (CourseLoad) token;
+        ev.end();
+        if (!ev.shouldCommit()) return;
+        ev.course = course;
+        ev.bytes = bytes;
+        ev.commit();
+    }
+
+    static Object beginHudRebuild() {
+        HudRebuild ev = new HudRebuild();
+        if (!ev.isEnabled()) return null;
+        ev.begin();
+        return ev;
+    }
+
+    static void endHudRebuild(Object token) {
+        HudRebuild ev = (HudRebuild) token;
+        ev.end();
+        if (ev.shouldCommit()) ev.commit();
+    }
+}
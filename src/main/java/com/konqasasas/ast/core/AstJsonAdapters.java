@@ -0,0 +1,515 @@
+package com.konqasasas.ast.core;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.*;
+
+/**
+ * Hand-written streaming Gson adapters for course/HUD files.
+ *
+ * Replaces reflective (de)serialization on the save path. The JSON is byte-for-byte what
+ * the reflective Gson wrote: same field order, nulls written, same number formatting.
+ * Reading follows reflective Gson too: unknown fields are skipped, missing fields keep
+ * their defaults, a null for a primitive field is ignored, a null for an object field
+ * stores null.
+ *
+ * Pretty printing stays on by default; -Dautosplittimer.prettyJson=false writes compact
+ * files (both forms load).
+ */
+public final class AstJsonAdapters {
+    private AstJsonAdapters() {}
+
+    public static final boolean PRETTY = !"false".equalsIgnoreCase(System.getProperty("autosplittimer.prettyJson"));
+
+    static final TypeAdapter<AstData.AabbDto> AABB = new AabbAdapter();
+    static final TypeAdapter<AstData.Segment> SEGMENT = new SegmentAdapter();
+    static final TypeAdapter<AstData.PbRecord> PB = new PbAdapter();
+    static final TypeAdapter<AstData.Stats> STATS = new StatsAdapter();
+    static final TypeAdapter<AstData.HudConfig> HUD = new HudAdapter();
+    static final TypeAdapter<AstData.CourseFile> COURSE = new CourseAdapter();
+
+    /** Gson for course/HUD/layout files with the streaming adapters registered. */
+    public static Gson create(boolean pretty) {
+        GsonBuilder b = new GsonBuilder().serializeNulls()
+                .registerTypeAdapter(AstData.AabbDto.class, AABB)
+                .registerTypeAdapter(AstData.Segment.class, SEGMENT)
+                .registerTypeAdapter(AstData.PbRecord.class, PB)
+                .registerTypeAdapter(AstData.Stats.class, STATS)
+                .registerTypeAdapter(AstData.HudConfig.class, HUD)
+                .registerTypeAdapter(AstData.CourseFile.class, COURSE);
+        if (pretty) b.setPrettyPrinting();
+        return b.create();
+    }
+
+    /**
+     * Round-trips {@code cf} {@code iterations} times through reflective Gson and through
+     * the adapters (in memory, no disk) and reports the average per save/load.
+     */
+    public static String bench(AstData.CourseFile cf, int iterations) {
+        Gson reflective = new GsonBuilder().setPrettyPrinting().serializeNulls().create();
+        Gson streaming = create(true);
+        int warmup = Math.max(10, iterations / 10);
+        benchOne(reflective, cf, warmup);
+        benchOne(streaming, cf, warmup);
+        long[] r = benchOne(reflective, cf, iterations);
+        long[] s = benchOne(streaming, cf, iterations);
+        return "save " + AstPerf.formatNanos(r[0] / iterations) + " -> " + AstPerf.formatNanos(s[0] / iterations)
+                + ", load " + AstPerf.formatNanos(r[1] / iterations) + " -> " + AstPerf.formatNanos(s[1] / iterations)
+                + " (" + r[2] + " / " + s[2] + " chars, n=" + iterations + ")";
+    }
+
+    private static long[] benchOne(Gson gson, AstData.CourseFile cf, int n) {
+        long write = 0, read = 0;
+        int len = 0;
+        for (int i = 0; i < n; i++) {
+            long t0 = System.nanoTime();
+            StringWriter w = new StringWriter(4096);
+            gson.toJson(cf, AstData.CourseFile.class, w);
+            long t1 = System.nanoTime();
+            String json = w.toString();
+            gson.fromJson(new StringReader(json), AstData.CourseFile.class);
+            long t2 = System.nanoTime();
+            write += t1 - t0;
+            read += t2 - t1;
+            len = json.length();
+        }
+        return new long[]{write, read, len};
+    }
+
+    // ---- adapters ----
+
+    private static final class AabbAdapter extends TypeAdapter<AstData.AabbDto> {
+        @Override
+        public void write(JsonWriter out, AstData.AabbDto v) throws IOException {
+            if (v == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("minX").value(v.minX);
+            out.name("minY").value(v.minY);
+            out.name("minZ").value(v.minZ);
+            out.name("maxX").value(v.maxX);
+            out.name("maxY").value(v.maxY);
+            out.name("maxZ").value(v.maxZ);
+            out.endObject();
+        }
+
+        @Override
+        public AstData.AabbDto read(JsonReader in) throws IOException {
+            if (skipNull(in)) return null;
+            AstData.AabbDto v = new AstData.AabbDto();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (skipNull(in)) continue;
+                switch (name) {
+                    case "minX": v.minX = in.nextDouble(); break;
+                    case "minY": v.minY = in.nextDouble(); break;
+                    case "minZ": v.minZ = in.nextDouble(); break;
+                    case "maxX": v.maxX = in.nextDouble(); break;
+                    case "maxY": v.maxY = in.nextDouble(); break;
+                    case "maxZ": v.maxZ = in.nextDouble(); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return v;
+        }
+    }
+
+    private static final class SegmentAdapter extends TypeAdapter<AstData.Segment> {
+        @Override
+        public void write(JsonWriter out, AstData.Segment v) throws IOException {
+            if (v == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("index").value(v.index);
+            out.name("name").value(v.name);
+            out.name("aabb");
+            AABB.write(out, v.aabb);
+            out.name("height").value(v.height);
+            if (v.next != null) {
+                out.name("next").beginArray();
+                for (int i : v.next) out.value(i);
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public AstData.Segment read(JsonReader in) throws IOException {
+            if (skipNull(in)) return null;
+            AstData.Segment v = new AstData.Segment();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                switch (name) {
+                    case "index": if (!skipNull(in)) v.index = readInt(in); break;
+                    case "name": v.name = readString(in); break;
+                    case "aabb": v.aabb = AABB.read(in); break;
+                    case "height": if (!skipNull(in)) v.height = in.nextDouble(); break;
+                    case "next": v.next = readInts(in); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return v;
+        }
+    }
+
+    private static final class PbAdapter extends TypeAdapter<AstData.PbRecord> {
+        @Override
+        public void write(JsonWriter out, AstData.PbRecord v) throws IOException {
+            if (v == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("totalTicks");
+            writeInteger(out, v.totalTicks);
+            out.name("segmentTicks");
+            writeTicks(out, v.segmentTicks);
+            if (v.segmentFrom != null) {
+                out.name("segmentFrom");
+                writeTicks(out, v.segmentFrom);
+            }
+            out.endObject();
+        }
+
+        @Override
+        public AstData.PbRecord read(JsonReader in) throws IOException {
+            if (skipNull(in)) return null;
+            AstData.PbRecord v = new AstData.PbRecord();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                switch (name) {
+                    case "totalTicks": v.totalTicks = readInteger(in); break;
+                    case "segmentTicks": v.segmentTicks = readTicks(in); break;
+                    case "segmentFrom": v.segmentFrom = readTicks(in); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return v;
+        }
+    }
+
+    private static final class StatsAdapter extends TypeAdapter<AstData.Stats> {
+        @Override
+        public void write(JsonWriter out, AstData.Stats v) throws IOException {
+            if (v == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("attemptCount").value(v.attemptCount);
+            out.name("pb");
+            PB.write(out, v.pb);
+            out.name("bestSegmentsTicks");
+            writeTicks(out, v.bestSegmentsTicks);
+            out.name("bestSplitTicks");
+            writeTicks(out, v.bestSplitTicks);
+            if (v.branchBestTicks != null && v.branchBestTicks.length > 0) {
+                out.name("branchBestTicks").beginArray();
+                for (int i : v.branchBestTicks) out.value(i);
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public AstData.Stats read(JsonReader in) throws IOException {
+            if (skipNull(in)) return null;
+            AstData.Stats v = new AstData.Stats();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                switch (name) {
+                    case "attemptCount": if (!skipNull(in)) v.attemptCount = readInt(in); break;
+                    case "pb": v.pb = PB.read(in); break;
+                    case "bestSegmentsTicks": v.bestSegmentsTicks = readTicks(in); break;
+                    case "bestSplitTicks": v.bestSplitTicks = readTicks(in); break;
+                    case "branchBestTicks": {
+                        int[] t = readInts(in);
+                        v.branchBestTicks = t == null ? new int[0] : Arrays.copyOf(t, t.length - t.length % 3);
+                        break;
+                    }
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return v;
+        }
+    }
+
+    private static final class HudAdapter extends TypeAdapter<AstData.HudConfig> {
+        @Override
+        public void write(JsonWriter out, AstData.HudConfig v) throws IOException {
+            if (v == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("preset").value(v.preset);
+            out.name("scale").value(v.scale);
+            out.name("theme").value(v.theme);
+            out.name("splitListCount").value(v.splitListCount);
+            out.name("splitListWidth").value(v.splitListWidth);
+            out.name("splitListGap").value(v.splitListGap);
+            out.name("splitListLineGap").value(v.splitListLineGap);
+            out.name("splitPrimaryWidth").value(v.splitPrimaryWidth);
+            out.name("splitSecondaryWidth").value(v.splitSecondaryWidth);
+            out.name("comparison").value(v.comparison);
+            out.name("unit").value(v.unit);
+            out.name("splitColsPrimary").value(v.splitColsPrimary);
+            out.name("splitColsSecondary").value(v.splitColsSecondary);
+            out.name("colorLabel").value(v.colorLabel);
+            out.name("colorMainText").value(v.colorMainText);
+            out.name("colorSubText").value(v.colorSubText);
+            out.name("colorGood").value(v.colorGood);
+            out.name("colorBad").value(v.colorBad);
+            out.name("colorGold").value(v.colorGold);
+            out.name("toggles");
+            if (v.toggles == null) {
+                out.nullValue();
+            } else {
+                out.beginObject();
+                for (Map.Entry<String, Boolean> e : v.toggles.entrySet()) {
+                    out.name(String.valueOf(e.getKey()));
+                    if (e.getValue() == null) out.nullValue();
+                    else out.value(e.getValue().booleanValue());
+                }
+                out.endObject();
+            }
+            out.name("itemOrder");
+            if (v.itemOrder == null) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (String s : v.itemOrder) out.value(s);
+                out.endArray();
+            }
+            out.name("anchor").value(v.anchor);
+            out.name("offsetX").value(v.offsetX);
+            out.name("offsetY").value(v.offsetY);
+            out.name("timeFormat").value(v.timeFormat);
+            out.endObject();
+        }
+
+        @Override
+        public AstData.HudConfig read(JsonReader in) throws IOException {
+            if (skipNull(in)) return null;
+            AstData.HudConfig v = new AstData.HudConfig();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                switch (name) {
+                    case "preset": v.preset = readString(in); break;
+                    case "scale": if (!skipNull(in)) v.scale = in.nextDouble(); break;
+                    case "theme": v.theme = readString(in); break;
+                    case "splitListCount": if (!skipNull(in)) v.splitListCount = readInt(in); break;
+                    case "splitListWidth": if (!skipNull(in)) v.splitListWidth = readInt(in); break;
+                    case "splitListGap": if (!skipNull(in)) v.splitListGap = readInt(in); break;
+                    case "splitListLineGap": if (!skipNull(in)) v.splitListLineGap = readInt(in); break;
+                    case "splitPrimaryWidth": if (!skipNull(in)) v.splitPrimaryWidth = readInt(in); break;
+                    case "splitSecondaryWidth": if (!skipNull(in)) v.splitSecondaryWidth = readInt(in); break;
+                    case "comparison": v.comparison = readString(in); break;
+                    case "unit": v.unit = readString(in); break;
+                    case "splitColsPrimary": v.splitColsPrimary = readString(in); break;
+                    case "splitColsSecondary": v.splitColsSecondary = readString(in); break;
+                    case "colorLabel": v.colorLabel = readString(in); break;
+                    case "colorMainText": v.colorMainText = readString(in); break;
+                    case "colorSubText": v.colorSubText = readString(in); break;
+                    case "colorGood": v.colorGood = readString(in); break;
+                    case "colorBad": v.colorBad = readString(in); break;
+                    case "colorGold": v.colorGold = readString(in); break;
+                    case "toggles": v.toggles = readToggles(in); break;
+                    case "itemOrder": v.itemOrder = readStringList(in); break;
+                    case "anchor": v.anchor = readString(in); break;
+                    case "offsetX": if (!skipNull(in)) v.offsetX = readInt(in); break;
+                    case "offsetY": if (!skipNull(in)) v.offsetY = readInt(in); break;
+                    case "timeFormat": v.timeFormat = readString(in); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return v;
+        }
+
+        private static Map<String, Boolean> readToggles(JsonReader in) throws IOException {
+            if (skipNull(in)) return null;
+            Map<String, Boolean> m = new LinkedHashMap<>();
+            in.beginObject();
+            while (in.hasNext()) {
+                String k = in.nextName();
+                m.put(k, readBoolean(in));
+            }
+            in.endObject();
+            return m;
+        }
+
+        private static List<String> readStringList(JsonReader in) throws IOException {
+            if (skipNull(in)) return null;
+            List<String> list = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) list.add(readString(in));
+            in.endArray();
+            return list;
+        }
+    }
+
+    private static final class CourseAdapter extends TypeAdapter<AstData.CourseFile> {
+        @Override
+        public void write(JsonWriter out, AstData.CourseFile v) throws IOException {
+            if (v == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("version").value(v.version);
+            out.name("courseName").value(v.courseName);
+            out.name("segments");
+            if (v.segments == null) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (AstData.Segment s : v.segments) SEGMENT.write(out, s);
+                out.endArray();
+            }
+            out.name("stats");
+            STATS.write(out, v.stats);
+            out.name("hud");
+            HUD.write(out, v.hud);
+            out.endObject();
+        }
+
+        @Override
+        public AstData.CourseFile read(JsonReader in) throws IOException {
+            if (skipNull(in)) return null;
+            AstData.CourseFile v = new AstData.CourseFile();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                switch (name) {
+                    case "version": if (!skipNull(in)) v.version = readInt(in); break;
+                    case "courseName": v.courseName = readString(in); break;
+                    case "segments": {
+                        if (skipNull(in)) {
+                            v.segments = null;
+                            break;
+                        }
+                        List<AstData.Segment> list = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext()) list.add(SEGMENT.read(in));
+                        in.endArray();
+                        v.segments = list;
+                        break;
+                    }
+                    case "stats": v.stats = STATS.read(in); break;
+                    case "hud": v.hud = HUD.read(in); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return v;
+        }
+    }
+
+    // ---- primitives (same coercions as Gson's built-in adapters) ----
+
+    private static boolean skipNull(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.NULL) return false;
+        in.nextNull();
+        return true;
+    }
+
+    private static int readInt(JsonReader in) throws IOException {
+        try {
+            return in.nextInt();
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    private static Integer readInteger(JsonReader in) throws IOException {
+        return skipNull(in) ? null : readInt(in);
+    }
+
+    private static String readString(JsonReader in) throws IOException {
+        JsonToken t = in.peek();
+        if (t == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (t == JsonToken.BOOLEAN) return Boolean.toString(in.nextBoolean());
+        return in.nextString();
+    }
+
+    private static Boolean readBoolean(JsonReader in) throws IOException {
+        JsonToken t = in.peek();
+        if (t == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (t == JsonToken.STRING) return Boolean.parseBoolean(in.nextString());
+        return in.nextBoolean();
+    }
+
+    private static void writeInteger(JsonWriter out, Integer v) throws IOException {
+        if (v == null) out.nullValue();
+        else out.value(v.intValue());
+    }
+
+    /** int[] tick arrays keep the List<Integer> JSON shape: NO_TICKS <-> null. */
+    private static void writeTicks(JsonWriter out, int[] ticks) throws IOException {
+        if (ticks == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (int t : ticks) {
+            if (t == AstData.NO_TICKS) out.nullValue();
+            else out.value(t);
+        }
+        out.endArray();
+    }
+
+    private static int[] readInts(JsonReader in) throws IOException {
+        if (skipNull(in)) return null;
+        int[] buf = new int[8];
+        int n = 0;
+        in.beginArray();
+        while (in.hasNext()) {
+            if (n == buf.length) buf = Arrays.copyOf(buf, n * 2);
+            buf[n++] = readInt(in);
+        }
+        in.endArray();
+        return Arrays.copyOf(buf, n);
+    }
+
+    private static int[] readTicks(JsonReader in) throws IOException {
+        if (skipNull(in)) return null;
+        int[] buf = new int[16];
+        int n = 0;
+        in.beginArray();
+        while (in.hasNext()) {
+            if (n == buf.length) buf = Arrays.copyOf(buf, n * 2);
+            buf[n++] = skipNull(in) ? AstData.NO_TICKS : readInt(in);
+        }
+        in.endArray();
+        return Arrays.copyOf(buf, n);
+    }
+}
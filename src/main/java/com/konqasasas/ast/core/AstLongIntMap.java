@@ -0,0 +1,93 @@
+package com.konqasasas.ast.core;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing long -> int map (linear probing) for hot counters, without boxing or
+ * per-entry objects. {@link #EMPTY} cannot be used as a key. Not thread-safe.
+ */
+public final class AstLongIntMap {
+    public static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int size = 0;
+    private int mask;
+
+    public AstLongIntMap() {
+        this(64);
+    }
+
+    public AstLongIntMap(int expected) {
+        int cap = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        alloc(cap);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(long key) {
+        int i = slot(key);
+        while (keys[i] != EMPTY) {
+            if (keys[i] == key) return values[i];
+            i = (i + 1) & mask;
+        }
+        return 0;
+    }
+
+    /** Adds {@code delta} to the value of {@code key} (0 if absent); returns the new value. */
+    public int add(long key, int delta) {
+        int i = slot(key);
+        while (keys[i] != EMPTY) {
+            if (keys[i] == key) return values[i] += delta;
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = delta;
+        if (++size * 10 > keys.length * 6) grow();
+        return delta;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    /** Visit every entry; the map must not be modified during the visit. */
+    public void forEach(Visitor v) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) v.visit(keys[i], values[i]);
+        }
+    }
+
+    public interface Visitor {
+        void visit(long key, int value);
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void alloc(int cap) {
+        keys = new long[cap];
+        values = new int[cap];
+        Arrays.fill(keys, EMPTY);
+        mask = cap - 1;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        alloc(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) continue;
+            int j = slot(oldKeys[i]);
+            while (keys[j] != EMPTY) j = (j + 1) & mask;
+            keys[j] = oldKeys[i];
+            values[j] = oldValues[i];
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.konqasasas.ast.core;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lightweight hot-path instrumentation (nanosecond timings).
+ *
+ * Each probe owns a fixed-size log-linear histogram (8 sub-buckets per power of two,
+ * ~12% resolution) backed by atomic arrays, so recording never allocates or locks and
+ * is safe from both the client thread and the render thread.
+ *
+ * Usage:
+ *   long t0 = AstPerf.begin();
+ *   try { ... } finally { AstPerf.end(AstPerf.Probe.CLIENT_TICK, t0); }
+ */
+public final class AstPerf {
+    private AstPerf() {}
+
+    public enum Probe {
+        CLIENT_TICK("tick"),
+        HUD_RENDER("hud"),
+        VIZ_RENDER("viz"),
+        GHOST_RENDER("ghost"),
+        HEATMAP_RENDER("heatmap"),
+        COURSE_SAVE("save"),
+        COURSE_LOAD("load");
+
+        public final String label;
+        final Histogram hist = new Histogram();
+
+        Probe(String label) {
+            this.label = label;
+        }
+    }
+
+    public static long begin() {
+        return System.nanoTime();
+    }
+
+    public static void end(Probe probe, long startNanos) {
+        long d = System.nanoTime() - startNanos;
+        probe.hist.record(d < 0 ? 0 : d);
+    }
+
+    public static Snapshot snapshot(Probe probe) {
+        return probe.hist.snapshot();
+    }
+
+    public static void resetAll() {
+        for (Probe p : Probe.values()) p.hist.reset();
+    }
+
+    /** Human-readable duration, e.g. "850ns", "12.3us", "4.56ms". */
+    public static String formatNanos(long ns) {
+        if (ns < 1_000L) return ns + "ns";
+        if (ns < 1_000_000L) return String.format(Locale.ROOT, "%.1fus", ns / 1_000.0);
+        if (ns < 1_000_000_000L) return String.format(Locale.ROOT, "%.2fms", ns / 1_000_000.0);
+        return String.format(Locale.ROOT, "%.2fs", ns / 1_000_000_000.0);
+    }
+
+    public static final class Snapshot {
+        public final long count;
+        public final long p50;
+        public final long p99;
+        public final long max;
+
+        Snapshot(long count, long p50, long p99, long max) {
+            this.count = count;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.max = max;
+        }
+    }
+
+    static final class Histogram {
+        // 3 mantissa bits => 8 sub-buckets per power of two
+        private static final int SUB_BITS = 3;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long v) {
+            buckets.incrementAndGet(bucketOf(v));
+            count.incrementAndGet();
+            long m = max.get();
+            while (v > m && !max.compareAndSet(m, v)) {
+                m = max.get();
+            }
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) buckets.set(i, 0L);
+            count.set(0L);
+            max.set(0L);
+        }
+
+        Snapshot snapshot() {
+            long[] copy = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                copy[i] = buckets.get(i);
+                total += copy[i];
+            }
+            long mx = max.get();
+            return new Snapshot(count.get(), percentile(copy, total, 0.50, mx), percentile(copy, total, 0.99, mx), mx);
+        }
+
+        private static long percentile(long[] counts, long total, double q, long max) {
+            if (total <= 0) return 0L;
+            long rank = (long) Math.ceil(total * q);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(upperBoundOf(i), max);
+            }
+            return max;
+        }
+
+        static int bucketOf(long v) {
+            if (v < SUB_COUNT) return (int) v;
+            int exp = 63 - Long.numberOfLeadingZeros(v);       // >= SUB_BITS
+            int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+            return (exp - SUB_BITS + 1) * SUB_COUNT + sub;
+        }
+
+        static long upperBoundOf(int bucket) {
+            if (bucket < SUB_COUNT) return bucket;
+            int exp = bucket / SUB_COUNT + SUB_BITS - 1;
+            int sub = bucket % SUB_COUNT;
+            long lower = ((long) (SUB_COUNT + sub)) << (exp - SUB_BITS);
+            return lower + (1L << (exp - SUB_BITS)) - 1;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.konqasasas.ast.core;
+
+import net.minecraft.client.entity.EntityOtherPlayerMP;
+import net.minecraft.entity.player.EntityPlayer;
+
+import java.util.*;
+
+/**
+ * Race mode: follows other visible players through the active course with the same rules as
+ * {@link AstRuntime} (Start starts, boxes the {@link AstRouteTable} accepts split, a goal box
+ * finishes), so everyone's splits can be shown next to the local run.
+ *
+ * Up to {@link #MAX_RACERS} players get a slot; all per-player run state lives in primitive
+ * arrays indexed by slot (splits and inside-flags are slot-major flat arrays), so a tick
+ * allocates nothing. Entry detection is one pass over the segment boxes testing every
+ * tracked position, after a reject against the course bounds.
+ *
+ * Times come from the positions the server sends for other players, so they can be off by
+ * a tick or two against the player's own client.
+ */
+public final class AstRaceTracker {
+    private static final AstRaceTracker INSTANCE = new AstRaceTracker();
+
+    public static AstRaceTracker get() {
+        return INSTANCE;
+    }
+
+    public static final int MAX_RACERS = 32;
+    private static final int FORGET_TICKS = 20 * 30;   // slot freed after 30s out of sight
+
+    private static final byte IDLE = 0, RUNNING = 1, FINISHED = 2;
+
+    private static volatile boolean ENABLED = false;
+
+    /** One standings row for the HUD. */
+    public static final class Row {
+        public final String name;
+        public final boolean self;
+        public final boolean finished;
+        public final int splitsDone;      // checkpoints passed (incl. goal)
+        public final int ticks;           // finish time, or current run time
+        public final int lastSplitTicks;  // cumulative at the last checkpoint, NO_TICKS if none
+        public final int deltaTicks;      // vs fastest at that checkpoint, NO_TICKS if none
+
+        Row(String name, boolean self, boolean finished, int splitsDone, int ticks, int lastSplitTicks, int deltaTicks) {
+            this.name = name;
+            this.self = self;
+            this.finished = finished;
+            this.splitsDone = splitsDone;
+            this.ticks = ticks;
+            this.lastSplitTicks = lastSplitTicks;
+            this.deltaTicks = deltaTicks;
+        }
+    }
+
+    // per slot
+    private final int[] entityId = new int[MAX_RACERS];
+    private final String[] names = new String[MAX_RACERS];
+    private final byte[] state = new byte[MAX_RACERS];
+    private final boolean[] startLatched = new boolean[MAX_RACERS];
+    private final int[] elapsed = new int[MAX_RACERS];
+    private final int[] lastPos = new int[MAX_RACERS];   // order position of the last split, -1 = none
+    private final int[] lastSeen = new int[MAX_RACERS];
+    private final boolean[] used = new boolean[MAX_RACERS];
+    private final double[] px = new double[MAX_RACERS], py = new double[MAX_RACERS], pz = new double[MAX_RACERS];
+    private final int[] present = new int[MAX_RACERS];   // slots seen this tick
+    private final int[] near = new int[MAX_RACERS];      // ... and inside the course bounds
+    private final boolean[] wasNear = new boolean[MAX_RACERS];
+    private int presentCount = 0;
+    private int[] splits = new int[0];                   // [slot * count + pos] cumulative ticks
+    private boolean[] inside = new boolean[0];           // [slot * count + pos]
+
+    // course layout: Start + boxes in order
+    private AstData.CourseFile course = null;
+    private int revision = -1;
+    private int count = 0;                               // boxes after Start
+    private double[] bounds = new double[0];             // 6 per box, order position 0..count-1
+    private int[] boxIndex = new int[0];                 // segment index per box
+    private double[] start = null;
+    private final double[] all = new double[6];          // union of every box
+    private int tick = 0;
+
+    private AstRaceTracker() {}
+
+    public static void setEnabled(boolean v) {
+        ENABLED = v;
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(used, false);
+        course = null;
+    }
+
+    /** One client tick: update slots from the world's players, then detect entries. */
+    public synchronized void tick(List<EntityPlayer> players, AstData.CourseFile c) {
+        if (!ENABLED || c == null) return;
+        if (c != course || c.segmentsRevision != revision) layout(c);
+        tick++;
+
+        presentCount = 0;
+        for (int i = 0; i < players.size(); i++) {
+            EntityPlayer p = players.get(i);
+            if (!(p instanceof EntityOtherPlayerMP) || p.isSpectator()) continue;
+            int s = slotFor(p);
+            if (s < 0) continue;
+            px[s] = p.posX;
+            py[s] = p.posY;
+            pz[s] = p.posZ;
+            lastSeen[s] = tick;
+            present[presentCount++] = s;
+        }
+        for (int s = 0; s < MAX_RACERS; s++) {
+            if (used[s] && tick - lastSeen[s] > FORGET_TICKS) used[s] = false;
+        }
+
+        // Start boxes first (a restart from Start wins over a split on the same tick)
+        for (int k = 0; k < presentCount; k++) {
+            int s = present[k];
+            boolean in = start != null && in(start, 0, px[s], py[s], pz[s]);
+            if (!in) {
+                startLatched[s] = false;
+            } else if (!startLatched[s]) {
+                startLatched[s] = true;
+                state[s] = RUNNING;
+                elapsed[s] = 0;
+                lastPos[s] = -1;
+                Arrays.fill(splits, s * count, s * count + count, AstData.NO_TICKS);
+            }
+        }
+
+        // one pass over the boxes for all racers near the course
+        int nearCount = 0;
+        for (int k = 0; k < presentCount; k++) {
+            int s = present[k];
+            boolean in = in(all, 0, px[s], py[s], pz[s]);
+            if (in) {
+                near[nearCount++] = s;
+            } else if (wasNear[s]) {
+                Arrays.fill(inside, s * count, s * count + count, false); // left every box
+            }
+            wasNear[s] = in;
+        }
+        AstRouteTable route = AstRouteTable.get();
+        for (int b = 0; b < count; b++) {
+            for (int k = 0; k < nearCount; k++) {
+                int s = near[k];
+                boolean now = in(bounds, b * 6, px[s], py[s], pz[s]);
+                int f = s * count + b;
+                if (now && !inside[f] && state[s] == RUNNING
+                        && route.accepts(c, lastPos[s] < 0 ? 0 : boxIndex[lastPos[s]], boxIndex[b])) {
+                    // boxes are visited in order, so the furthest box entered this tick sets the progress
+                    splits[f] = elapsed[s];
+                    lastPos[s] = b;
+                    if (route.isGoal(c, boxIndex[b])) state[s] = FINISHED;
+                }
+                inside[f] = now;
+            }
+        }
+        for (int k = 0; k < presentCount; k++) {
+            int s = present[k];
+            if (state[s] == RUNNING) elapsed[s]++;
+        }
+    }
+
+    /**
+     * Standings: finished racers by time, then running ones by progress. Includes the local
+     * run ("self") when it has started.
+     */
+    public synchronized List<Row> standings(AstRuntime rt) {
+        List<Row> out = new ArrayList<>();
+        if (!ENABLED || course == null || count == 0) return out;
+
+        // local run, mapped onto order positions
+        int[] selfSplits = new int[count];
+        Arrays.fill(selfSplits, AstData.NO_TICKS);
+        int selfLast = -1;
+        AstRuntime.State st = rt.getState();
+        if (st != AstRuntime.State.IDLE) {
+            Map<Integer, Integer> cum = rt.getRunSplitCumulative();
+            List<Integer> order = AstUtil.sortedNonStartIndices(course);
+            for (int b = 0; b < count && b < order.size(); b++) {
+                Integer t = cum.get(order.get(b));
+                if (t != null) {
+                    selfSplits[b] = t;
+                    selfLast = b;
+                }
+            }
+        }
+
+        // fastest time at each checkpoint among everyone
+        int[] best = selfSplits.clone();
+        for (int s = 0; s < MAX_RACERS; s++) {
+            if (!used[s] || state[s] == IDLE) continue;
+            for (int b = 0; b < count; b++) {
+                int t = splits[s * count + b];
+                if (t != AstData.NO_TICKS && (best[b] == AstData.NO_TICKS || t < best[b])) best[b] = t;
+            }
+        }
+
+        if (st != AstRuntime.State.IDLE) {
+            int last = selfLast < 0 ? AstData.NO_TICKS : selfSplits[selfLast];
+            out.add(new Row("You", true, st == AstRuntime.State.FINISHED, selfLast + 1,
+                    st == AstRuntime.State.FINISHED && last != AstData.NO_TICKS ? last : rt.getElapsedTicks(),
+                    last, selfLast < 0 ? AstData.NO_TICKS : last - best[selfLast]));
+        }
+        for (int s = 0; s < MAX_RACERS; s++) {
+            if (!used[s] || state[s] == IDLE) continue;
+            int lp = lastPos[s];
+            int last = lp < 0 ? AstData.NO_TICKS : splits[s * count + lp];
+            boolean fin = state[s] == FINISHED;
+            out.add(new Row(names[s], false, fin, lp + 1, fin ? last : elapsed[s], last,
+                    lp < 0 ? AstData.NO_TICKS : last - best[lp]));
+        }
+        out.sort((a, b) -> {
+            if (a.finished != b.finished) return a.finished ? -1 : 1;
+            if (a.finished) return Integer.compare(a.ticks, b.ticks);
+            if (a.splitsDone != b.splitsDone) return Integer.compare(b.splitsDone, a.splitsDone);
+            return Integer.compare(a.lastSplitTicks, b.lastSplitTicks);
+        });
+        return out;
+    }
+
+    public synchronized int checkpoints() {
+        return count;
+    }
+
+    public synchronized String summary() {
+        int n = 0;
+        for (boolean u : used) if (u) n++;
+        return (ENABLED ? "on" : "off") + ", " + n + " tracked, " + count + " boxes";
+    }
+
+    private int slotFor(EntityPlayer p) {
+        int id = p.getEntityId(), free = -1;
+        for (int s = 0; s < MAX_RACERS; s++) {
+            if (used[s] && entityId[s] == id) return s;
+            if (!used[s] && free < 0) free = s;
+        }
+        if (free < 0) return -1;
+        used[free] = true;
+        entityId[free] = id;
+        names[free] = p.getName();
+        state[free] = IDLE;
+        startLatched[free] = false;
+        elapsed[free] = 0;
+        lastPos[free] = -1;
+        Arrays.fill(splits, free * count, free * count + count, AstData.NO_TICKS);
+        Arrays.fill(inside, free * count, free * count + count, false);
+        wasNear[free] = false;
+        return free;
+    }
+
+    private void layout(AstData.CourseFile c) {
+        course = c;
+        revision = c.segmentsRevision;
+        AstData.Segment s0 = AstUtil.findSegment(c, 0);
+        start = (s0 == null || s0.aabb == null) ? null : box(s0.aabb);
+        List<Integer> order = AstUtil.sortedNonStartIndices(c);
+        List<double[]> boxes = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+        for (int idx : order) {
+            AstData.Segment s = AstUtil.findSegment(c, idx);
+            if (s != null && s.aabb != null) {
+                boxes.add(box(s.aabb));
+                indices.add(idx);
+            }
+        }
+        count = boxes.size();
+        bounds = new double[count * 6];
+        boxIndex = new int[count];
+        for (int b = 0; b < count; b++) {
+            System.arraycopy(boxes.get(b), 0, bounds, b * 6, 6);
+            boxIndex[b] = indices.get(b);
+        }
+
+        all[0] = all[1] = all[2] = Double.MAX_VALUE;
+        all[3] = all[4] = all[5] = -Double.MAX_VALUE;
+        if (start != null) grow(start, 0);
+        for (int b = 0; b < count; b++) grow(bounds, b * 6);
+
+        // the layout changed: every run restarts
+        splits = new int[MAX_RACERS * count];
+        inside = new boolean[MAX_RACERS * count];
+        Arrays.fill(splits, AstData.NO_TICKS);
+        Arrays.fill(state, IDLE);
+        Arrays.fill(startLatched, false);
+    }
+
+    private void grow(double[] b, int o) {
+        for (int k = 0; k < 3; k++) {
+            all[k] = Math.min(all[k], b[o + k]);
+            all[k + 3] = Math.max(all[k + 3], b[o + k + 3]);
+        }
+    }
+
+    private static double[] box(AstData.AabbDto a) {
+        return new double[]{a.minX, a.minY, a.minZ, a.maxX, a.maxY, a.maxZ};
+    }
+
+    /** Half-open containment, like {@link AstUtil#contains}. */
+    private static boolean in(double[] b, int o, double x, double y, double z) {
+        return x >= b[o] && x < b[o + 3] && y >= b[o + 1] && y < b[o + 4] && z >= b[o + 2] && z < b[o + 5];
+    }
+}
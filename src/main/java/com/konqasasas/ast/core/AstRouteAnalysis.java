@@ -0,0 +1,250 @@
+package com.konqasasas.ast.core;
+
+import net.minecraft.client.Minecraft;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background route analysis over the stored attempt traces of a course ({@link AstTraceStore}).
+ *
+ * Every finished trace is resampled onto normalized arc length (0 = start, 1 = goal) and cut
+ * into {@link #REGIONS} equal stretches of route. Per stretch, each attempt's time is compared
+ * with the fastest attempt; stretches where most attempts lose time against it are reported as
+ * hotspots, worst median loss first.
+ *
+ * Traces are decoded and resampled in parallel on a small daemon {@link ForkJoinPool}. The
+ * client thread only starts the job and receives chat lines through
+ * {@code Minecraft.addScheduledTask}. Results are cached per course and reused until a new
+ * attempt is stored ({@link AstTraceStore#generation}).
+ */
+public final class AstRouteAnalysis {
+    private static final AstRouteAnalysis INSTANCE = new AstRouteAnalysis();
+
+    public static AstRouteAnalysis get() {
+        return INSTANCE;
+    }
+
+    public static final int REGIONS = 40;
+    private static final int MAX_TRACES = 200;         // newest finished attempts
+    private static final double CONSISTENT = 0.6;      // share of attempts losing time in a stretch
+    private static final int MAX_HOTSPOTS = 5;
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+
+    /** Where attempts consistently lose time against the fastest one. */
+    public static final class Hotspot {
+        public final int region;
+        public final double x, y, z;     // fastest attempt's position at the middle of the stretch
+        public final int medianLossTicks;
+        public final int losingPercent;
+
+        Hotspot(int region, double x, double y, double z, int medianLossTicks, int losingPercent) {
+            this.region = region;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.medianLossTicks = medianLossTicks;
+            this.losingPercent = losingPercent;
+        }
+    }
+
+    public static final class Result {
+        public final String courseName;
+        public final int generation;
+        public final int traces;
+        public final int bestAttempt;
+        public final int bestTicks;
+        public final List<Hotspot> hotspots;
+
+        Result(String courseName, int generation, int traces, int bestAttempt, int bestTicks, List<Hotspot> hotspots) {
+            this.courseName = courseName;
+            this.generation = generation;
+            this.traces = traces;
+            this.bestAttempt = bestAttempt;
+            this.bestTicks = bestTicks;
+            this.hotspots = hotspots;
+        }
+    }
+
+    private final Map<String, Result> cache = new HashMap<>();
+    private String runningCourse = null;
+
+    private AstRouteAnalysis() {}
+
+    /** Cached result for the course if no attempt was stored since; otherwise null. */
+    public synchronized Result cachedOrNull(String courseName) {
+        Result r = cache.get(courseName);
+        return (r != null && r.generation == AstTraceStore.get().generation(courseName)) ? r : null;
+    }
+
+    public synchronized boolean isRunning() {
+        return runningCourse != null;
+    }
+
+    /**
+     * Start analysing a course in the background. Returns false if a job is already running.
+     * Progress and the result are posted to chat; the result is then available from
+     * {@link #cachedOrNull}.
+     */
+    public synchronized boolean startSafe(String courseName) {
+        if (courseName == null || runningCourse != null) return false;
+        runningCourse = courseName;
+        int generation = AstTraceStore.get().generation(courseName);
+        POOL.execute(() -> {
+            try {
+                Result r = analyze(courseName, generation);
+                synchronized (this) {
+                    cache.put(courseName, r);
+                }
+                post(format(r));
+            } catch (RuntimeException e) {
+                post(Collections.singletonList("Analysis failed: " + e));
+            } finally {
+                synchronized (this) {
+                    runningCourse = null;
+                }
+            }
+        });
+        return true;
+    }
+
+    /** Chat lines for a result. */
+    public static List<String> format(Result r) {
+        List<String> out = new ArrayList<>();
+        if (r.traces < 2) {
+            out.add("Route analysis: need at least 2 finished attempts with traces (have " + r.traces + ").");
+            return out;
+        }
+        out.add("Route analysis of " + r.courseName + ": " + r.traces + " attempts vs #" + r.bestAttempt
+                + " (" + AstUtil.formatTicks(r.bestTicks, "MSS") + ")");
+        if (r.hotspots.isEmpty()) {
+            out.add("  no consistent time loss found");
+        }
+        for (Hotspot h : r.hotspots) {
+            out.add(String.format(Locale.ROOT, "  %d%%-%d%% of route near %.0f %.0f %.0f: +%d ticks (median), %d%% of attempts slower",
+                    h.region * 100 / REGIONS, (h.region + 1) * 100 / REGIONS, h.x, h.y, h.z,
+                    h.medianLossTicks, h.losingPercent));
+        }
+        return out;
+    }
+
+    private Result analyze(String courseName, int generation) {
+        List<AstGhostTrace.Trace> all = AstTraceStore.get().readAllSafe(courseName);
+        List<AstGhostTrace.Trace> finished = new ArrayList<>();
+        for (int i = all.size() - 1; i >= 0 && finished.size() < MAX_TRACES; i--) {
+            AstGhostTrace.Trace t = all.get(i);
+            if (t.totalTicks != AstAttemptStore.NONE && t.samples >= 2) finished.add(t);
+        }
+        if (finished.size() < 2) {
+            return new Result(courseName, generation, finished.size(), 0, 0, Collections.emptyList());
+        }
+        post(Collections.singletonList("Analysing " + finished.size() + " attempts..."));
+
+        AtomicInteger done = new AtomicInteger();
+        int total = finished.size();
+        List<Resample> tasks = new ArrayList<>(total);
+        for (AstGhostTrace.Trace t : finished) tasks.add(new Resample(t, done, total));
+        ForkJoinTask.invokeAll(tasks);
+
+        // fastest attempt is the reference
+        int best = 0;
+        for (int i = 1; i < total; i++) {
+            if (finished.get(i).totalTicks < finished.get(best).totalTicks) best = i;
+        }
+        float[] ref = tasks.get(best).join().regionTicks;
+
+        List<Hotspot> hotspots = new ArrayList<>();
+        int[] losses = new int[total - 1];
+        for (int r = 0; r < REGIONS; r++) {
+            int n = 0, losing = 0;
+            for (int i = 0; i < total; i++) {
+                if (i == best) continue;
+                int loss = Math.round(tasks.get(i).join().regionTicks[r] - ref[r]);
+                losses[n++] = loss;
+                if (loss > 0) losing++;
+            }
+            Arrays.sort(losses, 0, n);
+            int median = losses[n / 2];
+            if (median > 0 && losing >= CONSISTENT * n) {
+                double[] p = tasks.get(best).join().regionMid[r];
+                hotspots.add(new Hotspot(r, p[0], p[1], p[2], median, losing * 100 / n));
+            }
+        }
+        hotspots.sort((a, b) -> Integer.compare(b.medianLossTicks, a.medianLossTicks));
+        if (hotspots.size() > MAX_HOTSPOTS) hotspots = new ArrayList<>(hotspots.subList(0, MAX_HOTSPOTS));
+        AstGhostTrace.Trace bt = finished.get(best);
+        return new Result(courseName, generation, total, bt.attempt, bt.totalTicks, hotspots);
+    }
+
+    /** Per-stretch times of one trace on normalized arc length. */
+    private static final class Resampled {
+        final float[] regionTicks = new float[REGIONS];
+        final double[][] regionMid = new double[REGIONS][];
+    }
+
+    private static final class Resample extends RecursiveTask<Resampled> {
+        private final AstGhostTrace.Trace trace;
+        private final AtomicInteger done;
+        private final int total;
+
+        Resample(AstGhostTrace.Trace trace, AtomicInteger done, int total) {
+            this.trace = trace;
+            this.done = done;
+            this.total = total;
+        }
+
+        @Override
+        protected Resampled compute() {
+            double[] origin = new double[3];
+            float[] p = trace.decode(origin);
+            int n = p.length / 3;
+            double[] arc = new double[Math.max(1, n)];
+            for (int i = 1; i < n; i++) {
+                double dx = p[i * 3] - p[i * 3 - 3], dy = p[i * 3 + 1] - p[i * 3 - 2], dz = p[i * 3 + 2] - p[i * 3 - 1];
+                arc[i] = arc[i - 1] + Math.sqrt(dx * dx + dy * dy + dz * dz);
+            }
+            double length = arc[Math.max(0, n - 1)];
+
+            Resampled out = new Resampled();
+            double prevTick = 0.0;
+            int seg = 0;
+            for (int r = 1; r <= REGIONS; r++) {
+                double target = length * r / REGIONS;
+                while (seg + 1 < n - 1 && arc[seg + 1] < target) seg++;
+                double tick = tickAt(arc, seg, n, target);
+                out.regionTicks[r - 1] = (float) (tick - prevTick);
+                prevTick = tick;
+
+                double mid = length * (r - 0.5) / REGIONS;
+                int m = Arrays.binarySearch(arc, 0, n, mid);
+                if (m < 0) m = Math.min(n - 1, -m - 1);
+                out.regionMid[r - 1] = new double[]{origin[0] + p[m * 3], origin[1] + p[m * 3 + 1], origin[2] + p[m * 3 + 2]};
+            }
+
+            int d = done.incrementAndGet();
+            int step = Math.max(1, total / 4);
+            if (d % step == 0 && d < total) post(Collections.singletonList("  " + (d * 100 / total) + "% resampled"));
+            return out;
+        }
+
+        /** Sample index (fractional) where the trace reaches arc length {@code target}. */
+        private static double tickAt(double[] arc, int seg, int n, double target) {
+            if (n < 2) return 0.0;
+            double a = arc[seg], b = arc[Math.min(n - 1, seg + 1)];
+            if (b <= a) return seg;
+            return seg + Math.max(0.0, Math.min(1.0, (target - a) / (b - a)));
+        }
+    }
+
+    private static void post(List<String> lines) {
+        Minecraft mc = Minecraft.getMinecraft();
+        if (mc == null) return;
+        mc.addScheduledTask(() -> {
+            for (String l : lines) AstCourseManager.chat(l);
+        });
+    }
+}
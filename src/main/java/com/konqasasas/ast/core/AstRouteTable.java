@@ -0,0 +1,270 @@
+package com.konqasasas.ast.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The active course's progress rules as a flat transition table.
+ *
+ * States are "last box counted": Start, or one of the non-Start segments in
+ * sortedNonStartIndices order; triggers are those same segments. {@code table[state * n + trigger]}
+ * is the state after entering the trigger box, or {@link #IGNORE}. Deciding a box entry is a
+ * hash lookup (index -> position) and one array read, however the route is shaped.
+ *
+ * Without a declared route every segment behaves as before: any higher index counts
+ * (lower ones are ignored, skipping is allowed) and the highest index finishes. A segment's
+ * {@link AstData.Segment#next} list replaces that rule for the state it leaves: only the listed
+ * indices count, which expresses required order, alternate paths and optional boxes (a path that
+ * may skip one lists both). An empty list makes the segment a goal; the highest index is only a
+ * goal while it declares nothing.
+ *
+ * Compiled on first use after the course or its segmentsRevision changes.
+ *
+ * On a declared route a segment's time depends on the box it was measured from (the box
+ * actually counted before it, see {@link AstData.PbRecord#segmentFrom}), so the course keeps a
+ * best per branch in {@link AstData.Stats#branchBestTicks}, and sum of best / best possible
+ * time follow the transitions instead of adding up every position ({@link #sumOfBest},
+ * {@link #bestPossible}).
+ */
+public final class AstRouteTable {
+    private static final AstRouteTable INSTANCE = new AstRouteTable();
+
+    public static AstRouteTable get() {
+        return INSTANCE;
+    }
+
+    public static final int IGNORE = -1;
+
+    private AstData.CourseFile course = null;
+    private int revision = -1;
+
+    private int n = 0;                                      // triggers (non-Start segments)
+    private int[] order = new int[0];                       // position -> segment index
+    private final AstLongIntMap positionOf = new AstLongIntMap(); // segment index -> position + 1
+    private int[] table = new int[0];                       // [(state) * n + trigger] -> state, states 0 = Start, p + 1
+    private boolean[] goal = new boolean[1];                // per state
+    private int[] firstNext = new int[1];                   // per state: lowest segment index that counts
+    private boolean declared = false;
+    private int compiles = 0;
+
+    // remaining best time per state over the branch bests (see toGoal()); recomputed when they change
+    private long[] toGoal = null;
+    private int[] toGoalBranches = null;
+    private int toGoalHash = 0;
+
+    private AstRouteTable() {}
+
+    /**
+     * Whether entering segment {@code to} counts as the next split when the last counted box was
+     * {@code from} (0 = Start). A {@code from} that is no longer a segment (deleted mid-run)
+     * falls back to "any higher index".
+     */
+    public synchronized boolean accepts(AstData.CourseFile c, int from, int to) {
+        sync(c);
+        int t = positionOf.get(to) - 1;
+        if (t < 0) return false;
+        int s = state(from);
+        if (s < 0) return to > from;
+        return table[s * n + t] != IGNORE;
+    }
+
+    /** Whether a run that just counted segment {@code index} is finished. */
+    public synchronized boolean isGoal(AstData.CourseFile c, int index) {
+        sync(c);
+        int s = state(index);
+        return s > 0 && goal[s];
+    }
+
+    /** Lowest segment index that counts after {@code from} (0 = Start); Integer.MAX_VALUE if none. */
+    public synchronized int nextIndex(AstData.CourseFile c, int from) {
+        sync(c);
+        int s = state(from);
+        if (s < 0) return AstUtil.nextExistingIndex(AstUtil.sortedNonStartIndices(c), from);
+        return firstNext[s];
+    }
+
+    /** True when any segment of the course declares a route. */
+    public synchronized boolean isDeclared(AstData.CourseFile c) {
+        sync(c);
+        return declared;
+    }
+
+    public synchronized String summary() {
+        return n + " triggers, " + goal.length + " states" + (declared ? ", route declared" : "")
+                + ", " + compiles + " compiles";
+    }
+
+    // ---- per-branch best segments ----
+
+    /**
+     * Fastest Start-to-goal time along the declared transitions using the branch bests, or null
+     * when no goal is reachable through recorded branches.
+     */
+    public synchronized Integer sumOfBest(AstData.CourseFile c, int[] branchBest) {
+        sync(c);
+        long d = toGoal(branchBest)[0];
+        return d == UNREACHABLE ? null : (int) d;
+    }
+
+    /**
+     * Best possible finish for a run whose last counted box is {@code from} (0 = Start), split
+     * there at {@code lastSplit} and now at {@code elapsed}: over the boxes that may come next,
+     * the current segment finished in its branch best (never before now) plus the best
+     * remainder from that box. Null when no goal is reachable through recorded branches.
+     */
+    public synchronized Integer bestPossible(AstData.CourseFile c, int[] branchBest, int from, int lastSplit, int elapsed) {
+        sync(c);
+        int s = state(from);
+        if (s < 0) return null;
+        long[] rest = toGoal(branchBest);
+        if (goal[s]) return rest[0] == UNREACHABLE ? null : (int) rest[0];
+        long best = UNREACHABLE;
+        for (int t = 0; t < n; t++) {
+            if (table[s * n + t] == IGNORE || rest[t + 1] == UNREACHABLE) continue;
+            int seg = branchBest(branchBest, from, order[t]);
+            if (seg == AstData.NO_TICKS) continue;
+            best = Math.min(best, Math.max(elapsed, (long) lastSplit + seg) + rest[t + 1]);
+        }
+        return best == UNREACHABLE ? null : (int) Math.min(Integer.MAX_VALUE, best);
+    }
+
+    /** Fastest recorded segment out of {@code from} (0 = Start) to a box that may come next, or NO_TICKS. */
+    public synchronized int bestNextSegment(AstData.CourseFile c, int[] branchBest, int from) {
+        sync(c);
+        int s = state(from);
+        if (s < 0) return AstData.NO_TICKS;
+        int best = AstData.NO_TICKS;
+        for (int t = 0; t < n; t++) {
+            if (table[s * n + t] == IGNORE) continue;
+            int seg = branchBest(branchBest, from, order[t]);
+            if (seg != AstData.NO_TICKS && (best == AstData.NO_TICKS || seg < best)) best = seg;
+        }
+        return best;
+    }
+
+    /** Best ticks for the branch (from, to), or NO_TICKS. */
+    public static int branchBest(int[] triples, int from, int to) {
+        if (triples == null) return AstData.NO_TICKS;
+        for (int i = 0; i + 2 < triples.length; i += 3) {
+            if (triples[i] == from && triples[i + 1] == to) return triples[i + 2];
+        }
+        return AstData.NO_TICKS;
+    }
+
+    /** {@code triples} with (from, to) lowered to {@code ticks} if faster or new; may be a new array. */
+    public static int[] improveBranchBest(int[] triples, int from, int to, int ticks) {
+        if (triples == null) triples = new int[0];
+        for (int i = 0; i + 2 < triples.length; i += 3) {
+            if (triples[i] == from && triples[i + 1] == to) {
+                if (triples[i + 2] == AstData.NO_TICKS || ticks < triples[i + 2]) triples[i + 2] = ticks;
+                return triples;
+            }
+        }
+        int[] out = Arrays.copyOf(triples, triples.length + 3);
+        out[triples.length] = from;
+        out[triples.length + 1] = to;
+        out[triples.length + 2] = ticks;
+        return out;
+    }
+
+    private static final long UNREACHABLE = Long.MAX_VALUE;
+
+    /**
+     * Per state, the least time to a goal along transitions that have a branch best
+     * (UNREACHABLE otherwise). Relaxed Bellman-Ford style because a route may loop back.
+     */
+    private long[] toGoal(int[] branchBest) {
+        int hash = branchBest == null ? 0 : Arrays.hashCode(branchBest);
+        if (toGoal != null && toGoalBranches == branchBest && toGoalHash == hash) return toGoal;
+        int states = n + 1;
+        int[] weight = new int[states * n];
+        Arrays.fill(weight, AstData.NO_TICKS);
+        for (int i = 0; branchBest != null && i + 2 < branchBest.length; i += 3) {
+            int s = state(branchBest[i]);
+            int t = positionOf.get(branchBest[i + 1]) - 1;
+            if (s >= 0 && t >= 0 && branchBest[i + 2] != AstData.NO_TICKS) weight[s * n + t] = branchBest[i + 2];
+        }
+        long[] d = new long[states];
+        for (int s = 0; s < states; s++) d[s] = goal[s] ? 0 : UNREACHABLE;
+        boolean changed = true;
+        for (int round = 0; changed && round < states; round++) {
+            changed = false;
+            for (int s = 0; s < states; s++) {
+                if (goal[s]) continue;
+                for (int t = 0; t < n; t++) {
+                    int w = weight[s * n + t];
+                    if (table[s * n + t] == IGNORE || w == AstData.NO_TICKS || d[t + 1] == UNREACHABLE) continue;
+                    if (w + d[t + 1] < d[s]) {
+                        d[s] = w + d[t + 1];
+                        changed = true;
+                    }
+                }
+            }
+        }
+        toGoal = d;
+        toGoalBranches = branchBest;
+        toGoalHash = hash;
+        return d;
+    }
+
+    private int state(int index) {
+        if (index == 0) return 0;
+        int p = positionOf.get(index) - 1;
+        return p < 0 ? -1 : p + 1;
+    }
+
+    private void sync(AstData.CourseFile c) {
+        if (c == course && c != null && c.segmentsRevision == revision) return;
+        course = c;
+        revision = c == null ? -1 : c.segmentsRevision;
+        toGoal = null;
+        compile(c);
+    }
+
+    private void compile(AstData.CourseFile c) {
+        compiles++;
+        List<Integer> sorted = c == null ? null : AstUtil.sortedNonStartIndices(c);
+        n = sorted == null ? 0 : sorted.size();
+        order = new int[n];
+        positionOf.clear();
+        for (int p = 0; p < n; p++) {
+            order[p] = sorted.get(p);
+            positionOf.add(order[p], p + 1);
+        }
+
+        int states = n + 1;
+        int[][] nextOf = new int[states][];
+        if (c != null && c.segments != null) {
+            for (AstData.Segment seg : c.segments) {
+                int s = seg == null ? -1 : state(seg.index);
+                if (s >= 0) nextOf[s] = seg.next;
+            }
+        }
+        table = new int[states * n];
+        goal = new boolean[states];
+        firstNext = new int[states];
+        Arrays.fill(table, IGNORE);
+        declared = false;
+        for (int s = 0; s < states; s++) {
+            int[] next = nextOf[s];
+            if (next == null) {
+                // classic rule: any later position
+                for (int t = s; t < n; t++) table[s * n + t] = t + 1;
+            } else {
+                declared = true;
+                for (int to : next) {
+                    int t = positionOf.get(to) - 1;
+                    if (t >= 0) table[s * n + t] = t + 1;
+                }
+            }
+            goal[s] = s > 0 && (next == null ? s == n : next.length == 0);
+            firstNext[s] = Integer.MAX_VALUE;
+            for (int t = 0; t < n; t++) {
+                if (table[s * n + t] != IGNORE) {
+                    firstNext[s] = order[t];
+                    break;
+                }
+            }
+        }
+    }
+}
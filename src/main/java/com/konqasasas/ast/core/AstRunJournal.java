@@ -0,0 +1,230 @@
+package com.konqasasas.ast.core;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.konqasasas.ast.AutoSplitTimerMod;
+import net.minecraft.client.Minecraft;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Write-ahead journal for the in-progress run.
+ *
+ * Every split appends one small record to config/autosplittimer/run.journal through a
+ * FileChannel that stays open, so a crash or a disconnect mid-run no longer loses the
+ * recorded splits. The journal only ever holds the current attempt: it is truncated when
+ * a new attempt starts.
+ *
+ * Record layout (big-endian): [type:1][payloadLen:2][payload]
+ *   START  attempt:int, startedAtMillis:long, course:UTF-8
+ *   SPLIT  attempt:int, segmentIndex:int, segmentTicks:int, splitTicks:int
+ *   END    attempt:int, kind:byte (FINISH/RESET)
+ * A torn record at the tail (crash mid-append) is ignored on replay.
+ *
+ * Replay ({@link #recoverSafe()}) runs at startup and when the world unloads mid-run; an
+ * attempt without END is appended to config/autosplittimer/interrupted.jsonl.
+ */
+public final class AstRunJournal {
+    private static final AstRunJournal INSTANCE = new AstRunJournal();
+
+    public static AstRunJournal get() {
+        return INSTANCE;
+    }
+
+    private static final byte REC_START = 1;
+    private static final byte REC_SPLIT = 2;
+    private static final byte REC_END = 3;
+
+    public static final byte END_FINISH = 1;
+    public static final byte END_RESET = 2;
+
+    private static final int HEADER = 3;
+
+    private final Gson gson = new Gson();
+    private final ByteBuffer buf = ByteBuffer.allocate(HEADER + 16);
+    private FileChannel channel = null;
+    private int openAttempt = -1;
+
+    // One-line chat notice for the next tick with a player (recovery happens without one).
+    private volatile String notice = null;
+
+    private AstRunJournal() {}
+
+    public synchronized void beginAttemptSafe(String course, int attempt) {
+        try {
+            FileChannel ch = channel();
+            ch.truncate(0);
+            byte[] name = (course == null ? "" : course).getBytes(StandardCharsets.UTF_8);
+            int len = Math.min(name.length, 1024);
+            ByteBuffer b = ByteBuffer.allocate(HEADER + 12 + len);
+            b.put(REC_START).putShort((short) (12 + len));
+            b.putInt(attempt).putLong(System.currentTimeMillis()).put(name, 0, len);
+            b.flip();
+            writeFully(ch, b);
+            openAttempt = attempt;
+        } catch (IOException ignored) {
+            openAttempt = -1;
+        }
+    }
+
+    public synchronized void splitSafe(int attempt, int segmentIndex, int segmentTicks, int splitTicks) {
+        if (openAttempt != attempt) return;
+        try {
+            buf.clear();
+            buf.put(REC_SPLIT).putShort((short) 16);
+            buf.putInt(attempt).putInt(segmentIndex).putInt(segmentTicks).putInt(splitTicks);
+            buf.flip();
+            writeFully(channel(), buf);
+        } catch (IOException ignored) {
+        }
+    }
+
+    public synchronized void endAttemptSafe(byte kind) {
+        if (openAttempt < 0) return;
+        try {
+            buf.clear();
+            buf.put(REC_END).putShort((short) 5);
+            buf.putInt(openAttempt).put(kind);
+            buf.flip();
+            writeFully(channel(), buf);
+        } catch (IOException ignored) {
+        }
+        openAttempt = -1;
+    }
+
+    /**
+     * Replay the journal; if its attempt never ended (crash, disconnect), archive it.
+     * Returns the number of archived attempts (0 or 1).
+     */
+    public synchronized int recoverSafe() {
+        try {
+            closeChannel();
+            File f = journalFile();
+            if (!f.exists() || f.length() == 0) return 0;
+
+            byte[] data = new byte[(int) Math.min(f.length(), 16L * 1024 * 1024)];
+            try (DataInputStream in = new DataInputStream(new FileInputStream(f))) {
+                in.readFully(data);
+            }
+            JsonObject open = replay(ByteBuffer.wrap(data));
+            int archived = 0;
+            if (open != null) {
+                archive(open);
+                archived = 1;
+                JsonArray splits = open.getAsJsonArray("splits");
+                notice = "Recovered interrupted attempt #" + open.get("attempt").getAsInt()
+                        + " on " + open.get("course").getAsString()
+                        + " (" + splits.size() + " splits) -> interrupted.jsonl";
+            }
+            // The attempt is either ended or archived now; start clean.
+            try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.WRITE)) {
+                ch.truncate(0);
+            }
+            return archived;
+        } catch (Exception ignored) {
+            return 0;
+        }
+    }
+
+    /** Returns (and clears) the pending recovery notice, if any. */
+    public String pollNotice() {
+        if (notice == null) return null;
+        synchronized (this) {
+            String n = notice;
+            notice = null;
+            return n;
+        }
+    }
+
+    private static JsonObject replay(ByteBuffer b) {
+        JsonObject open = null;
+        while (b.remaining() >= HEADER) {
+            byte type = b.get();
+            int len = b.getShort() & 0xFFFF;
+            if (b.remaining() < len) break; // torn tail
+            int end = b.position() + len;
+            switch (type) {
+                case REC_START: {
+                    if (len < 12) return open;
+                    int attempt = b.getInt();
+                    long startedAt = b.getLong();
+                    byte[] name = new byte[len - 12];
+                    b.get(name);
+                    open = new JsonObject();
+                    open.addProperty("course", new String(name, StandardCharsets.UTF_8));
+                    open.addProperty("attempt", attempt);
+                    open.addProperty("startedAt", startedAt);
+                    open.add("splits", new JsonArray());
+                    break;
+                }
+                case REC_SPLIT: {
+                    if (len < 16 || open == null) break;
+                    int attempt = b.getInt();
+                    if (attempt != open.get("attempt").getAsInt()) break;
+                    JsonObject s = new JsonObject();
+                    s.addProperty("index", b.getInt());
+                    s.addProperty("segmentTicks", b.getInt());
+                    s.addProperty("splitTicks", b.getInt());
+                    open.getAsJsonArray("splits").add(s);
+                    break;
+                }
+                case REC_END:
+                    open = null;
+                    break;
+                default:
+                    return open; // garbage: stop at the last good record
+            }
+            b.position(end);
+        }
+        return open;
+    }
+
+    private void archive(JsonObject attempt) throws IOException {
+        File out = new File(baseDir(), "interrupted.jsonl");
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(out, true), StandardCharsets.UTF_8)) {
+            w.write(gson.toJson(attempt));
+            w.write('\n');
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(journalFile().toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+        openAttempt = -1;
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) ch.write(b);
+    }
+
+    private static File journalFile() {
+        return new File(baseDir(), "run.journal");
+    }
+
+    private static File baseDir() {
+        File base = new File(Minecraft.getMinecraft().mcDataDir, "config" + File.separator + AutoSplitTimerMod.MODID);
+        if (!base.exists()) {
+            //noinspection ResultOfMethodCallIgnored
+            base.mkdirs();
+        }
+        return base;
+    }
+}
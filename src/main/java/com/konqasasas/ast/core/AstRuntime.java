@@ -21,14 +21,23 @@ public final class AstRuntime {
     private State state = State.IDLE;
     private int elapsedTicks = 0;
     private int nextIndex = Integer.MAX_VALUE;
+    // last segment counted this run (0 = Start); the route state (see AstRouteTable)
+    private int routeLast = 0;
     private int lastSplitCumulative = 0;
     private Integer lastCompletedSegmentTicks = null;
+    // live ahead(-)/behind(+) vs the PB ghost at the current position; NO_TICKS = unknown
+    private int ghostDeltaTicks = AstData.NO_TICKS;
+    // attempt number of the current run (stats.attemptCount at start); journal key
+    private int currentAttempt = 0;
+    // course of the running attempt (the active course may change before a reset)
+    private AstData.CourseFile runCourse = null;
 
     // per segment inside tracking (index -> insidePrev)
     private final Map<Integer, Boolean> insidePrev = new HashMap<>();
 
     // Start latch: while the player remains inside Start, do not re-trigger.
     private boolean startLatched = false;
+    private String autoFailedCourse = null;
 
     // segments already triggered this run (excluding start)
     private final Set<Integer> usedSegments = new HashSet<>();
@@ -36,14 +45,28 @@ public final class AstRuntime {
     // per run result storage by segment index (excluding start, ordered)
     private final Map<Integer, Integer> runSegmentTicks = new HashMap<>(); // null = skipped (absence)
     private final Map<Integer, Integer> runSplitCumulative = new HashMap<>();
+    // box each split was counted after (routeLast at the time; 0 = Start): the real visit order
+    private final Map<Integer, Integer> runSegmentFrom = new HashMap<>();
     private final Set<Integer> goldSegmentsThisRun = new HashSet<>();
     private final Set<Integer> goldSplitsThisRun = new HashSet<>();
+    // declared routes: segments reached from another box than in the PB (segment times not comparable)
+    private final Set<Integer> offBranchThisRun = new HashSet<>();
+
+    // Proximity gate (see tick()): where the last full scan ran and its clearance to the nearest box.
+    private AstData.CourseFile gateCourse = null;
+    private int gateRevision = -1;
+    private double gateX, gateY, gateZ;
+    private double gateClearanceSq = 0; // 0 = no gate (inside or touching a box)
 
     // Snapshot baselines at attempt start so Δ and gold are stable within the run
-    private List<Integer> baselinePbSeg = null;
-    private List<Integer> baselinePbSplit = null;
-    private List<Integer> baselineBestSeg = null;
-    private List<Integer> baselineBestSplit = null;
+    // Baselines are fresh arrays per attempt and never modified afterwards, so getters can
+    // hand them out without copying.
+    private int[] baselinePbSeg = null;
+    private int[] baselinePbSplit = null;
+    private int[] baselinePbFrom = null;
+    private int[] baselineBestSeg = null;
+    private int[] baselineBestSplit = null;
+    private int[] baselineBranchBest = null;
 
 
     private AstRuntime() {}
@@ -57,11 +80,15 @@ public final class AstRuntime {
     }
     public synchronized Integer getLastCompletedSegmentTicks() { return lastCompletedSegmentTicks; }
     public synchronized int getNextIndex() { return nextIndex; }
+    public synchronized int getRouteLast() { return routeLast; }
     public synchronized int getLastSplitCumulative() { return lastSplitCumulative; }
+    public synchronized int getGhostDeltaTicks() { return ghostDeltaTicks; }
     public synchronized Set<Integer> getGoldSegmentsThisRun() { return new HashSet<>(goldSegmentsThisRun); }
     public synchronized Set<Integer> getGoldSplitsThisRun() { return new HashSet<>(goldSplitsThisRun); }
+    public synchronized Set<Integer> getOffBranchThisRun() { return new HashSet<>(offBranchThisRun); }
     public synchronized Map<Integer, Integer> getRunSegmentTicks() { return new HashMap<>(runSegmentTicks); }
     public synchronized Map<Integer, Integer> getRunSplitCumulative() { return new HashMap<>(runSplitCumulative); }
+    public synchronized Map<Integer, Integer> getRunSegmentFrom() { return new HashMap<>(runSegmentFrom); }
 
     /** Split history lines for HUD: list of (index,name,segmentTicks,gold). */
     public synchronized List<AstHudLine> buildSplitHistory(int maxCount) {
@@ -70,7 +97,6 @@ public final class AstRuntime {
         List<Integer> order = AstUtil.sortedNonStartIndices(course);
         List<AstHudLine> out = new ArrayList<>();
         for (int idx : order) {
-            if (idx >= nextIndex) break; // not reached (or skipped?)
             Integer segTicks = runSegmentTicks.get(idx);
             // show only triggered segments (skip doesn't have ticks and wasn't triggered)
             if (segTicks == null) continue;
@@ -99,6 +125,8 @@ public final class AstRuntime {
     }
 
     public synchronized void forceResetToIdle() {
+        archiveUnfinishedAttempt();
+        AstRunJournal.get().endAttemptSafe(AstRunJournal.END_RESET);
         resetRuntimeOnly();
         // If the player is standing on Start and issues /ast run reset, we must NOT
         // immediately auto-start again. Keep it latched until they leave Start.
@@ -109,29 +137,79 @@ public final class AstRuntime {
     @SubscribeEvent
     public void onClientTick(TickEvent.ClientTickEvent e) {
         if (e.phase != TickEvent.Phase.END) return;
+        long t0 = AstPerf.begin();
+        try {
+            tick();
+        } finally {
+            AstPerf.end(AstPerf.Probe.CLIENT_TICK, t0);
+        }
+    }
+
+    private void tick() {
         Minecraft mc = Minecraft.getMinecraft();
         if (mc.world == null || mc.player == null) {
             // world unloaded
+            if (state == State.RUNNING) {
+                // Keep the splits recorded so far: replay the journal into the archive,
+                // and store the attempt in the history like a reset.
+                AstRunJournal.get().recoverSafe();
+                archiveUnfinishedAttempt();
+            }
+            AstCourseManager.get().flushManifestSafe();
+            AstHeatmap.get().saveSafe();
+            AstAutoSegments.get().stopRecording();
+            AstRaceTracker.get().clear();
+            AstTraceStore.get().drainSafe();
+            AstFileIo.flushPending();
             resetRuntimeOnly();
             startLatched = false;
             state = State.IDLE;
             return;
         }
+        String notice = AstRunJournal.get().pollNotice();
+        if (notice != null) AstCourseManager.chat(notice);
         if (mc.isGamePaused()) return;
+        AstAutoSegments.get().tick(mc.player.posX, mc.player.posY, mc.player.posZ);
+        autoActivate(mc.player.posX, mc.player.posY, mc.player.posZ);
 
         AstData.CourseFile course = AstCourseManager.get().getActiveCourse();
         if (course == null) return;
         if (course.segments == null || course.segments.isEmpty()) return;
 
+        double px = mc.player.posX, py = mc.player.posY, pz = mc.player.posZ;
+        if (state == State.RUNNING) {
+            AstGhostTrace.get().sample(px, py, pz);
+            AstHeatmap.get().tick(course, px, py, pz, mc.player.getHealth() <= 0.0f);
+            // this tick's position belongs to the inclusive time (see getElapsedTicks())
+            ghostDeltaTicks = AstGhostIndex.get().deltaTicks(course, px, py, pz, elapsedTicks + 1);
+        }
+        if (AstRaceTracker.isEnabled()) AstRaceTracker.get().tick(mc.world.playerEntities, course);
+
+        // Proximity gate: the last full scan measured the clearance (distance to the nearest
+        // trigger box). While the player is still closer than that to where it was measured,
+        // they cannot be inside any box, so nothing can be entered this tick.
+        if (gateCourse == course && gateRevision == course.segmentsRevision && gateClearanceSq > 0) {
+            double dx = px - gateX, dy = py - gateY, dz = pz - gateZ;
+            if (dx * dx + dy * dy + dz * dz < gateClearanceSq) {
+                startLatched = false;
+                if (state == State.RUNNING) {
+                    elapsedTicks++;
+                }
+                return;
+            }
+        }
+
         // Gather entered indices (OUT->IN)
-        Vec3d feet = new Vec3d(mc.player.posX, mc.player.posY, mc.player.posZ);
+        Vec3d feet = new Vec3d(px, py, pz);
         List<Integer> entered = new ArrayList<>();
+        double clearanceSq = Double.MAX_VALUE;
 
         // Start latch works off "inside now" instead of insidePrev (because reset clears insidePrev).
         boolean startInsideNow = false;
         AstData.Segment startSeg = AstUtil.findSegment(course, 0);
         if (startSeg != null && startSeg.aabb != null) {
             startInsideNow = AstUtil.contains(startSeg.aabb.toAabb(), feet);
+            clearanceSq = AstUtil.distanceSqToBox(startSeg.aabb, px, py, pz);
         }
         if (!startInsideNow) {
             startLatched = false;
@@ -151,37 +229,38 @@ public final class AstRuntime {
                 entered.add(idx);
             }
             insidePrev.put(idx, insideNow);
+            clearanceSq = Math.min(clearanceSq, AstUtil.distanceSqToBox(seg.aabb, px, py, pz));
         }
 
+        gateCourse = course;
+        gateRevision = course.segmentsRevision;
+        gateX = px;
+        gateY = py;
+        gateZ = pz;
+        gateClearanceSq = (clearanceSq == Double.MAX_VALUE) ? 0 : clearanceSq;
+
         // Start: fire only on first entry until player exits Start.
         if (startInsideNow && !startLatched) {
             startLatched = true;
             startNewAttempt(course);
+            AstGhostTrace.get().begin(px, py, pz);
             return;
         }
 
-        if (!entered.isEmpty()) {
-            int hit = Collections.max(entered); // back priority
-            if (state == State.RUNNING) {
-                // Determine the next indices list to support skipping.
-                List<Integer> order = AstUtil.sortedNonStartIndices(course);
-                if (order.isEmpty()) {
-                    // no non-start segments: treat as nothing
-                } else {
-                    if (hit >= nextIndex) {
-                        // record this split
-                        recordSplit(course, hit);
-
-                        // advance nextIndex to the next higher existing index
-                        nextIndex = AstUtil.nextExistingIndex(order, hit);
-
-                        // finish check: if hit is the last segment index
-                        int lastIdx = order.get(order.size() - 1);
-                        if (hit == lastIdx) {
-                            finishAndUpdate(course);
-                            state = State.FINISHED;
-                        }
-                    }
+        if (!entered.isEmpty() && state == State.RUNNING) {
+            // back priority: the highest entered index the route accepts from the last split
+            AstRouteTable route = AstRouteTable.get();
+            int hit = Integer.MIN_VALUE;
+            for (int idx : entered) {
+                if (idx > hit && route.accepts(course, routeLast, idx)) hit = idx;
+            }
+            if (hit != Integer.MIN_VALUE) {
+                recordSplit(course, hit);
+                routeLast = hit;
+                nextIndex = route.nextIndex(course, hit);
+                if (route.isGoal(course, hit)) {
+                    finishAndUpdate(course);
+                    state = State.FINISHED;
                 }
             }
         }
@@ -191,10 +270,41 @@ public final class AstRuntime {
         }
     }
 
+    /**
+     * Standing in another installed course's Start makes it the active course; the Start
+     * check below then begins the attempt on this same tick. Only from IDLE or FINISHED:
+     * routes often pass other courses' Starts, so a running attempt is never abandoned here.
+     */
+    private void autoActivate(double px, double py, double pz) {
+        if (state == State.RUNNING) return;
+        String hit = AstStartIndex.get().courseAt(px, py, pz);
+        AstCourseManager cm = AstCourseManager.get();
+        if (hit == null) {
+            autoFailedCourse = null;
+            return;
+        }
+        if (hit.equals(autoFailedCourse) || cm.isActiveCourse(hit)) return;
+        if (!cm.loadExistingCourseAsActive(hit)) {
+            autoFailedCourse = hit; // unreadable: don't retry every tick while standing here
+            return;
+        }
+        resetRuntimeOnly();
+        startLatched = false;
+        state = State.IDLE;
+        AstCourseManager.chat("Course: " + hit);
+    }
+
     private void startNewAttempt(AstData.CourseFile course) {
-        // increment attempt count (global)
-        course.stats.attemptCount += 1;
-        AstCourseManager.get().saveActiveCourseSafe();
+        // restarting from Start abandons the running attempt
+        archiveUnfinishedAttempt();
+        // increment attempt count (global); continue after the stored history if the
+        // course's count fell behind it (file restored or edited)
+        course.stats.attemptCount = Math.max(course.stats.attemptCount,
+                AstAttemptStore.get().lastAttemptSafe(course.courseName)) + 1;
+        currentAttempt = course.stats.attemptCount;
+        runCourse = course;
+        AstRunJournal.get().beginAttemptSafe(course.courseName, currentAttempt);
+        AstCourseManager.get().saveActiveCourseSafe(AstCourseManager.CHANGED_COURSE);
 
         // Snapshot baselines BEFORE any stats are modified by this attempt.
         // These are used for pbseg/pbsplit/bestseg/bestsplit deltas and for gold previews.
@@ -209,12 +319,15 @@ public final class AstRuntime {
         usedSegments.clear();
         runSegmentTicks.clear();
         runSplitCumulative.clear();
+        runSegmentFrom.clear();
         goldSegmentsThisRun.clear();
         goldSplitsThisRun.clear();
+        offBranchThisRun.clear();
 
+        routeLast = 0;
+        nextIndex = AstRouteTable.get().nextIndex(course, 0);
 
-        List<Integer> order = AstUtil.sortedNonStartIndices(course);
-        nextIndex = order.isEmpty() ? Integer.MAX_VALUE : order.get(0);
+        AstJfr.attemptStart(course.courseName, course.stats.attemptCount);
     }
 
     private void recordSplit(AstData.CourseFile course, int hitIndex) {
@@ -229,21 +342,32 @@ public final class AstRuntime {
 
         runSegmentTicks.put(hitIndex, segTicks);
         runSplitCumulative.put(hitIndex, cumulative);
+        runSegmentFrom.put(hitIndex, routeLast);
+        AstRunJournal.get().splitSafe(currentAttempt, hitIndex, segTicks, cumulative);
+        AstJfr.split(course.courseName, hitIndex, segTicks, cumulative);
 
         // Gold preview: compare vs stored bests, but DO NOT write to stats unless the run finishes.
         try {
             List<Integer> order = AstUtil.sortedNonStartIndices(course);
             int pos = order.indexOf(hitIndex);
             if (pos >= 0) {
-                java.util.List<Integer> bestSegList = (baselineBestSeg != null) ? baselineBestSeg : course.stats.bestSegmentsTicks;
-                Integer bestSeg = (bestSegList != null && pos < bestSegList.size()) ? bestSegList.get(pos) : null;
-                if (bestSeg != null && segTicks < bestSeg) {
+                int bestSeg;
+                if (AstRouteTable.get().isDeclared(course)) {
+                    // only the branch actually run compares: (box counted before, this box)
+                    if (!sameBranchAsPb(pos, routeLast)) offBranchThisRun.add(hitIndex);
+                    bestSeg = AstRouteTable.branchBest(
+                            (baselineBranchBest != null) ? baselineBranchBest : course.stats.branchBestTicks, routeLast, hitIndex);
+                } else {
+                    bestSeg = AstUtil.tickAt((baselineBestSeg != null) ? baselineBestSeg : course.stats.bestSegmentsTicks, pos);
+                }
+                if (bestSeg != AstData.NO_TICKS && segTicks < bestSeg) {
                     goldSegmentsThisRun.add(hitIndex);
+                    AstJfr.gold(course.courseName, hitIndex, "segment", segTicks);
                 }
-                java.util.List<Integer> bestSplitList = (baselineBestSplit != null) ? baselineBestSplit : course.stats.bestSplitTicks;
-                Integer bestSplit = (bestSplitList != null && pos < bestSplitList.size()) ? bestSplitList.get(pos) : null;
-                if (bestSplit != null && cumulative < bestSplit) {
+                int bestSplit = AstUtil.tickAt((baselineBestSplit != null) ? baselineBestSplit : course.stats.bestSplitTicks, pos);
+                if (bestSplit != AstData.NO_TICKS && cumulative < bestSplit) {
                     goldSplitsThisRun.add(hitIndex);
+                    AstJfr.gold(course.courseName, hitIndex, "split", cumulative);
                 }
             }
         } catch (Exception ignored) {
@@ -260,44 +384,100 @@ public final class AstRuntime {
         // freeze elapsedTicks to the finished total (so getters stay stable in FINISHED)
         elapsedTicks = total;
 
-        // segmentTicks list aligned to order; null if segment was not reached (skipped)
-        List<Integer> segTicksList = new ArrayList<>();
-        List<Integer> splitCumList = new ArrayList<>();
-        for (int idx : order) {
-            segTicksList.add(runSegmentTicks.get(idx));
-            splitCumList.add(runSplitCumulative.get(idx));
-        }
+        // segment ticks aligned to order; NO_TICKS if segment was not reached (skipped)
+        int[] segTicksList = runTicksByOrder(order, runSegmentTicks);
+        int[] splitCumList = runTicksByOrder(order, runSplitCumulative);
+        int[] segFromList = runTicksByOrder(order, runSegmentFrom);
+        boolean declared = AstRouteTable.get().isDeclared(course);
 
         // PB update
         AstData.PbRecord pb = course.stats.pb;
-        if (pb.totalTicks == null || total < pb.totalTicks) {
+        boolean newPb = pb.totalTicks == null || total < pb.totalTicks;
+        if (newPb) {
             pb.totalTicks = total;
             pb.segmentTicks = segTicksList;
+            pb.segmentFrom = segFromList;
+        }
+        AstJfr.finish(course.courseName, course.stats.attemptCount, total, newPb);
+        AstGhostTrace.get().finishSafe(course, currentAttempt, total, newPb);
+        AstHeatmap.get().endAttemptSafe();
+
+        // Stats arrays may lag a segment edit until the next save normalizes them.
+        if (course.stats.bestSegmentsTicks == null || course.stats.bestSegmentsTicks.length != order.size()) {
+            course.stats.bestSegmentsTicks = AstUtil.resizeTicks(course.stats.bestSegmentsTicks, order.size());
+        }
+        if (course.stats.bestSplitTicks == null || course.stats.bestSplitTicks.length != order.size()) {
+            course.stats.bestSplitTicks = AstUtil.resizeTicks(course.stats.bestSplitTicks, order.size());
         }
 
-        // BestSegments update (and gold)
+        // BestSegments update (and gold): best ever at each position, whatever the branch
+        int[] bestSegs = course.stats.bestSegmentsTicks;
         for (int i = 0; i < order.size(); i++) {
-            Integer segTicks = segTicksList.get(i);
-            if (segTicks == null) continue; // skipped
-            Integer best = course.stats.bestSegmentsTicks.get(i);
-            if (best == null || segTicks < best) {
-                course.stats.bestSegmentsTicks.set(i, segTicks);
-                goldSegmentsThisRun.add(order.get(i));
+            int segTicks = segTicksList[i];
+            if (segTicks == AstData.NO_TICKS) continue; // skipped
+            if (bestSegs[i] == AstData.NO_TICKS || segTicks < bestSegs[i]) {
+                bestSegs[i] = segTicks;
+                AstBestSegmentIndex.get().onBestSegment(course, i, segTicks);
+                if (!declared) goldSegmentsThisRun.add(order.get(i));
+            }
+        }
+
+        // Declared routes: gold is per branch (from, to), keyed by the real visit order
+        if (declared) {
+            for (int i = 0; i < order.size(); i++) {
+                int segTicks = segTicksList[i];
+                if (segTicks == AstData.NO_TICKS) continue;
+                int from = segFromList[i];
+                int best = AstRouteTable.branchBest(course.stats.branchBestTicks, from, order.get(i));
+                if (best == AstData.NO_TICKS || segTicks < best) {
+                    course.stats.branchBestTicks = AstRouteTable.improveBranchBest(course.stats.branchBestTicks, from, order.get(i), segTicks);
+                    goldSegmentsThisRun.add(order.get(i));
+                }
             }
         }
 
         // BestSplit update
+        int[] bestSplits = course.stats.bestSplitTicks;
         for (int i = 0; i < order.size(); i++) {
-            Integer cum = splitCumList.get(i);
-            if (cum == null) continue;
-            Integer best = course.stats.bestSplitTicks.get(i);
-            if (best == null || cum < best) {
-                course.stats.bestSplitTicks.set(i, cum);
+            int cum = splitCumList[i];
+            if (cum == AstData.NO_TICKS) continue;
+            if (bestSplits[i] == AstData.NO_TICKS || cum < bestSplits[i]) {
+                bestSplits[i] = cum;
                 goldSplitsThisRun.add(order.get(i));
             }
         }
 
-        AstCourseManager.get().saveActiveCourseSafe();
+        storeAttempt(course, total, segTicksList, segFromList);
+        AstCourseManager.get().saveActiveCourseSafe(AstCourseManager.CHANGED_COURSE);
+        AstRunJournal.get().endAttemptSafe(AstRunJournal.END_FINISH);
+    }
+
+    /** Keep a reset/abandoned attempt in the history store (total = NONE). */
+    private void archiveUnfinishedAttempt() {
+        if (state != State.RUNNING || runCourse == null) return;
+        List<Integer> order = AstUtil.sortedNonStartIndices(runCourse);
+        storeAttempt(runCourse, AstAttemptStore.NONE,
+                runTicksByOrder(order, runSegmentTicks), runTicksByOrder(order, runSegmentFrom));
+        AstGhostTrace.get().abandonSafe(runCourse, currentAttempt);
+        AstHeatmap.get().resetSafe(runCourse);
+    }
+
+    private void storeAttempt(AstData.CourseFile course, int total, int[] segTicks, int[] segFrom) {
+        int stored = AstAttemptStore.get().appendSafe(course, currentAttempt, total, segTicks, segFrom);
+        if (stored == 0) {
+            AstCourseManager.chat("Attempt #" + currentAttempt + " could not be saved to the history.");
+        } else if (stored != currentAttempt) {
+            AstCourseManager.chat("Attempt #" + currentAttempt + " was already in the history; saved as #" + stored + ".");
+        }
+    }
+
+    private static int[] runTicksByOrder(List<Integer> order, Map<Integer, Integer> byIndex) {
+        int[] out = new int[order.size()];
+        for (int i = 0; i < out.length; i++) {
+            Integer t = byIndex.get(order.get(i));
+            out[i] = t == null ? AstData.NO_TICKS : t;
+        }
+        return out;
     }
 
 
@@ -307,49 +487,78 @@ public final class AstRuntime {
             // PB seg / split
             if (course != null && course.stats != null) {
                 if (course.stats.pb != null && course.stats.pb.segmentTicks != null) {
-                    baselinePbSeg = new ArrayList<>(course.stats.pb.segmentTicks);
-                    // Build PB split cumulative (same length)
-                    baselinePbSplit = new ArrayList<>(baselinePbSeg.size());
-                    int sCum = 0;
-                    for (Integer t : baselinePbSeg) {
-                        if (t == null) {
-                            baselinePbSplit.add(null);
-                        } else {
-                            sCum += t;
-                            baselinePbSplit.add(sCum);
-                        }
-                    }
+                    baselinePbSeg = course.stats.pb.segmentTicks.clone();
+                    baselinePbSplit = cumulativeTicks(baselinePbSeg);
+                    baselinePbFrom = course.stats.pb.segmentFrom == null ? null : course.stats.pb.segmentFrom.clone();
                 }
                 if (course.stats.bestSegmentsTicks != null) {
-                    baselineBestSeg = new ArrayList<>(course.stats.bestSegmentsTicks);
+                    baselineBestSeg = course.stats.bestSegmentsTicks.clone();
                 }
                 if (course.stats.bestSplitTicks != null) {
-                    baselineBestSplit = new ArrayList<>(course.stats.bestSplitTicks);
+                    baselineBestSplit = course.stats.bestSplitTicks.clone();
                 }
+                baselineBranchBest = course.stats.branchBestTicks == null ? null : course.stats.branchBestTicks.clone();
             }
         } catch (Exception ignored) {
             // If anything fails, we fall back to live stats.
             baselinePbSeg = null;
             baselinePbSplit = null;
+            baselinePbFrom = null;
             baselineBestSeg = null;
             baselineBestSplit = null;
+            baselineBranchBest = null;
+        }
+    }
+
+    /**
+     * Whether the segment at {@code pos} was reached from the same box as in the PB. True when
+     * the PB has no time there; false when the PB predates visit-order tracking (not comparable).
+     */
+    private boolean sameBranchAsPb(int pos, int from) {
+        if (baselinePbSeg == null || AstUtil.tickAt(baselinePbSeg, pos) == AstData.NO_TICKS) return true;
+        return baselinePbFrom != null && AstUtil.tickAt(baselinePbFrom, pos) == from;
+    }
+
+    /** Split times (cumulative) from segment times; NO_TICKS entries stay NO_TICKS. */
+    public static int[] cumulativeTicks(int[] segTicks) {
+        if (segTicks == null) return null;
+        int[] out = new int[segTicks.length];
+        int sCum = 0;
+        for (int i = 0; i < segTicks.length; i++) {
+            if (segTicks[i] == AstData.NO_TICKS) {
+                out[i] = AstData.NO_TICKS;
+            } else {
+                sCum += segTicks[i];
+                out[i] = sCum;
+            }
         }
+        return out;
+    }
+
+    // Baseline getters return the shared snapshot arrays: read-only for callers.
+
+    public synchronized int[] getBaselinePbSegOrNull() {
+        return baselinePbSeg;
+    }
+
+    public synchronized int[] getBaselinePbSplitOrNull() {
+        return baselinePbSplit;
     }
 
-    public synchronized java.util.List<Integer> getBaselinePbSegOrNull() {
-        return baselinePbSeg == null ? null : new ArrayList<>(baselinePbSeg);
+    public synchronized int[] getBaselinePbFromOrNull() {
+        return baselinePbFrom;
     }
 
-    public synchronized java.util.List<Integer> getBaselinePbSplitOrNull() {
-        return baselinePbSplit == null ? null : new ArrayList<>(baselinePbSplit);
+    public synchronized int[] getBaselineBranchBestOrNull() {
+        return baselineBranchBest;
     }
 
-    public synchronized java.util.List<Integer> getBaselineBestSegOrNull() {
-        return baselineBestSeg == null ? null : new ArrayList<>(baselineBestSeg);
+    public synchronized int[] getBaselineBestSegOrNull() {
+        return baselineBestSeg;
     }
 
-    public synchronized java.util.List<Integer> getBaselineBestSplitOrNull() {
-        return baselineBestSplit == null ? null : new ArrayList<>(baselineBestSplit);
+    public synchronized int[] getBaselineBestSplitOrNull() {
+        return baselineBestSplit;
     }
 
     private void resetRuntimeOnly() {
@@ -357,6 +566,9 @@ public final class AstRuntime {
     }
 
     private void resetRuntimeOnly(boolean clearBaselines) {
+        AstGhostTrace.get().stop();
+        AstGhostIndex.get().resetProgress();
+        ghostDeltaTicks = AstData.NO_TICKS;
         elapsedTicks = 0;
         nextIndex = Integer.MAX_VALUE;
         lastSplitCumulative = 0;
@@ -368,13 +580,18 @@ public final class AstRuntime {
         usedSegments.clear();
         runSegmentTicks.clear();
         runSplitCumulative.clear();
+        runSegmentFrom.clear();
         goldSegmentsThisRun.clear();
         goldSplitsThisRun.clear();
+        offBranchThisRun.clear();
+        routeLast = 0;
         if (clearBaselines) {
             baselinePbSeg = null;
             baselinePbSplit = null;
+            baselinePbFrom = null;
             baselineBestSeg = null;
             baselineBestSplit = null;
+            baselineBranchBest = null;
         }
 
     }
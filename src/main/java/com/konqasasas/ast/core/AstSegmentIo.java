@@ -0,0 +1,201 @@
+package com.konqasasas.ast.core;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Segment lists as CSV or JSON files, for bulk editing and for courses converted from other
+ * tools.
+ *
+ * CSV: one segment per line, {@code index,name,minX,minY,minZ,maxX,maxY,maxZ[,next]}; an optional
+ * header line, blank lines and lines starting with '#' are skipped; names may be quoted
+ * ("" for a quote). Height is maxY - minY. The optional route column lists the next indices
+ * separated by ';' ("1;2"), "goal" for an empty list; empty or missing = any.
+ *
+ * JSON: an array of segments as stored in course files, or a whole course file (its
+ * "segments" are used).
+ */
+public final class AstSegmentIo {
+    private AstSegmentIo() {}
+
+    public static final String CSV_HEADER = "index,name,minX,minY,minZ,maxX,maxY,maxZ,next";
+
+    public static boolean isCsv(File f) {
+        return f.getName().toLowerCase(Locale.ROOT).endsWith(".csv");
+    }
+
+    public static void write(File f, List<AstData.Segment> segments) throws IOException {
+        if (isCsv(f)) {
+            AstFileIo.writeAtomic(f, os -> {
+                Writer w = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+                w.write(CSV_HEADER);
+                w.write('\n');
+                for (AstData.Segment s : segments) {
+                    if (s == null || s.aabb == null) continue;
+                    w.write(s.index + "," + csvQuote(s.name)
+                            + "," + s.aabb.minX + "," + s.aabb.minY + "," + s.aabb.minZ
+                            + "," + s.aabb.maxX + "," + s.aabb.maxY + "," + s.aabb.maxZ
+                            + "," + csvNext(s.next) + "\n");
+                }
+                w.flush();
+            });
+            return;
+        }
+        Gson gson = AstJsonAdapters.create(true);
+        AstFileIo.writeAtomic(f, os -> {
+            Writer w = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+            gson.toJson(segments.toArray(new AstData.Segment[0]), AstData.Segment[].class, w);
+            w.flush();
+        });
+    }
+
+    /**
+     * Read and validate a segment file. Throws with a message naming the offending line (CSV)
+     * or entry (JSON); nothing is returned for a partially valid file.
+     */
+    public static List<AstData.Segment> read(File f) throws IOException {
+        List<AstData.Segment> out = isCsv(f) ? readCsv(f) : readJson(f);
+        Set<Integer> seen = new HashSet<>();
+        for (AstData.Segment s : out) {
+            if (!seen.add(s.index)) throw new IOException("duplicate index " + s.index);
+        }
+        return out;
+    }
+
+    private static List<AstData.Segment> readCsv(File f) throws IOException {
+        List<AstData.Segment> out = new ArrayList<>();
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNo = 0;
+            while ((line = r.readLine()) != null) {
+                lineNo++;
+                String t = line.trim();
+                if (t.isEmpty() || t.startsWith("#")) continue;
+                if (lineNo == 1) {
+                    t = t.replace("\uFEFF", "");
+                    if (t.toLowerCase(Locale.ROOT).startsWith("index")) continue;
+                }
+                List<String> cols = csvSplit(t);
+                if (cols.size() != 8 && cols.size() != 9) {
+                    throw new IOException("line " + lineNo + ": expected 8 or 9 columns, got " + cols.size());
+                }
+                try {
+                    double[] v = new double[6];
+                    for (int i = 0; i < 6; i++) v[i] = Double.parseDouble(cols.get(i + 2).trim());
+                    AstData.Segment s = segment(Integer.parseInt(cols.get(0).trim()), cols.get(1), v);
+                    if (cols.size() == 9) s.next = parseNext(cols.get(8).trim());
+                    out.add(s);
+                } catch (NumberFormatException e) {
+                    throw new IOException("line " + lineNo + ": invalid number");
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("line " + lineNo + ": " + e.getMessage());
+                }
+            }
+        }
+        return out;
+    }
+
+    private static List<AstData.Segment> readJson(File f) throws IOException {
+        JsonElement root;
+        try (Reader r = new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8)) {
+            root = new JsonParser().parse(r);
+        } catch (JsonParseException e) {
+            throw new IOException("invalid JSON: " + e.getMessage());
+        }
+        if (root != null && root.isJsonObject() && root.getAsJsonObject().has("segments")) {
+            root = root.getAsJsonObject().get("segments");
+        }
+        if (root == null || !root.isJsonArray()) throw new IOException("expected a JSON array of segments");
+        Gson gson = AstJsonAdapters.create(false);
+        JsonArray arr = root.getAsJsonArray();
+        List<AstData.Segment> out = new ArrayList<>(arr.size());
+        for (int i = 0; i < arr.size(); i++) {
+            try {
+                AstData.Segment s = gson.fromJson(arr.get(i), AstData.Segment.class);
+                if (s == null || s.aabb == null) throw new IllegalArgumentException("missing aabb");
+                AstData.AabbDto b = s.aabb;
+                AstData.Segment seg = segment(s.index, s.name, new double[]{b.minX, b.minY, b.minZ, b.maxX, b.maxY, b.maxZ});
+                seg.next = s.next;
+                out.add(seg);
+            } catch (JsonParseException | IllegalArgumentException | IllegalStateException e) {
+                throw new IOException("entry " + i + ": " + e.getMessage());
+            }
+        }
+        return out;
+    }
+
+    /** Segment from explicit corners (any order); height follows the box. */
+    private static AstData.Segment segment(int index, String name, double[] v) {
+        for (double d : v) {
+            if (Double.isNaN(d) || Double.isInfinite(d)) throw new IllegalArgumentException("coordinate is not finite");
+        }
+        AstData.Segment s = new AstData.Segment();
+        s.index = index;
+        s.name = name == null ? "" : name;
+        s.aabb = new AstData.AabbDto(Math.min(v[0], v[3]), Math.min(v[1], v[4]), Math.min(v[2], v[5]),
+                Math.max(v[0], v[3]), Math.max(v[1], v[4]), Math.max(v[2], v[5]));
+        s.height = Math.max(1e-5, s.aabb.maxY - s.aabb.minY);
+        return s;
+    }
+
+    private static String csvNext(int[] next) {
+        if (next == null) return "";
+        if (next.length == 0) return "goal";
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < next.length; i++) {
+            if (i > 0) b.append(';');
+            b.append(next[i]);
+        }
+        return b.toString();
+    }
+
+    private static int[] parseNext(String col) {
+        if (col.isEmpty()) return null;
+        if (col.equalsIgnoreCase("goal")) return new int[0];
+        String[] parts = col.split(";");
+        int[] next = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) next[i] = Integer.parseInt(parts[i].trim());
+        return next;
+    }
+
+    private static String csvQuote(String s) {
+        if (s == null) return "";
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.trim().equals(s)) return s;
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+
+    private static List<String> csvSplit(String line) {
+        List<String> out = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (quoted) {
+                if (ch == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    cur.append('"');
+                    i++;
+                } else if (ch == '"') {
+                    quoted = false;
+                } else {
+                    cur.append(ch);
+                }
+            } else if (ch == '"') {
+                quoted = true;
+            } else if (ch == ',') {
+                out.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(ch);
+            }
+        }
+        out.add(cur.toString());
+        return out;
+    }
+}
@@ -0,0 +1,146 @@
+package com.konqasasas.ast.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Start boxes of every installed course (from the manifest) in a uniform XZ grid of
+ * {@link #CELL}-block columns, so "which course's Start is the player standing in?" is one
+ * hash lookup plus the few boxes in that column, however many courses there are.
+ *
+ * Rebuilt when the manifest changes. Boxes spanning more than {@link #MAX_CELLS_PER_BOX}
+ * columns are kept in a short list that is checked every time instead.
+ */
+public final class AstStartIndex {
+    private static final AstStartIndex INSTANCE = new AstStartIndex();
+
+    public static AstStartIndex get() {
+        return INSTANCE;
+    }
+
+    private static final double CELL = 16.0;
+    private static final int MAX_CELLS_PER_BOX = 64;
+
+    private static volatile boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("autosplittimer.autoCourse"));
+
+    private int builtRevision = -1;
+    private String[] names = new String[0];
+    private double[] boxes = new double[0];        // minX,minY,minZ,maxX,maxY,maxZ per course
+    private final AstLongIntMap cellOf = new AstLongIntMap(); // cell key -> cell id + 1
+    private int[] cellStart = new int[1];          // cell c -> members[cellStart[c] .. cellStart[c+1])
+    private int[] members = new int[0];
+    private int[] large = new int[0];
+
+    private AstStartIndex() {}
+
+    public static void setEnabled(boolean v) {
+        ENABLED = v;
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Name of a course whose Start contains the position (feet), or null. With
+     * overlapping Starts the smallest box wins.
+     */
+    public synchronized String courseAt(double x, double y, double z) {
+        if (!ENABLED) return null;
+        AstCourseManager cm = AstCourseManager.get();
+        if (cm.manifestRevision() != builtRevision) {
+            Map<String, AstData.AabbDto> starts = cm.startBoxes(); // may index the manifest first
+            build(starts, cm.manifestRevision());
+        }
+        if (names.length == 0) return null;
+
+        int best = -1;
+        int c = cellOf.get(key(cell(x), cell(z))) - 1;
+        if (c >= 0) {
+            for (int k = cellStart[c]; k < cellStart[c + 1]; k++) best = better(best, members[k], x, y, z);
+        }
+        for (int b : large) best = better(best, b, x, y, z);
+        return best < 0 ? null : names[best];
+    }
+
+    public synchronized String summary() {
+        return names.length + " starts, " + (cellStart.length - 1) + " cells, " + large.length + " large"
+                + (ENABLED ? "" : " (auto-activation off)");
+    }
+
+    private int better(int best, int b, double x, double y, double z) {
+        int o = b * 6;
+        if (x < boxes[o] || x >= boxes[o + 3] || y < boxes[o + 1] || y >= boxes[o + 4] || z < boxes[o + 2] || z >= boxes[o + 5]) {
+            return best;
+        }
+        if (best < 0 || volume(b) < volume(best)) return b;
+        return best;
+    }
+
+    private double volume(int b) {
+        int o = b * 6;
+        return (boxes[o + 3] - boxes[o]) * (boxes[o + 4] - boxes[o + 1]) * (boxes[o + 5] - boxes[o + 2]);
+    }
+
+    private void build(Map<String, AstData.AabbDto> starts, int revision) {
+        builtRevision = revision;
+        int n = starts.size();
+        names = new String[n];
+        boxes = new double[n * 6];
+        int i = 0;
+        for (Map.Entry<String, AstData.AabbDto> e : starts.entrySet()) {
+            AstData.AabbDto b = e.getValue();
+            names[i] = e.getKey();
+            boxes[i * 6] = b.minX;
+            boxes[i * 6 + 1] = b.minY;
+            boxes[i * 6 + 2] = b.minZ;
+            boxes[i * 6 + 3] = b.maxX;
+            boxes[i * 6 + 4] = b.maxY;
+            boxes[i * 6 + 5] = b.maxZ;
+            i++;
+        }
+
+        // (cell key, box) pairs, then grouped by cell
+        List<long[]> pairs = new ArrayList<>();
+        List<Integer> big = new ArrayList<>();
+        for (int b = 0; b < n; b++) {
+            int x0 = cell(boxes[b * 6]), x1 = cell(boxes[b * 6 + 3]);
+            int z0 = cell(boxes[b * 6 + 2]), z1 = cell(boxes[b * 6 + 5]);
+            if ((long) (x1 - x0 + 1) * (z1 - z0 + 1) > MAX_CELLS_PER_BOX) {
+                big.add(b);
+                continue;
+            }
+            for (int cx = x0; cx <= x1; cx++) {
+                for (int cz = z0; cz <= z1; cz++) pairs.add(new long[]{key(cx, cz), b});
+            }
+        }
+        pairs.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+
+        cellOf.clear();
+        int[] starts0 = new int[pairs.size() + 1];
+        members = new int[pairs.size()];
+        int cells = 0;
+        for (int p = 0; p < pairs.size(); p++) {
+            long k = pairs.get(p)[0];
+            if (p == 0 || k != pairs.get(p - 1)[0]) {
+                starts0[cells++] = p;
+                cellOf.add(k, cells);
+            }
+            members[p] = (int) pairs.get(p)[1];
+        }
+        starts0[cells] = pairs.size();
+        cellStart = Arrays.copyOf(starts0, cells + 1);
+        large = new int[big.size()];
+        for (int b = 0; b < large.length; b++) large[b] = big.get(b);
+    }
+
+    private static int cell(double v) {
+        return (int) Math.floor(v / CELL);
+    }
+
+    private static long key(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,270 @@
+package com.konqasasas.ast.core;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Position traces of every attempt, per course ("courses/<name>.traces"), for route analysis.
+ *
+ * Layout (big-endian): magic "ASTR", format:byte, then records
+ *   [bodyLen:int][body][crc32(body):int]
+ *   body = attempt:varint, totalTicks:zigzag varint ({@link AstAttemptStore#NONE} = reset),
+ *          samples:varint, trace data ({@link AstGhostTrace} encoding)
+ *
+ * Records are appended as one write; a torn or corrupt tail is ignored on read and cut off
+ * before the next append, so records written after a crash stay readable. When the file
+ * grows past {@link #MAX_BYTES} it is rewritten with the newest records filling half of it.
+ * Appends, compaction and deletes run in order on one background writer thread, so resets and
+ * finishes on the client thread never wait for the disk; reads happen on the analysis threads.
+ * Both hold the store lock only for the file I/O. Queued writes are drained (bounded by
+ * {@link #DRAIN_TIMEOUT_MS}) when the world unloads and at JVM shutdown.
+ */
+public final class AstTraceStore {
+    private static final AstTraceStore INSTANCE = new AstTraceStore();
+
+    public static AstTraceStore get() {
+        return INSTANCE;
+    }
+
+    public static final String EXT = ".traces";
+
+    private static final int MAGIC = 0x41535452; // "ASTR"
+    private static final int FORMAT = 1;
+    private static final int HEADER = 5;
+    private static final long MAX_BYTES = Long.getLong("autosplittimer.traceMaxBytes", 8L * 1024 * 1024);
+
+    private static final long DRAIN_TIMEOUT_MS = 2_000L;
+
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "AST trace writer");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final AtomicInteger QUEUED = new AtomicInteger();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(INSTANCE::drainSafe, "AST trace drain"));
+    }
+
+    // course name -> appends this session; analysis results remember the value they saw
+    private final Map<String, Integer> generations = new HashMap<>();
+    // course name -> end of the last readable record, as of our last write (see validLength)
+    private final Map<String, Long> validLengths = new HashMap<>();
+
+    private AstTraceStore() {}
+
+    /** Queue a trace for appending; returns immediately. */
+    public void appendSafe(AstData.CourseFile course, AstGhostTrace.Trace trace) {
+        if (course == null || course.courseName == null || trace == null || trace.samples == 0) return;
+        String courseName = course.courseName;
+        File f = file(courseName);
+        submit(() -> append(courseName, f, trace));
+    }
+
+    private synchronized void append(String courseName, File f, AstGhostTrace.Trace trace) {
+        try {
+            byte[] record = encode(trace);
+            long valid = validLength(courseName, f);
+            if (valid < 0) return; // written by a newer version; leave it alone
+            ByteArrayOutputStream b = new ByteArrayOutputStream(record.length + HEADER);
+            if (valid < HEADER) {
+                valid = 0;
+                writeHeader(new DataOutputStream(b));
+            }
+            b.write(record);
+            try (RandomAccessFile out = new RandomAccessFile(f, "rw")) {
+                // drop a torn tail, otherwise every record after it would be unreadable
+                out.setLength(valid);
+                out.seek(valid);
+                out.write(b.toByteArray());
+            }
+            valid += b.size();
+            validLengths.put(courseName, valid);
+            if (valid > MAX_BYTES) {
+                validLengths.remove(courseName);
+                compact(f);
+            }
+        } catch (IOException | RuntimeException ignored) {
+            // analysis just sees fewer attempts
+            validLengths.remove(courseName);
+        }
+        generations.merge(courseName, 1, Integer::sum);
+    }
+
+    /** All readable traces, oldest first. Empty if the file is missing or unreadable. */
+    public List<AstGhostTrace.Trace> readAllSafe(String courseName) {
+        byte[] data;
+        synchronized (this) {
+            File f = file(courseName);
+            if (!f.exists()) return new ArrayList<>();
+            try {
+                data = Files.readAllBytes(f.toPath());
+            } catch (IOException | RuntimeException e) {
+                return new ArrayList<>();
+            }
+        }
+        return decode(data);
+    }
+
+    /**
+     * Wait until the queued appends and deletes are on disk, at most {@link #DRAIN_TIMEOUT_MS}.
+     * Called when the world unloads and from a shutdown hook; returns at once if nothing is queued.
+     */
+    public void drainSafe() {
+        if (QUEUED.get() == 0) return;
+        try {
+            WRITER.submit(() -> {}).get(DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ignored) {
+            // timed out or shutting down: the remaining traces are lost, as after a crash
+        }
+    }
+
+    public synchronized int generation(String courseName) {
+        Integer g = generations.get(courseName);
+        return g == null ? 0 : g;
+    }
+
+    /** Queued behind pending appends, so none of them recreates the file afterwards. */
+    public void deleteSafe(String courseName) {
+        if (courseName == null) return;
+        File f = file(courseName);
+        submit(() -> delete(courseName, f));
+    }
+
+    private synchronized void delete(String courseName, File f) {
+        generations.merge(courseName, 1, Integer::sum);
+        validLengths.remove(courseName);
+        //noinspection ResultOfMethodCallIgnored
+        f.delete();
+        //noinspection ResultOfMethodCallIgnored
+        AstFileIo.backupOf(f).delete();
+    }
+
+    private static void submit(Runnable task) {
+        QUEUED.incrementAndGet();
+        try {
+            WRITER.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    QUEUED.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+            // JVM shutting down
+            QUEUED.decrementAndGet();
+        }
+    }
+
+    /**
+     * Length of the file's readable prefix (header plus whole valid records): the known value if
+     * the file still has that length, otherwise found by scanning. 0 = missing or not a trace
+     * file (rewritten from scratch), -1 = a newer format.
+     */
+    private long validLength(String courseName, File f) throws IOException {
+        if (!f.exists()) return 0;
+        Long known = validLengths.get(courseName);
+        if (known != null && known == f.length()) return known;
+        return decode(Files.readAllBytes(f.toPath()), null);
+    }
+
+    private File file(String courseName) {
+        return AstCourseManager.get().courseSideFile(courseName, EXT);
+    }
+
+    private void compact(File f) throws IOException {
+        List<AstGhostTrace.Trace> all = decode(Files.readAllBytes(f.toPath()));
+        List<byte[]> keep = new ArrayList<>();
+        long size = HEADER;
+        for (int i = all.size() - 1; i >= 0; i--) {
+            byte[] r = encode(all.get(i));
+            if (size + r.length > MAX_BYTES / 2 && !keep.isEmpty()) break;
+            keep.add(r);
+            size += r.length;
+        }
+        AstFileIo.writeAtomic(f, out -> {
+            DataOutputStream d = new DataOutputStream(out);
+            writeHeader(d);
+            for (int i = keep.size() - 1; i >= 0; i--) d.write(keep.get(i));
+            d.flush();
+        });
+    }
+
+    private static void writeHeader(DataOutputStream d) throws IOException {
+        d.writeInt(MAGIC);
+        d.writeByte(FORMAT);
+    }
+
+    private static byte[] encode(AstGhostTrace.Trace t) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(t.data.length + 16);
+        DataOutputStream b = new DataOutputStream(body);
+        AstBinaryCourse.writeVarint(b, t.attempt);
+        AstBinaryCourse.writeVarint(b, AstBinaryCourse.zigzag(t.totalTicks));
+        AstBinaryCourse.writeVarint(b, t.samples);
+        b.write(t.data);
+        b.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(body.toByteArray(), 0, body.size());
+        ByteArrayOutputStream rec = new ByteArrayOutputStream(body.size() + 8);
+        DataOutputStream r = new DataOutputStream(rec);
+        r.writeInt(body.size());
+        body.writeTo(r);
+        r.writeInt((int) crc.getValue());
+        r.flush();
+        return rec.toByteArray();
+    }
+
+    private static List<AstGhostTrace.Trace> decode(byte[] data) {
+        List<AstGhostTrace.Trace> out = new ArrayList<>();
+        decode(data, out);
+        return out;
+    }
+
+    /**
+     * Decode records into {@code out} (null = only measure). Returns the end of the last valid
+     * record, 0 if this is not a trace file, -1 if it is from a newer format.
+     */
+    private static long decode(byte[] data, List<AstGhostTrace.Trace> out) {
+        ByteBuffer b = ByteBuffer.wrap(data);
+        if (data.length < HEADER || b.getInt() != MAGIC) return 0;
+        if ((b.get() & 0xFF) > FORMAT) return -1;
+        long end = HEADER;
+        CRC32 crc = new CRC32();
+        while (b.remaining() >= 8) {
+            int len = b.getInt();
+            if (len <= 0 || len > b.remaining() - 4) break; // torn tail
+            int start = b.position();
+            crc.reset();
+            crc.update(data, start, len);
+            if (b.getInt(start + len) != (int) crc.getValue()) break;
+            try {
+                ByteBuffer body = ByteBuffer.wrap(data, start, len);
+                int attempt = AstBinaryCourse.readVarint(body);
+                int total = AstBinaryCourse.unzigzag(AstBinaryCourse.readVarint(body));
+                int samples = AstBinaryCourse.readVarint(body);
+                byte[] trace = new byte[body.remaining()];
+                body.get(trace);
+                if (out != null) out.add(new AstGhostTrace.Trace(attempt, total, samples, trace));
+            } catch (IOException | RuntimeException e) {
+                break;
+            }
+            b.position(start + len + 4);
+            end = b.position();
+        }
+        return end;
+    }
+}
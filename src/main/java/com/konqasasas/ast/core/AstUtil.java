@@ -28,6 +28,14 @@ public final class AstUtil {
                 && p.z >= bb.minZ && p.z < bb.maxZ;
     }
 
+    /** Squared distance from a point to a box (0 when inside or on its surface). */
+    public static double distanceSqToBox(AstData.AabbDto bb, double x, double y, double z) {
+        double dx = Math.max(0, Math.max(bb.minX - x, x - bb.maxX));
+        double dy = Math.max(0, Math.max(bb.minY - y, y - bb.maxY));
+        double dz = Math.max(0, Math.max(bb.minZ - z, z - bb.maxZ));
+        return dx * dx + dy * dy + dz * dz;
+    }
+
     public static AstData.Segment findSegment(AstData.CourseFile course, int index) {
         if (course == null || course.segments == null) return null;
         for (AstData.Segment s : course.segments) {
@@ -36,6 +44,42 @@ public final class AstUtil {
         return null;
     }
 
+    /**
+     * Insert or replace (same index) a segment, keeping {@code course.segments} sorted by
+     * index so the next save does not need to rebuild the list.
+     */
+    public static void putSegment(AstData.CourseFile course, AstData.Segment seg) {
+        int i = segmentSlot(course.segments, seg.index);
+        if (i >= 0) {
+            course.segments.set(i, seg);
+        } else {
+            course.segments.add(-i - 1, seg);
+        }
+        course.segmentsRevision++;
+    }
+
+    /** Remove the segment with {@code index}; false if there is none. */
+    public static boolean removeSegment(AstData.CourseFile course, int index) {
+        int i = segmentSlot(course.segments, index);
+        if (i < 0) return false;
+        course.segments.remove(i);
+        course.segmentsRevision++;
+        return true;
+    }
+
+    /** Binary search by index in a sorted segment list ({@link java.util.Collections#binarySearch} contract). */
+    private static int segmentSlot(List<AstData.Segment> segments, int index) {
+        int lo = 0, hi = segments.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int v = segments.get(mid).index;
+            if (v < index) lo = mid + 1;
+            else if (v > index) hi = mid - 1;
+            else return mid;
+        }
+        return -(lo + 1);
+    }
+
     public static List<Integer> sortedNonStartIndices(AstData.CourseFile course) {
         List<Integer> out = new ArrayList<>();
         if (course == null || course.segments == null) return out;
@@ -47,6 +91,20 @@ public final class AstUtil {
         return out;
     }
 
+    /** Tick at {@code pos}, or {@link AstData#NO_TICKS} if the array is null or too short. */
+    public static int tickAt(int[] ticks, int pos) {
+        return (ticks != null && pos >= 0 && pos < ticks.length) ? ticks[pos] : AstData.NO_TICKS;
+    }
+
+    /** Copy of {@code ticks} with length {@code n}; new slots are {@link AstData#NO_TICKS}. */
+    public static int[] resizeTicks(int[] ticks, int n) {
+        int[] out = new int[n];
+        int keep = ticks == null ? 0 : Math.min(n, ticks.length);
+        if (keep > 0) System.arraycopy(ticks, 0, out, 0, keep);
+        Arrays.fill(out, keep, n, AstData.NO_TICKS);
+        return out;
+    }
+
     public static int nextExistingIndex(List<Integer> sortedNonStart, int current) {
         for (int idx : sortedNonStart) {
             if (idx > current) return idx;
@@ -107,8 +165,9 @@ public final class AstUtil {
         if (course == null) return;
         if (course.stats == null) course.stats = new AstData.Stats();
         course.stats.pb = null;
-        course.stats.bestSegmentsTicks = new ArrayList<>();
-        course.stats.bestSplitTicks = new ArrayList<>();
+        course.stats.bestSegmentsTicks = new int[0];
+        course.stats.bestSplitTicks = new int[0];
+        course.stats.branchBestTicks = new int[0];
         course.stats.attemptCount = 0;
     }
 }
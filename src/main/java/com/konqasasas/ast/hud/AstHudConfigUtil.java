@@ -207,7 +207,7 @@ public final class AstHudConfigUtil {
                 hud.splitListLineGap = 0;
                 hud.splitPrimaryWidth = 10;
                 hud.splitSecondaryWidth = 10;
-                hud.itemOrder = new java.util.ArrayList<>(java.util.Arrays.asList("courseName", "attempt", "time", "segment", "segmentTime", "prevSeg", "bestSeg", "bestSplit", "bpt", "sob", "splitList"));
+                hud.itemOrder = new java.util.ArrayList<>(java.util.Arrays.asList("courseName", "attempt", "time", "segment", "segmentTime", "prevSeg", "ghostDelta", "bestSeg", "bestSplit", "bpt", "sob", "splitList"));
                 setTogglesAllOff(hud);
                 hud.toggles.put("courseName", true);
                 hud.toggles.put("segmentTime", true);
@@ -217,6 +217,7 @@ public final class AstHudConfigUtil {
                 hud.toggles.put("bestSeg", true);
                 hud.toggles.put("bestSplit", true);
                 hud.toggles.put("prevSeg", true);
+                hud.toggles.put("ghostDelta", true);
                 hud.toggles.put("time", true);
                 hud.toggles.put("attempt", true);
                 hud.toggles.put("splitList", true);
@@ -427,8 +428,8 @@ public final class AstHudConfigUtil {
     /** Known HUD item keys (PB removed). */
     public static String[] knownItems() {
         return new String[]{
-                "courseName", "time", "segment", "segmentTime", "prevSeg",
-                "sob", "bpt", "bestSeg", "bestSplit", "attempt", "splitList"
+                "courseName", "time", "segment", "segmentTime", "prevSeg", "ghostDelta",
+                "sob", "bpt", "bestSeg", "bestSplit", "attempt", "splitList", "raceList"
         };
     }
 
@@ -577,7 +578,9 @@ public final class AstHudConfigUtil {
         m.put("bestSplit", true);
         m.put("attempt", true);
         m.put("prevSeg", true);
+        m.put("ghostDelta", false);
         m.put("splitList", true);
+        m.put("raceList", true);
         return m;
     }
 }
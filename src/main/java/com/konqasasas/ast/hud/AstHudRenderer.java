@@ -14,6 +14,9 @@ import java.util.*;
  */
 public class AstHudRenderer {
 
+    /** Rows of the race standings item (see {@link AstRaceTracker}). */
+    public static final int RACE_ROWS = 8;
+
     // Simple "dirty" flag so commands/GUI can force immediate refresh if we later add caching.
     private static volatile boolean DIRTY = false;
 
@@ -23,6 +26,15 @@ public class AstHudRenderer {
 
     @SubscribeEvent
     public void onRenderText(RenderGameOverlayEvent.Text e) {
+        long t0 = AstPerf.begin();
+        try {
+            renderHud();
+        } finally {
+            AstPerf.end(AstPerf.Probe.HUD_RENDER, t0);
+        }
+    }
+
+    private void renderHud() {
         Minecraft mc = Minecraft.getMinecraft();
         if (mc.world == null || mc.player == null) return;
 
@@ -68,7 +80,12 @@ public class AstHudRenderer {
         AstRuntime.State state = rt.getState();
 
         // Touch DIRTY so rebuild requests are observed even if we add caching later.
-        if (DIRTY) DIRTY = false;
+        // The frame that consumes it is reported to JFR as the HUD rebuild.
+        Object rebuildEvent = null;
+        if (DIRTY) {
+            DIRTY = false;
+            rebuildEvent = AstJfr.beginHudRebuild();
+        }
 
         String curTime = AstUtil.formatTicks(rt.getElapsedTicks(), hud.timeFormat);
         String segName = segmentName(course, rt.getNextIndex(), state);
@@ -85,7 +102,7 @@ public class AstHudRenderer {
         int y = (int) (baseY / scale);
 
         List<String> order = (hud.itemOrder == null || hud.itemOrder.isEmpty())
-                ? Arrays.asList("courseName","time","segment","segmentTime","prevSeg","sob","bpt","bestSeg","bestSplit","attempt","splitList")
+                ? Arrays.asList("courseName","time","segment","segmentTime","prevSeg","ghostDelta","sob","bpt","bestSeg","bestSplit","attempt","splitList","raceList")
                 : hud.itemOrder;
 
         for (String key : order) {
@@ -114,6 +131,14 @@ public class AstHudRenderer {
                     draw(fr, cLabel(hud) + "Prev: " + cSub(hud) + prevStr, x, y, baseColor);
                     y += fr.FONT_HEIGHT + Math.max(0, hud.splitListLineGap);
                     break;
+                case "ghostDelta":
+                    if (!isOn(hud, "ghostDelta")) break;
+                    int gd = rt.getGhostDeltaTicks();
+                    String gdStr = gd == AstData.NO_TICKS ? cSub(hud) + "--"
+                            : (gd <= 0 ? cGood(hud) : cBad(hud)) + formatDelta(gd, hud.timeFormat);
+                    draw(fr, cLabel(hud) + "Ghost: " + gdStr, x, y, baseColor);
+                    y += fr.FONT_HEIGHT + Math.max(0, hud.splitListLineGap);
+                    break;
                 case "sob":
                     if (!isOn(hud, "sob")) break;
                     draw(fr, cLabel(hud) + "SoB: " + cSub(hud) + ds.sumOfBestStr, x, y, baseColor);
@@ -146,12 +171,20 @@ public class AstHudRenderer {
                     y += fr.FONT_HEIGHT + Math.max(0, hud.splitListLineGap);
                     y = drawSplitList(fr, course, rt, x, y, baseColor);
                     break;
+                case "raceList":
+                    if (!isOn(hud, "raceList") || !AstRaceTracker.isEnabled()) break;
+                    y += 2;
+                    draw(fr, cLabel(hud) + "Race:", x, y, baseColor);
+                    y += fr.FONT_HEIGHT + Math.max(0, hud.splitListLineGap);
+                    y = drawRaceList(fr, hud, rt, x, y, baseColor);
+                    break;
                 default:
                     break;
             }
         }
 
         GlStateManager.popMatrix();
+        AstJfr.endHudRebuild(rebuildEvent);
     }
 
     private static boolean isOn(AstData.HudConfig hud, String key) {
@@ -211,7 +244,7 @@ public class AstHudRenderer {
         // total width is derived from colgap (gap) + fixed column widths.
         int totalW = gap + primW + gap + secW;
 
-        List<Integer> order = AstUtil.sortedNonStartIndices(course);
+        List<Integer> order = AstBestSegmentIndex.get().order(course);
         int n = Math.max(0, hud.splitListCount);
         if (n == 0 || order.isEmpty()) {
             draw(fr, cSub(hud) + "(none)", x, y, baseColor);
@@ -250,12 +283,12 @@ public class AstHudRenderer {
             show.add(goalIdx);
         }
 
-        List<Integer> pbSeg = rt.getBaselinePbSegOrNull();
-        List<Integer> pbSplit = rt.getBaselinePbSplitOrNull();
-        List<Integer> bestSeg = rt.getBaselineBestSegOrNull();
-        List<Integer> bestSplit = rt.getBaselineBestSplitOrNull();
+        int[] pbSeg = rt.getBaselinePbSegOrNull();
+        int[] pbSplit = rt.getBaselinePbSplitOrNull();
+        int[] bestSeg = rt.getBaselineBestSegOrNull();
+        int[] bestSplit = rt.getBaselineBestSplitOrNull();
         if (pbSeg == null) pbSeg = (course.stats.pb != null) ? course.stats.pb.segmentTicks : null;
-        if (pbSplit == null) pbSplit = buildPbSplit(pbSeg);
+        if (pbSplit == null) pbSplit = AstRuntime.cumulativeTicks(pbSeg);
         if (bestSeg == null) bestSeg = course.stats.bestSegmentsTicks;
         if (bestSplit == null) bestSplit = course.stats.bestSplitTicks;
 
@@ -263,6 +296,16 @@ public class AstHudRenderer {
         Map<Integer, Integer> runSplit = rt.getRunSplitCumulative();
         Set<Integer> goldSeg = rt.getGoldSegmentsThisRun();
         Set<Integer> goldSplitSet = rt.getGoldSplitsThisRun();
+        Set<Integer> offBranch = rt.getOffBranchThisRun();
+        // declared routes: best segments are per branch (box counted before, box)
+        AstRouteTable route = AstRouteTable.get();
+        boolean branches = route.isDeclared(course);
+        int[] branchBest = rt.getBaselineBranchBestOrNull();
+        if (branchBest == null) branchBest = course.stats.branchBestTicks;
+        int[] pbFrom = rt.getBaselinePbFromOrNull();
+        if (pbFrom == null && course.stats.pb != null) pbFrom = course.stats.pb.segmentFrom;
+        Map<Integer, Integer> runFrom = rt.getRunSegmentFrom();
+        int routeLast = rt.getRouteLast();
 
         int elapsed = rt.getElapsedTicks();
         int lastSplitCum = rt.getLastSplitCumulative();
@@ -285,16 +328,20 @@ public class AstHudRenderer {
             if (rt.getState() == AstRuntime.State.FINISHED) ss = SegmentState.PAST;
 
             // Comparison baseline for this row (shown before passing; used for delta).
-            Integer base;
-            if ("best".equals(cmp)) {
-                base = "seg".equals(unit)
-                        ? (bestSeg != null && p >= 0 && p < bestSeg.size() ? bestSeg.get(p) : null)
-                        : (bestSplit != null && p >= 0 && p < bestSplit.size() ? bestSplit.get(p) : null);
+            int base;
+            if ("best".equals(cmp) && "seg".equals(unit) && branches) {
+                // passed: the branch run; next: from the last box; further ahead: the PB's branch
+                Integer from = runFrom.get(idx);
+                if (from == null && route.accepts(course, routeLast, idx)) from = routeLast;
+                if (from == null && AstUtil.tickAt(pbFrom, p) != AstData.NO_TICKS) from = AstUtil.tickAt(pbFrom, p);
+                base = from == null ? AstData.NO_TICKS : AstRouteTable.branchBest(branchBest, from, idx);
+            } else if ("best".equals(cmp)) {
+                base = AstUtil.tickAt("seg".equals(unit) ? bestSeg : bestSplit, p);
             } else {
-                base = "seg".equals(unit)
-                        ? (pbSeg != null && p >= 0 && p < pbSeg.size() ? pbSeg.get(p) : null)
-                        : (pbSplit != null && p >= 0 && p < pbSplit.size() ? pbSplit.get(p) : null);
+                base = AstUtil.tickAt("seg".equals(unit) ? pbSeg : pbSplit, p);
             }
+            // reached by another route branch than the PB: segment times are not comparable
+            if ("seg".equals(unit) && "pb".equals(cmp) && offBranch.contains(idx)) base = AstData.NO_TICKS;
 
             // Actual time at pass (only meaningful for PAST rows)
             Integer actual = null;
@@ -311,7 +358,7 @@ public class AstHudRenderer {
                 secondaryText = (actual == null) ? "--" : AstUtil.formatTicks(actual, hud.timeFormat);
                 secondaryColor = (highlight ? cMain(hud) : cSub(hud));
             } else {
-                secondaryText = (base == null) ? "--" : AstUtil.formatTicks(base, hud.timeFormat);
+                secondaryText = (base == AstData.NO_TICKS) ? "--" : AstUtil.formatTicks(base, hud.timeFormat);
             }
 
             // Primary:
@@ -319,7 +366,7 @@ public class AstHudRenderer {
             //  - after pass: delta vs baseline
             String primaryText = "";
             String primaryColor = (ss == SegmentState.ACTIVE || highlight) ? cMain(hud) : cSub(hud);
-            if (ss == SegmentState.PAST && actual != null && base != null) {
+            if (ss == SegmentState.PAST && actual != null && base != AstData.NO_TICKS) {
                 int d = actual - base;
                 primaryText = formatDelta(d, hud.timeFormat);
                 // Semantic colors ignore theme/preset.
@@ -379,29 +426,18 @@ public class AstHudRenderer {
         return -1;
     }
 
-    private static List<Integer> buildPbSplit(List<Integer> pbSeg) {
-        if (pbSeg == null) return null;
-        List<Integer> out = new ArrayList<>(pbSeg.size());
-        int s = 0;
-        for (Integer t : pbSeg) {
-            if (t == null) { out.add(null); }
-            else { s += t; out.add(s); }
-        }
-        return out;
-    }
-
-    private static Integer baselineAt(String mode, int pos, List<Integer> pbSeg, List<Integer> pbSplit, List<Integer> bestSeg, List<Integer> bestSplit) {
+    private static int baselineAt(String mode, int pos, int[] pbSeg, int[] pbSplit, int[] bestSeg, int[] bestSplit) {
         switch (mode) {
             case "pbseg":
-                return (pbSeg != null && pos < pbSeg.size()) ? pbSeg.get(pos) : null;
+                return AstUtil.tickAt(pbSeg, pos);
             case "pbsplit":
-                return (pbSplit != null && pos < pbSplit.size()) ? pbSplit.get(pos) : null;
+                return AstUtil.tickAt(pbSplit, pos);
             case "bestseg":
-                return (bestSeg != null && pos < bestSeg.size()) ? bestSeg.get(pos) : null;
+                return AstUtil.tickAt(bestSeg, pos);
             case "bestsplit":
-                return (bestSplit != null && pos < bestSplit.size()) ? bestSplit.get(pos) : null;
+                return AstUtil.tickAt(bestSplit, pos);
             default:
-                return null;
+                return AstData.NO_TICKS;
         }
     }
 
@@ -418,6 +454,37 @@ public class AstHudRenderer {
         }
     }
 
+    /** "1. Name  3/10  0:42.15  +1.20" per racer, leader first. */
+    private static int drawRaceList(FontRenderer fr, AstData.HudConfig hud, AstRuntime rt, int x, int y, int baseColor) {
+        AstRaceTracker race = AstRaceTracker.get();
+        List<AstRaceTracker.Row> rows = race.standings(rt);
+        int step = fr.FONT_HEIGHT + Math.max(0, hud.splitListLineGap);
+        if (rows.isEmpty()) {
+            draw(fr, cSub(hud) + "(nobody running)", x, y, baseColor);
+            return y + step;
+        }
+        int nameW = 60;
+        int total = race.checkpoints();
+        for (int i = 0; i < rows.size() && i < RACE_ROWS; i++) {
+            AstRaceTracker.Row r = rows.get(i);
+            String name = ellipsize(fr, (i + 1) + ". " + r.name, nameW);
+            draw(fr, (r.self ? cMain(hud) : cSub(hud)) + name, x, y, baseColor);
+            int cx = x + nameW + 4;
+            String progress = r.finished ? "Goal" : r.splitsDone + "/" + total;
+            draw(fr, cSub(hud) + progress, cx, y, baseColor);
+            cx += fr.getStringWidth("00/00") + 6;
+            String time = AstUtil.formatTicks(r.ticks, hud.timeFormat);
+            draw(fr, (r.finished ? cGold(hud) : cMain(hud)) + time, cx, y, baseColor);
+            cx += fr.getStringWidth(time) + 6;
+            if (r.deltaTicks != AstData.NO_TICKS) {
+                String d = r.deltaTicks == 0 ? cGood(hud) + "lead" : cBad(hud) + formatDelta(r.deltaTicks, hud.timeFormat);
+                draw(fr, d, cx, y, baseColor);
+            }
+            y += step;
+        }
+        return y;
+    }
+
     private static String formatDelta(int deltaTicks, String timeFormat) {
         String sign = deltaTicks < 0 ? "-" : "+";
         int abs = Math.abs(deltaTicks);
@@ -458,16 +525,25 @@ public class AstHudRenderer {
                     ? AstUtil.formatTicks(course.stats.pb.totalTicks, tf)
                     : "--";
 
+            // declared routes: along the transitions over the branch bests, not every position
+            AstRouteTable route = AstRouteTable.get();
+            boolean branches = route.isDeclared(course);
+
             String sob = "--";
-            Integer sobTicks = sumIfComplete(course.stats.bestSegmentsTicks);
+            Integer sobTicks = branches
+                    ? route.sumOfBest(course, course.stats.branchBestTicks)
+                    : AstBestSegmentIndex.get().sumOfBest(course);
             if (sobTicks != null) sob = AstUtil.formatTicks(sobTicks, tf);
 
             String bpt = "--";
-            Integer bptTicks = bestPossibleTicks(course, rt);
+            Integer bptTicks = branches
+                    ? route.bestPossible(course, course.stats.branchBestTicks, rt.getRouteLast(),
+                            rt.getLastSplitCumulative(), rt.getElapsedTicks())
+                    : bestPossibleTicks(course, rt);
             if (bptTicks != null) bpt = AstUtil.formatTicks(bptTicks, tf);
 
             String bestSeg = "--";
-            Integer bestSegTicks = bestSegAtNext(course, rt);
+            Integer bestSegTicks = branches ? bestSegFromLast(course, rt) : bestSegAtNext(course, rt);
             if (bestSegTicks != null) bestSeg = AstUtil.formatTicks(bestSegTicks, tf);
 
             String bestSplit = "--";
@@ -477,67 +553,54 @@ public class AstHudRenderer {
             return new DerivedStats(pb, sob, bpt, bestSeg, bestSplit);
         }
 
-        private static Integer sumIfComplete(List<Integer> segTicks) {
-            if (segTicks == null || segTicks.isEmpty()) return null;
-            int s = 0;
-            for (Integer t : segTicks) {
-                if (t == null) return null;
-                s += t;
-            }
-            return s;
-        }
-
         private static Integer bestPossibleTicks(AstData.CourseFile course, AstRuntime rt) {
-            List<Integer> best = course.stats.bestSegmentsTicks;
-            if (best == null || best.isEmpty()) return null;
-            List<Integer> order = AstUtil.sortedNonStartIndices(course);
-            if (order.isEmpty()) return null;
+            int[] best = course.stats.bestSegmentsTicks;
+            if (best == null || best.length == 0) return null;
+            AstBestSegmentIndex index = AstBestSegmentIndex.get();
+            if (index.order(course).isEmpty()) return null;
 
             // Livesplit-style BPT:
             //  - Use time up to last completed split (stable)
             //  - Add best possible remainder (finish current seg in its best, plus future best segs)
             int base = rt.getLastSplitCumulative();
             int next = rt.getNextIndex();
-            int pos = indexOf(order, next);
+            int pos = index.positionOf(course, next);
             if (pos < 0) {
                 // If nextIndex is unknown, fall back to SOB.
-                return sumIfComplete(best);
+                return index.sumOfBest(course);
             }
 
             // current segment time so far (0 if none yet)
             int curSoFar = Math.max(0, rt.getElapsedTicks() - base);
-            Integer bestCur = (pos < best.size()) ? best.get(pos) : null;
-            if (bestCur == null) return null;
+            int bestCur = AstUtil.tickAt(best, pos);
+            if (bestCur == AstData.NO_TICKS) return null;
             int sum = rt.getElapsedTicks() + Math.max(0, bestCur - curSoFar);
 
             // future segments
-            for (int i = pos + 1; i < best.size(); i++) {
-                Integer t = best.get(i);
-                if (t == null) return null;
-                sum += t;
-            }
-            return sum;
+            Integer rest = index.bestRemaining(course, pos + 1);
+            return rest == null ? null : sum + rest;
         }
 
         private static Integer bestSegAtNext(AstData.CourseFile course, AstRuntime rt) {
-            List<Integer> best = course.stats.bestSegmentsTicks;
-            if (best == null || best.isEmpty()) return null;
+            int[] best = course.stats.bestSegmentsTicks;
+            if (best == null || best.length == 0) return null;
             int next = rt.getNextIndex();
-            List<Integer> order = AstUtil.sortedNonStartIndices(course);
-            int pos = indexOf(order, next);
-            if (pos < 0 || pos >= best.size()) return null;
-            return best.get(pos);
+            int t = AstUtil.tickAt(best, AstBestSegmentIndex.get().positionOf(course, next));
+            return t == AstData.NO_TICKS ? null : t;
+        }
+
+        private static Integer bestSegFromLast(AstData.CourseFile course, AstRuntime rt) {
+            int t = AstRouteTable.get().bestNextSegment(course, course.stats.branchBestTicks, rt.getRouteLast());
+            return t == AstData.NO_TICKS ? null : t;
         }
 
         private static Integer bestSplitAtLastCompleted(AstData.CourseFile course, AstRuntime rt) {
-            List<Integer> best = course.stats.bestSplitTicks;
-            if (best == null || best.isEmpty()) return null;
+            int[] best = course.stats.bestSplitTicks;
+            if (best == null || best.length == 0) return null;
             int next = rt.getNextIndex();
-            List<Integer> order = AstUtil.sortedNonStartIndices(course);
-            int pos = indexOf(order, next);
-            int last = pos - 1;
-            if (last < 0 || last >= best.size()) return null;
-            return best.get(last);
+            int pos = AstBestSegmentIndex.get().positionOf(course, next);
+            int t = AstUtil.tickAt(best, pos - 1);
+            return t == AstData.NO_TICKS ? null : t;
         }
     }
 }
@@ -1,10 +1,12 @@
 package com.konqasasas.ast.hud;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
 import com.google.gson.JsonSyntaxException;
 import com.konqasasas.ast.AutoSplitTimerMod;
 import com.konqasasas.ast.core.AstData;
+import com.konqasasas.ast.core.AstFileIo;
+import com.konqasasas.ast.core.AstJsonAdapters;
 import net.minecraft.client.Minecraft;
 
 import java.io.*;
@@ -17,7 +19,10 @@ import java.util.*;
  * Path: config/autosplittimer/layouts/<name>.json
  */
 public final class AstLayoutManager {
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().serializeNulls().create();
+    private static final Gson GSON = AstJsonAdapters.create(AstJsonAdapters.PRETTY);
+
+    // Cached until a layout is saved/deleted here or AstFileWatcher reports a change.
+    private static volatile List<String> layoutNames = null;
 
     private AstLayoutManager() {}
 
@@ -62,13 +67,34 @@ public final class AstLayoutManager {
             String safe = safeName(name);
             if (safe.isEmpty()) return false;
             File f = new File(layoutsDir(), safe + ".json");
-            return f.exists() && f.delete();
+            File bak = AstFileIo.backupOf(f);
+            if (bak.exists()) {
+                //noinspection ResultOfMethodCallIgnored
+                bak.delete();
+            }
+            boolean deleted = f.exists() && f.delete();
+            invalidateLayoutList();
+            return deleted;
         } catch (Exception ignored) {
             return false;
         }
     }
 
     public static List<String> listLayouts() {
+        List<String> names = layoutNames;
+        if (names == null) {
+            names = Collections.unmodifiableList(scanLayouts());
+            layoutNames = names;
+        }
+        return new ArrayList<>(names);
+    }
+
+    /** Drop the cached layout list; the next {@link #listLayouts()} rescans the directory. */
+    public static void invalidateLayoutList() {
+        layoutNames = null;
+    }
+
+    private static List<String> scanLayouts() {
         File dir = layoutsDir();
         File[] files = dir.listFiles((d, n) -> n.toLowerCase(Locale.ROOT).endsWith(".json"));
         List<String> out = new ArrayList<>();
@@ -88,11 +114,6 @@ public final class AstLayoutManager {
         String safe = safeName(name);
         if (safe.isEmpty()) throw new IOException("Invalid layout name");
         File f = new File(layoutsDir(), safe + ".json");
-        File parent = f.getParentFile();
-        if (!parent.exists()) {
-            //noinspection ResultOfMethodCallIgnored
-            parent.mkdirs();
-        }
         AstHudConfigUtil.normalizeHud(hud);
         LayoutFile out = new LayoutFile();
         out.itemOrder = new ArrayList<>(hud.itemOrder);
@@ -108,9 +129,12 @@ public final class AstLayoutManager {
         out.splitListLineGap = hud.splitListLineGap;
         out.splitPrimaryWidth = hud.splitPrimaryWidth;
         out.splitSecondaryWidth = hud.splitSecondaryWidth;
-        try (Writer w = new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8)) {
+        AstFileIo.writeAtomic(f, os -> {
+            Writer w = new OutputStreamWriter(os, StandardCharsets.UTF_8);
             GSON.toJson(out, w);
-        }
+            w.flush();
+        });
+        invalidateLayoutList();
     }
 
     private static LayoutFile loadLayout(String name) throws IOException {
@@ -118,10 +142,21 @@ public final class AstLayoutManager {
         if (safe.isEmpty()) return null;
         File f = new File(layoutsDir(), safe + ".json");
         if (!f.exists()) return null;
+        try {
+            return parseLayout(f);
+        } catch (IOException e) {
+            if (!AstFileIo.backupOf(f).exists()) throw e;
+            AstFileIo.restoreFromBackup(f);
+            return parseLayout(f);
+        }
+    }
+
+    private static LayoutFile parseLayout(File f) throws IOException {
         try (Reader r = new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8)) {
             LayoutFile lf = GSON.fromJson(r, LayoutFile.class);
+            if (lf == null) throw new IOException("Empty JSON");
             return lf;
-        } catch (JsonSyntaxException jse) {
+        } catch (JsonSyntaxException | JsonIOException jse) {
             throw new IOException("Invalid JSON: " + jse.getMessage(), jse);
         }
     }
@@ -147,7 +182,7 @@ public final class AstLayoutManager {
         AstHudConfigUtil.normalizeHud(dst);
     }
 
-    private static File layoutsDir() {
+    public static File layoutsDir() {
         File base = new File(Minecraft.getMinecraft().mcDataDir, "config" + File.separator + AutoSplitTimerMod.MODID);
         File layouts = new File(base, "layouts");
         if (!layouts.exists()) {
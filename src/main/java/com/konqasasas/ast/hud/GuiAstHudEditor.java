@@ -2,6 +2,7 @@ package com.konqasasas.ast.hud;
 
 import com.konqasasas.ast.core.AstCourseManager;
 import com.konqasasas.ast.core.AstData;
+import com.konqasasas.ast.core.AstRaceTracker;
 import net.minecraft.client.gui.FontRenderer;
 import net.minecraft.client.gui.GuiScreen;
 import net.minecraft.client.gui.GuiTextField;
@@ -85,7 +86,7 @@ public class GuiAstHudEditor extends GuiScreen {
     }
 
     private void saveCourse() {
-        AstCourseManager.get().saveActiveCourseSafe();
+        AstCourseManager.get().saveActiveCourseSafe(AstCourseManager.CHANGED_HUD);
         AstHudRenderer.requestRebuild();
     }
 
@@ -301,6 +302,8 @@ public class GuiAstHudEditor extends GuiScreen {
             if ("splitlist".equals(k)) {
                 // Renderer draws a "Splits:" header line + rows.
                 lines += 1 + Math.max(0, hud.splitListCount);
+            } else if ("raceList".equals(k)) {
+                if (AstRaceTracker.isEnabled()) lines += 1 + AstHudRenderer.RACE_ROWS;
             } else {
                 lines += 1;
             }
@@ -1122,12 +1125,14 @@ public class GuiAstHudEditor extends GuiScreen {
             case "segment": return "Segment";
             case "segmenttime": return "Segment Time";
             case "prevseg": return "Prev Segment";
+            case "ghostdelta": return "Ghost Delta";
             case "sob": return "Sum of Best";
             case "bpt": return "Best Possible Time";
             case "bestseg": return "Best Segment";
             case "bestsplit": return "Best Split";
             case "attempt": return "Attempts";
             case "splitlist": return "Split List";
+            case "racelist": return "Race Standings";
             default: return key;
         }
     }
@@ -67,7 +67,7 @@ public class GuiAstLayoutList extends GuiScreen {
         cf.hud = loaded;
         cf.hud.preset = keepPreset;
         AstHudConfigUtil.normalizeHud(cf.hud);
-        AstCourseManager.get().saveActiveCourseSafe();
+        AstCourseManager.get().saveActiveCourseSafe(AstCourseManager.CHANGED_HUD);
         AstHudRenderer.requestRebuild();
 
         // Return to editor and let it refresh fields.
@@ -0,0 +1,250 @@
+package com.konqasasas.ast.viz;
+
+import com.konqasasas.ast.core.AstCourseManager;
+import com.konqasasas.ast.core.AstData;
+import com.konqasasas.ast.core.AstGhostTrace;
+import com.konqasasas.ast.core.AstPerf;
+import com.konqasasas.ast.core.AstRuntime;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.BufferBuilder;
+import net.minecraft.client.renderer.GlStateManager;
+import net.minecraft.client.renderer.OpenGlHelper;
+import net.minecraft.client.renderer.Tessellator;
+import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
+import net.minecraft.client.renderer.vertex.VertexBuffer;
+import net.minecraft.entity.Entity;
+import net.minecraftforge.client.event.RenderWorldLastEvent;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import org.lwjgl.opengl.GL11;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * PB ghost: the PB route as a line strip and a marker where the PB run was at the current
+ * run time.
+ *
+ * The route is uploaded once per trace into a vertex buffer (positions relative to the
+ * trace's first sample) and drawn in {@link #CHUNK}-sample ranges; ranges farther than
+ * {@link #DIST_SQ_MAX} from the player are skipped. Without VBO support the visible ranges
+ * are tessellated per frame instead.
+ */
+public class AstGhostRenderer {
+    private static volatile boolean ENABLED = true;
+
+    private static final int CHUNK = 256;            // samples per culling range
+    private static final double DIST_SQ_MAX = 128.0 * 128.0;
+    private static final int STRIDE = 16;            // POSITION_COLOR: 3 floats + RGBA bytes
+    private static final int PATH_RGBA = 0x66CCFFB0;
+    private static final float MARKER_HALF_W = 0.3f, MARKER_H = 1.8f;
+
+    // uploaded trace
+    private AstGhostTrace.Trace uploaded = null;
+    private float[] points = null;                   // x,y,z per sample, relative to origin
+    private final double[] origin = new double[3];
+    private float[] chunkBounds = new float[0];      // minX,minY,minZ,maxX,maxY,maxZ per chunk
+    private VertexBuffer vbo = null;
+
+    public static void setEnabled(boolean v) {
+        ENABLED = v;
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    @SubscribeEvent
+    public void onRenderWorldLast(RenderWorldLastEvent e) {
+        if (!ENABLED) {
+            release();
+            return;
+        }
+        long t0 = AstPerf.begin();
+        try {
+            renderWorld(e.getPartialTicks());
+        } finally {
+            AstPerf.end(AstPerf.Probe.GHOST_RENDER, t0);
+        }
+    }
+
+    private void renderWorld(float pt) {
+        Minecraft mc = Minecraft.getMinecraft();
+        if (mc.world == null || mc.player == null) {
+            release();
+            return;
+        }
+        AstData.CourseFile course = AstCourseManager.get().getActiveCourse();
+        AstGhostTrace.Trace trace = AstGhostTrace.get().pbTraceSafe(course);
+        if (trace == null || trace.samples < 2) {
+            release();
+            return;
+        }
+        if (trace != uploaded) upload(trace);
+
+        Entity view = mc.getRenderViewEntity();
+        if (view == null) view = mc.player;
+        double vx = view.lastTickPosX + (view.posX - view.lastTickPosX) * pt;
+        double vy = view.lastTickPosY + (view.posY - view.lastTickPosY) * pt;
+        double vz = view.lastTickPosZ + (view.posZ - view.lastTickPosZ) * pt;
+
+        GlStateManager.pushMatrix();
+        GlStateManager.translate(origin[0] - vx, origin[1] - vy, origin[2] - vz);
+        GlStateManager.disableTexture2D();
+        GlStateManager.disableLighting();
+        GlStateManager.enableBlend();
+        GlStateManager.tryBlendFuncSeparate(GlStateManager.SourceFactor.SRC_ALPHA, GlStateManager.DestFactor.ONE_MINUS_SRC_ALPHA,
+                GlStateManager.SourceFactor.ONE, GlStateManager.DestFactor.ZERO);
+        GlStateManager.glLineWidth(2.0f);
+        GlStateManager.depthMask(false);
+
+        drawPath((float) (mc.player.posX - origin[0]), (float) (mc.player.posY - origin[1]), (float) (mc.player.posZ - origin[2]));
+
+        AstRuntime rt = AstRuntime.get();
+        if (rt.getState() == AstRuntime.State.RUNNING) {
+            // Sample k is the position after k running ticks; the player is drawn between the
+            // previous and the latest tick, so the ghost is too.
+            drawMarker(Math.max(0.0f, rt.getElapsedTicks() - 2 + pt));
+        }
+
+        GlStateManager.depthMask(true);
+        GlStateManager.disableBlend();
+        GlStateManager.enableTexture2D();
+        GlStateManager.popMatrix();
+    }
+
+    private void upload(AstGhostTrace.Trace trace) {
+        release();
+        uploaded = trace;
+        points = trace.decode(origin);
+        int n = points.length / 3;
+
+        int chunks = (n - 1 + CHUNK - 1) / CHUNK;
+        chunkBounds = new float[chunks * 6];
+        for (int c = 0; c < chunks; c++) {
+            int from = c * CHUNK, to = Math.min(n - 1, from + CHUNK); // inclusive: ranges share an end point
+            float[] b = chunkBounds;
+            int o = c * 6;
+            b[o] = b[o + 3] = points[from * 3];
+            b[o + 1] = b[o + 4] = points[from * 3 + 1];
+            b[o + 2] = b[o + 5] = points[from * 3 + 2];
+            for (int i = from + 1; i <= to; i++) {
+                for (int k = 0; k < 3; k++) {
+                    float v = points[i * 3 + k];
+                    if (v < b[o + k]) b[o + k] = v;
+                    if (v > b[o + 3 + k]) b[o + 3 + k] = v;
+                }
+            }
+        }
+
+        if (!OpenGlHelper.vboSupported) return;
+        ByteBuffer data = ByteBuffer.allocateDirect(n * STRIDE).order(ByteOrder.nativeOrder());
+        int r = (PATH_RGBA >>> 24) & 0xFF, g = (PATH_RGBA >>> 16) & 0xFF, b = (PATH_RGBA >>> 8) & 0xFF, a = PATH_RGBA & 0xFF;
+        for (int i = 0; i < n; i++) {
+            data.putFloat(points[i * 3]).putFloat(points[i * 3 + 1]).putFloat(points[i * 3 + 2]);
+            data.put((byte) r).put((byte) g).put((byte) b).put((byte) a);
+        }
+        data.flip();
+        vbo = new VertexBuffer(DefaultVertexFormats.POSITION_COLOR);
+        vbo.bufferData(data);
+    }
+
+    private void release() {
+        if (vbo != null) {
+            vbo.deleteGlBuffers();
+            vbo = null;
+        }
+        uploaded = null;
+        points = null;
+        chunkBounds = new float[0];
+    }
+
+    /** Draw the visible chunk ranges, merging neighbours into one draw call. */
+    private void drawPath(float px, float py, float pz) {
+        int chunks = chunkBounds.length / 6;
+        int n = points.length / 3;
+        if (vbo != null) {
+            vbo.bindBuffer();
+            GlStateManager.glVertexPointer(3, GL11.GL_FLOAT, STRIDE, 0);
+            GlStateManager.glEnableClientState(GL11.GL_VERTEX_ARRAY);
+            GlStateManager.glColorPointer(4, GL11.GL_UNSIGNED_BYTE, STRIDE, 12);
+            GlStateManager.glEnableClientState(GL11.GL_COLOR_ARRAY);
+        }
+        int runStart = -1;
+        for (int c = 0; c <= chunks; c++) {
+            boolean visible = c < chunks && distanceSq(c, px, py, pz) <= DIST_SQ_MAX;
+            if (visible && runStart < 0) runStart = c;
+            if (!visible && runStart >= 0) {
+                int from = runStart * CHUNK;
+                int to = Math.min(n - 1, c * CHUNK);
+                drawRange(from, to - from + 1);
+                runStart = -1;
+            }
+        }
+        if (vbo != null) {
+            GlStateManager.glDisableClientState(GL11.GL_VERTEX_ARRAY);
+            GlStateManager.glDisableClientState(GL11.GL_COLOR_ARRAY);
+            vbo.unbindBuffer();
+        }
+    }
+
+    private void drawRange(int first, int count) {
+        if (vbo != null) {
+            GlStateManager.glDrawArrays(GL11.GL_LINE_STRIP, first, count);
+            return;
+        }
+        float r = ((PATH_RGBA >>> 24) & 0xFF) / 255.0f, g = ((PATH_RGBA >>> 16) & 0xFF) / 255.0f;
+        float b = ((PATH_RGBA >>> 8) & 0xFF) / 255.0f, a = (PATH_RGBA & 0xFF) / 255.0f;
+        Tessellator tes = Tessellator.getInstance();
+        BufferBuilder buf = tes.getBuffer();
+        buf.begin(GL11.GL_LINE_STRIP, DefaultVertexFormats.POSITION_COLOR);
+        for (int i = first; i < first + count; i++) {
+            buf.pos(points[i * 3], points[i * 3 + 1], points[i * 3 + 2]).color(r, g, b, a).endVertex();
+        }
+        tes.draw();
+    }
+
+    private float distanceSq(int chunk, float px, float py, float pz) {
+        int o = chunk * 6;
+        float dx = Math.max(0.0f, Math.max(chunkBounds[o] - px, px - chunkBounds[o + 3]));
+        float dy = Math.max(0.0f, Math.max(chunkBounds[o + 1] - py, py - chunkBounds[o + 4]));
+        float dz = Math.max(0.0f, Math.max(chunkBounds[o + 2] - pz, pz - chunkBounds[o + 5]));
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /** Outline box (player-sized) at the PB position for fractional tick {@code t}. */
+    private void drawMarker(float t) {
+        int n = points.length / 3;
+        int i = Math.min((int) t, n - 1);
+        int j = Math.min(i + 1, n - 1);
+        float f = (i == j) ? 0.0f : t - i;
+        float x = points[i * 3] + (points[j * 3] - points[i * 3]) * f;
+        float y = points[i * 3 + 1] + (points[j * 3 + 1] - points[i * 3 + 1]) * f;
+        float z = points[i * 3 + 2] + (points[j * 3 + 2] - points[i * 3 + 2]) * f;
+
+        double x0 = x - MARKER_HALF_W, x1 = x + MARKER_HALF_W;
+        double z0 = z - MARKER_HALF_W, z1 = z + MARKER_HALF_W;
+        double y0 = y, y1 = y + MARKER_H;
+        float r = 1.0f, g = 1.0f, b = 1.0f, a = 0.9f;
+        Tessellator tes = Tessellator.getInstance();
+        BufferBuilder buf = tes.getBuffer();
+        buf.begin(GL11.GL_LINES, DefaultVertexFormats.POSITION_COLOR);
+        for (int k = 0; k < 2; k++) {
+            double yy = (k == 0) ? y0 : y1;
+            line(buf, x0, yy, z0, x1, yy, z0, r, g, b, a);
+            line(buf, x1, yy, z0, x1, yy, z1, r, g, b, a);
+            line(buf, x1, yy, z1, x0, yy, z1, r, g, b, a);
+            line(buf, x0, yy, z1, x0, yy, z0, r, g, b, a);
+        }
+        line(buf, x0, y0, z0, x0, y1, z0, r, g, b, a);
+        line(buf, x1, y0, z0, x1, y1, z0, r, g, b, a);
+        line(buf, x1, y0, z1, x1, y1, z1, r, g, b, a);
+        line(buf, x0, y0, z1, x0, y1, z1, r, g, b, a);
+        tes.draw();
+    }
+
+    private static void line(BufferBuilder buf, double x1, double y1, double z1, double x2, double y2, double z2,
+                             float r, float g, float b, float a) {
+        buf.pos(x1, y1, z1).color(r, g, b, a).endVertex();
+        buf.pos(x2, y2, z2).color(r, g, b, a).endVertex();
+    }
+}
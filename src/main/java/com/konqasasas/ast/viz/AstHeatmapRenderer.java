@@ -0,0 +1,270 @@
+package com.konqasasas.ast.viz;
+
+import com.konqasasas.ast.core.AstCourseManager;
+import com.konqasasas.ast.core.AstData;
+import com.konqasasas.ast.core.AstHeatmap;
+import com.konqasasas.ast.core.AstPerf;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.BufferBuilder;
+import net.minecraft.client.renderer.GlStateManager;
+import net.minecraft.client.renderer.OpenGlHelper;
+import net.minecraft.client.renderer.Tessellator;
+import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
+import net.minecraft.client.renderer.vertex.VertexBuffer;
+import net.minecraft.entity.Entity;
+import net.minecraftforge.client.event.RenderWorldLastEvent;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import org.lwjgl.opengl.GL11;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Heatmap overlay ({@link AstHeatmap}): a floor quad per visited block colored by time spent
+ * there (log scale, blue -> red), and crossed vertical quads where attempts were reset
+ * (magenta) or the player died (red), taller for more events.
+ *
+ * Geometry is rebuilt at most once per {@link #REBUILD_MS} while the counters change and kept
+ * in a vertex buffer (positions relative to a block origin); without VBO support the cached
+ * vertex array is tessellated per frame. Only the {@link #MAX_VOXELS} hottest voxels are drawn.
+ */
+public class AstHeatmapRenderer {
+    private static volatile boolean ENABLED = false;
+
+    private static final int MAX_VOXELS = 16384;
+    private static final long REBUILD_MS = 1000L;
+    private static final int STRIDE = 16;            // POSITION_COLOR: 3 floats + RGBA bytes
+    private static final float FLOOR_Y = 0.03f;      // above the block the player stood on
+    private static final float COLUMN_HALF_W = 0.15f;
+    private static final int RESET_RGBA = 0xFF40FFC0, DEATH_RGBA = 0xFF2020D0;
+
+    // built geometry
+    private String builtCourse = null;
+    private int builtVersion = 0;
+    private long builtAtMs = 0L;
+    private final int[] origin = new int[3];
+    private float[] pos = new float[0];              // x,y,z per vertex, relative to origin
+    private int[] rgba = new int[0];
+    private int vertices = 0;
+    private VertexBuffer vbo = null;
+
+    public static void setEnabled(boolean v) {
+        ENABLED = v;
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    @SubscribeEvent
+    public void onRenderWorldLast(RenderWorldLastEvent e) {
+        if (!ENABLED) {
+            release();
+            return;
+        }
+        long t0 = AstPerf.begin();
+        try {
+            renderWorld(e.getPartialTicks());
+        } finally {
+            AstPerf.end(AstPerf.Probe.HEATMAP_RENDER, t0);
+        }
+    }
+
+    private void renderWorld(float pt) {
+        Minecraft mc = Minecraft.getMinecraft();
+        AstData.CourseFile course = AstCourseManager.get().getActiveCourse();
+        if (mc.world == null || mc.player == null || course == null) {
+            release();
+            return;
+        }
+        int version = AstHeatmap.get().version(course);
+        long now = System.currentTimeMillis();
+        boolean otherCourse = !course.courseName.equals(builtCourse);
+        if (otherCourse || (version != builtVersion && now - builtAtMs >= REBUILD_MS)) {
+            build(course, version, mc.player.posX, mc.player.posY, mc.player.posZ);
+            builtAtMs = now;
+        }
+        if (vertices == 0) return;
+
+        Entity view = mc.getRenderViewEntity();
+        if (view == null) view = mc.player;
+        double vx = view.lastTickPosX + (view.posX - view.lastTickPosX) * pt;
+        double vy = view.lastTickPosY + (view.posY - view.lastTickPosY) * pt;
+        double vz = view.lastTickPosZ + (view.posZ - view.lastTickPosZ) * pt;
+
+        GlStateManager.pushMatrix();
+        GlStateManager.translate(origin[0] - vx, origin[1] - vy, origin[2] - vz);
+        GlStateManager.disableTexture2D();
+        GlStateManager.disableLighting();
+        GlStateManager.disableCull();
+        GlStateManager.enableBlend();
+        GlStateManager.tryBlendFuncSeparate(GlStateManager.SourceFactor.SRC_ALPHA, GlStateManager.DestFactor.ONE_MINUS_SRC_ALPHA,
+                GlStateManager.SourceFactor.ONE, GlStateManager.DestFactor.ZERO);
+        GlStateManager.depthMask(false);
+
+        if (vbo != null) {
+            vbo.bindBuffer();
+            GlStateManager.glVertexPointer(3, GL11.GL_FLOAT, STRIDE, 0);
+            GlStateManager.glEnableClientState(GL11.GL_VERTEX_ARRAY);
+            GlStateManager.glColorPointer(4, GL11.GL_UNSIGNED_BYTE, STRIDE, 12);
+            GlStateManager.glEnableClientState(GL11.GL_COLOR_ARRAY);
+            GlStateManager.glDrawArrays(GL11.GL_QUADS, 0, vertices);
+            GlStateManager.glDisableClientState(GL11.GL_VERTEX_ARRAY);
+            GlStateManager.glDisableClientState(GL11.GL_COLOR_ARRAY);
+            vbo.unbindBuffer();
+        } else {
+            Tessellator tes = Tessellator.getInstance();
+            BufferBuilder buf = tes.getBuffer();
+            buf.begin(GL11.GL_QUADS, DefaultVertexFormats.POSITION_COLOR);
+            for (int i = 0; i < vertices; i++) {
+                int c = rgba[i];
+                buf.pos(pos[i * 3], pos[i * 3 + 1], pos[i * 3 + 2])
+                        .color((c >>> 24) & 0xFF, (c >>> 16) & 0xFF, (c >>> 8) & 0xFF, c & 0xFF).endVertex();
+            }
+            tes.draw();
+        }
+
+        GlStateManager.depthMask(true);
+        GlStateManager.disableBlend();
+        GlStateManager.enableCull();
+        GlStateManager.enableTexture2D();
+        GlStateManager.popMatrix();
+    }
+
+    private void build(AstData.CourseFile course, int version, double px, double py, double pz) {
+        release();
+        builtCourse = course.courseName;
+        builtVersion = version;
+        origin[0] = (int) Math.floor(px);
+        origin[1] = (int) Math.floor(py);
+        origin[2] = (int) Math.floor(pz);
+
+        AstHeatmap heat = AstHeatmap.get();
+        Voxels time = collect(heat, course, AstHeatmap.TIME);
+        Voxels resets = collect(heat, course, AstHeatmap.RESETS);
+        Voxels deaths = collect(heat, course, AstHeatmap.DEATHS);
+        time.keepHottest(MAX_VOXELS);
+        resets.keepHottest(MAX_VOXELS);
+        deaths.keepHottest(MAX_VOXELS);
+
+        vertices = time.size * 4 + (resets.size + deaths.size) * 8;
+        pos = new float[vertices * 3];
+        rgba = new int[vertices];
+        int v = 0;
+        double timeScale = Math.log1p(time.max);
+        for (int i = 0; i < time.size; i++) {
+            float x = AstHeatmap.keyX(time.keys[i]) - origin[0];
+            float y = AstHeatmap.keyY(time.keys[i]) - origin[1] + FLOOR_Y;
+            float z = AstHeatmap.keyZ(time.keys[i]) - origin[2];
+            int c = ramp(timeScale <= 0 ? 1.0 : Math.log1p(time.values[i]) / timeScale);
+            v = vertex(v, x, y, z, c);
+            v = vertex(v, x, y, z + 1, c);
+            v = vertex(v, x + 1, y, z + 1, c);
+            v = vertex(v, x + 1, y, z, c);
+        }
+        v = columns(v, resets, RESET_RGBA);
+        v = columns(v, deaths, DEATH_RGBA);
+        vertices = v;
+
+        if (!OpenGlHelper.vboSupported || vertices == 0) return;
+        ByteBuffer data = ByteBuffer.allocateDirect(vertices * STRIDE).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < vertices; i++) {
+            int c = rgba[i];
+            data.putFloat(pos[i * 3]).putFloat(pos[i * 3 + 1]).putFloat(pos[i * 3 + 2]);
+            data.put((byte) (c >>> 24)).put((byte) (c >>> 16)).put((byte) (c >>> 8)).put((byte) c);
+        }
+        data.flip();
+        vbo = new VertexBuffer(DefaultVertexFormats.POSITION_COLOR);
+        vbo.bufferData(data);
+    }
+
+    /** Two crossed vertical quads per voxel, 0.5 to 3 blocks tall by event count. */
+    private int columns(int v, Voxels vox, int c) {
+        double scale = Math.log1p(vox.max);
+        for (int i = 0; i < vox.size; i++) {
+            float cx = AstHeatmap.keyX(vox.keys[i]) - origin[0] + 0.5f;
+            float y = AstHeatmap.keyY(vox.keys[i]) - origin[1];
+            float cz = AstHeatmap.keyZ(vox.keys[i]) - origin[2] + 0.5f;
+            float h = (float) (0.5 + 2.5 * (scale <= 0 ? 1.0 : Math.log1p(vox.values[i]) / scale));
+            float w = COLUMN_HALF_W;
+            v = vertex(v, cx - w, y, cz, c);
+            v = vertex(v, cx + w, y, cz, c);
+            v = vertex(v, cx + w, y + h, cz, c);
+            v = vertex(v, cx - w, y + h, cz, c);
+            v = vertex(v, cx, y, cz - w, c);
+            v = vertex(v, cx, y, cz + w, c);
+            v = vertex(v, cx, y + h, cz + w, c);
+            v = vertex(v, cx, y + h, cz - w, c);
+        }
+        return v;
+    }
+
+    private int vertex(int v, float x, float y, float z, int c) {
+        pos[v * 3] = x;
+        pos[v * 3 + 1] = y;
+        pos[v * 3 + 2] = z;
+        rgba[v] = c;
+        return v + 1;
+    }
+
+    /** 0..1 -> blue, cyan, green, yellow, red (RGBA, translucent). */
+    private static int ramp(double t) {
+        t = Math.max(0.0, Math.min(1.0, t));
+        double r = Math.max(0.0, Math.min(1.0, (t - 0.5) * 4.0));
+        double g = t < 0.25 ? t * 4.0 : (t > 0.75 ? (1.0 - t) * 4.0 : 1.0);
+        double b = Math.max(0.0, Math.min(1.0, (0.5 - t) * 4.0));
+        int a = (int) (0x50 + 0x50 * t);
+        return ((int) (r * 255) << 24) | ((int) (g * 255) << 16) | ((int) (b * 255) << 8) | a;
+    }
+
+    private static Voxels collect(AstHeatmap heat, AstData.CourseFile course, int kind) {
+        Voxels out = new Voxels(heat.count(course, kind));
+        out.max = heat.visit(course, kind, (key, n) -> {
+            if (out.size < out.keys.length) {
+                out.keys[out.size] = key;
+                out.values[out.size++] = n;
+            }
+        });
+        return out;
+    }
+
+    /** Parallel key/count arrays copied out of the heatmap. */
+    private static final class Voxels {
+        long[] keys;
+        int[] values;
+        int size = 0;
+        int max = 0;
+
+        Voxels(int capacity) {
+            keys = new long[capacity];
+            values = new int[capacity];
+        }
+
+        void keepHottest(int limit) {
+            if (size <= limit) return;
+            int[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            int threshold = sorted[size - limit];
+            int above = 0;
+            for (int i = 0; i < size; i++) if (values[i] > threshold) above++;
+            int ties = limit - above, n = 0;
+            for (int i = 0; i < size; i++) {
+                if (values[i] > threshold || (values[i] == threshold && ties-- > 0)) {
+                    keys[n] = keys[i];
+                    values[n++] = values[i];
+                }
+            }
+            size = n;
+        }
+    }
+
+    private void release() {
+        if (vbo != null) {
+            vbo.deleteGlBuffers();
+            vbo = null;
+        }
+        builtCourse = null;
+        vertices = 0;
+    }
+}
@@ -2,6 +2,7 @@ package com.konqasasas.ast.viz;
 
 import com.konqasasas.ast.core.AstCourseManager;
 import com.konqasasas.ast.core.AstData;
+import com.konqasasas.ast.core.AstPerf;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.*;
 import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
@@ -56,6 +57,15 @@ public class AstVizRenderer {
     @SubscribeEvent
     public void onRenderWorldLast(RenderWorldLastEvent e) {
         if (!ENABLED) return;
+        long t0 = AstPerf.begin();
+        try {
+            renderWorld(e.getPartialTicks());
+        } finally {
+            AstPerf.end(AstPerf.Probe.VIZ_RENDER, t0);
+        }
+    }
+
+    private void renderWorld(double pt) {
         Minecraft mc = Minecraft.getMinecraft();
         if (mc.world == null || mc.player == null) return;
 
@@ -65,7 +75,6 @@ public class AstVizRenderer {
         Entity view = mc.getRenderViewEntity();
         if (view == null) view = mc.player;
 
-        double pt = e.getPartialTicks();
         double vx = view.lastTickPosX + (view.posX - view.lastTickPosX) * pt;
         double vy = view.lastTickPosY + (view.posY - view.lastTickPosY) * pt;
         double vz = view.lastTickPosZ + (view.posZ - view.lastTickPosZ) * pt;
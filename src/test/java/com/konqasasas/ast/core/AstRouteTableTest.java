@@ -0,0 +1,150 @@
+package com.konqasasas.ast.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AstRouteTableTest {
+    private static AstData.CourseFile course(int... indices) {
+        AstData.CourseFile c = new AstData.CourseFile();
+        c.courseName = "test";
+        c.segments = new ArrayList<>();
+        for (int i : indices) {
+            AstData.Segment s = new AstData.Segment();
+            s.index = i;
+            s.name = "S" + i;
+            s.height = 2.0;
+            s.aabb = new AstData.AabbDto(i, 0, 0, i + 1, 2, 1);
+            c.segments.add(s);
+        }
+        return c;
+    }
+
+    private static void route(AstData.CourseFile c, int index, int... next) {
+        AstUtil.findSegment(c, index).next = next;
+        c.segmentsRevision++;
+    }
+
+    /** Without a route the table must match the old "hit >= nextIndex" rule exactly. */
+    @Test
+    public void classicCourseMatchesOldRule() {
+        AstData.CourseFile c = course(0, 1, 2, 5, 7, 10);
+        AstRouteTable rt = AstRouteTable.get();
+        List<Integer> order = AstUtil.sortedNonStartIndices(c);
+        int last = order.get(order.size() - 1);
+        assertFalse(rt.isDeclared(c));
+
+        List<Integer> states = new ArrayList<>(order);
+        states.add(0, 0);
+        for (int from : states) {
+            int oldNext = AstUtil.nextExistingIndex(order, from);
+            assertEquals("nextIndex from " + from, oldNext, rt.nextIndex(c, from));
+            for (int to = -1; to <= 12; to++) {
+                boolean old = order.contains(to) && to >= oldNext;
+                assertEquals("accepts " + from + " -> " + to, old, rt.accepts(c, from, to));
+            }
+        }
+        for (int idx : order) assertEquals("goal " + idx, idx == last, rt.isGoal(c, idx));
+    }
+
+    /** Start -> 1 -> 3 -> 5 or Start -> 2 -> 4 (goal); the branches do not mix. */
+    @Test
+    public void declaredBranches() {
+        AstData.CourseFile c = course(0, 1, 2, 3, 4, 5);
+        route(c, 0, 1, 2);
+        route(c, 1, 3);
+        route(c, 2, 4);
+        route(c, 3, 5);
+        route(c, 4);
+        AstRouteTable rt = AstRouteTable.get();
+        assertTrue(rt.isDeclared(c));
+
+        assertTrue(rt.accepts(c, 0, 1));
+        assertTrue(rt.accepts(c, 0, 2));
+        assertFalse(rt.accepts(c, 0, 3));
+        assertTrue(rt.accepts(c, 1, 3));
+        assertFalse(rt.accepts(c, 1, 2));
+        assertFalse(rt.accepts(c, 2, 3));
+        assertTrue(rt.accepts(c, 2, 4));
+        assertTrue(rt.accepts(c, 3, 5));
+
+        assertEquals(1, rt.nextIndex(c, 0));
+        assertEquals(3, rt.nextIndex(c, 1));
+        assertEquals(Integer.MAX_VALUE, rt.nextIndex(c, 4));
+
+        assertTrue(rt.isGoal(c, 4));
+        assertTrue(rt.isGoal(c, 5));
+        assertFalse(rt.isGoal(c, 3));
+    }
+
+    /** Box 2 is optional (1 -> 2 -> 3 or 1 -> 3), but 3 may not be skipped. */
+    @Test
+    public void optionalBox() {
+        AstData.CourseFile c = course(0, 1, 2, 3, 4);
+        route(c, 0, 1);
+        route(c, 1, 2, 3);
+        route(c, 2, 3);
+        route(c, 3, 4);
+        AstRouteTable rt = AstRouteTable.get();
+
+        assertFalse(rt.accepts(c, 0, 2));
+        assertTrue(rt.accepts(c, 1, 2));
+        assertTrue(rt.accepts(c, 1, 3));
+        assertFalse(rt.accepts(c, 1, 4));
+        assertTrue(rt.accepts(c, 2, 3));
+        assertFalse(rt.accepts(c, 2, 4));
+        assertTrue(rt.accepts(c, 3, 4));
+        assertEquals(2, rt.nextIndex(c, 1));
+        assertTrue(rt.isGoal(c, 4));
+        assertFalse(rt.isGoal(c, 3));
+    }
+
+    /** Sum of best and best possible follow one branch instead of adding up every position. */
+    @Test
+    public void bestsFollowTheBranchRun() {
+        AstData.CourseFile c = course(0, 1, 2, 3, 4, 5);
+        route(c, 0, 1, 2);
+        route(c, 1, 3);
+        route(c, 2, 4);
+        route(c, 3, 5);
+        route(c, 4);
+        AstRouteTable rt = AstRouteTable.get();
+        int[] bests = new int[0];
+        bests = AstRouteTable.improveBranchBest(bests, 0, 1, 10);
+        bests = AstRouteTable.improveBranchBest(bests, 1, 3, 10);
+        bests = AstRouteTable.improveBranchBest(bests, 3, 5, 10);
+        bests = AstRouteTable.improveBranchBest(bests, 0, 2, 15);
+        bests = AstRouteTable.improveBranchBest(bests, 2, 4, 20);
+
+        assertEquals(Integer.valueOf(30), rt.sumOfBest(c, bests));
+        // on the 2 -> 4 branch, split at 15 and 25 ticks in: 4 cannot be reached before 35
+        assertEquals(Integer.valueOf(35), rt.bestPossible(c, bests, 2, 15, 25));
+        assertEquals(Integer.valueOf(40), rt.bestPossible(c, bests, 2, 15, 40)); // already slower than best
+        assertEquals(Integer.valueOf(30), rt.bestPossible(c, bests, 0, 0, 0));
+        assertEquals(20, rt.bestNextSegment(c, bests, 2));
+        assertEquals(10, rt.bestNextSegment(c, bests, 0));
+
+        // a faster 3 -> 5 changes the cached result
+        bests = AstRouteTable.improveBranchBest(bests, 3, 5, 4);
+        assertEquals(Integer.valueOf(24), rt.sumOfBest(c, bests));
+        // no branch recorded from 1: no finish is known
+        assertEquals(null, rt.sumOfBest(c, new int[]{0, 1, 10}));
+    }
+
+    /** A route that loops back still resolves to the shortest recorded way to the goal. */
+    @Test
+    public void loopingRoute() {
+        AstData.CourseFile c = course(0, 1, 2, 3);
+        route(c, 0, 1);
+        route(c, 1, 2, 3);
+        route(c, 2, 1);
+        route(c, 3);
+        int[] bests = {0, 1, 5, 1, 2, 3, 2, 1, 3, 1, 3, 50};
+        assertEquals(Integer.valueOf(55), AstRouteTable.get().sumOfBest(c, bests));
+    }
+}